@@ -17,6 +17,7 @@
 
 package org.apache.log4j;
 
+import org.apache.log4j.spi.BatchAppender;
 import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.ErrorHandler;
 import org.apache.log4j.spi.OptionHandler;
@@ -34,7 +35,8 @@ import org.apache.log4j.helpers.LogLog;
  * @since 0.8.1
  * @author Ceki G&uuml;lc&uuml; 
  * */
-public abstract class AppenderSkeleton implements Appender, OptionHandler {
+public abstract class AppenderSkeleton implements Appender, BatchAppender,
+                                                  OptionHandler {
 
   /** The layout variable does not need to be set if the appender
       implementation has its own layout. */
@@ -44,8 +46,10 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
   protected String name;
 
   /**
-     There is no level threshold filtering by default.  */
-  protected Priority threshold;
+     There is no level threshold filtering by default. Subclasses
+     must change it through {@link #setThreshold} so that loggers
+     notice the change.  */
+  protected volatile Priority threshold;
 
   /** 
       It is assumed and enforced that errorHandler is never null.
@@ -61,7 +65,7 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
   /**
      Is this appender closed? 
    */
-  protected boolean closed = false;
+  protected volatile boolean closed = false;
 
     /**
      * Create new instance.
@@ -118,6 +122,24 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
   protected
   void append(LoggingEvent event);
 
+  /**
+     Append the first <code>count</code> events of the array, which
+     passed the threshold and the filters. This implementation calls
+     {@link #append(LoggingEvent)} for each event, subclasses override
+     it to write and flush the events together. The {@link
+     AsyncAppender} calls {@link #doAppend(LoggingEvent[], int)} only
+     for the subclasses which override this method, unless they
+     override {@link #doAppend(LoggingEvent)}, or override {@link
+     #append(LoggingEvent)} below the class overriding this method.
+
+     @since 1.2.18 */
+  protected
+  void append(LoggingEvent[] events, int count) {
+    for(int i = 0; i < count; i++) {
+      this.append(events[i]);
+    }
+  }
+
 
   /**
      Clear the filters chain.
@@ -217,6 +239,8 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
   */
   public
   boolean isAsSevereAsThreshold(Priority priority) {
+    // read once, the threshold may be changed by another thread
+    Priority threshold = this.threshold;
     return ((threshold == null) || priority.isGreaterOrEqual(threshold));
   }
 
@@ -234,22 +258,64 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
       return;
     }
     
-    if(!isAsSevereAsThreshold(event.getLevel())) {
+    if(isAccepted(event)) {
+      this.append(event);
+    }
+  }
+
+  /**
+    * This method performs threshold checks and invokes filters on
+    * each event like {@link #doAppend(LoggingEvent)}, then appends the
+    * accepted events with a single call to {@link #append(LoggingEvent[],
+    * int)}, holding the monitor of the appender once for the batch.
+    *
+    * @since 1.2.18 */
+  public
+  synchronized
+  void doAppend(LoggingEvent[] events, int count) {
+    if(closed) {
+      LogLog.error("Attempted to append to closed appender named ["+name+"].");
       return;
     }
 
+    // the array belongs to the caller, copy it only if an event is rejected
+    LoggingEvent[] accepted = events;
+    int n = 0;
+    for(int i = 0; i < count; i++) {
+      if(isAccepted(events[i])) {
+	if(accepted != events) {
+	  accepted[n] = events[i];
+	}
+	n++;
+      } else if(accepted == events) {
+	accepted = new LoggingEvent[count];
+	System.arraycopy(events, 0, accepted, 0, n);
+      }
+    }
+    if(n > 0) {
+      this.append(accepted, n);
+    }
+  }
+
+  /**
+     Return true if the event passes the threshold and the filters of
+     this appender.  */
+  private
+  boolean isAccepted(LoggingEvent event) {
+    if(!isAsSevereAsThreshold(event.getLevel())) {
+      return false;
+    }
+
     Filter f = this.headFilter;
-    
-    FILTER_LOOP:
+
     while(f != null) {
       switch(f.decide(event)) {
-      case Filter.DENY: return;
-      case Filter.ACCEPT: break FILTER_LOOP;
+      case Filter.DENY: return false;
+      case Filter.ACCEPT: return true;
       case Filter.NEUTRAL: f = f.getNext();
       }
     }
-    
-    this.append(event);    
+    return true;
   }
 
   /** 
@@ -301,5 +367,6 @@ public abstract class AppenderSkeleton implements Appender, OptionHandler {
   public
   void setThreshold(Priority threshold) {
     this.threshold = threshold;
+    Category.invalidateAppenderThresholds();
   }  
 }
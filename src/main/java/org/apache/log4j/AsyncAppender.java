@@ -19,16 +19,31 @@
 //               Thomas Tuft Muller <ttm@online.no>
 package org.apache.log4j;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.MessageFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
+import org.apache.log4j.concurrent.ConcurrentAppender;
+import org.apache.log4j.concurrent.ConcurrentWriterAppender;
 import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.helpers.Histogram;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.helpers.RingBuffer;
+import org.apache.log4j.helpers.SpillFile;
+import org.apache.log4j.helpers.StripedCounter;
 import org.apache.log4j.spi.AppenderAttachable;
+import org.apache.log4j.spi.BatchAppender;
+import org.apache.log4j.spi.EventFieldUsage;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.ImmutableMessage;
 import org.apache.log4j.spi.LoggingEvent;
 
 
@@ -43,38 +58,163 @@ import org.apache.log4j.spi.LoggingEvent;
  * <p/>
  * <p/>
  * The AsyncAppender uses a separate thread to serve the events in its buffer.
+ * The buffer is a {@link RingBuffer}, logging threads add their events to it
+ * without contending with the dispatcher thread, which takes all the pending
+ * events at once. Logging threads are not serialized on the appender monitor
+ * either.
  * </p>
  * <p/>
- * <b>Important note:</b> The <code>AsyncAppender</code> can only be script
- * configured using the {@link org.apache.log4j.xml.DOMConfigurator}.
+ * <p/>
+ * When one dispatcher cannot keep up, the <b>Dispatchers</b> option splits
+ * the buffer into as many partitions, each served by its own thread. Events
+ * are routed to a partition by logger name, or by the value of the MDC key
+ * named by the <b>PartitionKey</b> option, so the events of a logger (or of
+ * an MDC value) keep their order. The partitions share the attached
+ * appenders: appenders which are safe for concurrent use, such as the
+ * {@link ConcurrentAppender} and {@link ConcurrentWriterAppender}
+ * subclasses, are called by the dispatchers in parallel, other appenders
+ * serialize the dispatchers on their own monitor.
+ * </p>
+ * <p/>
+ * <p/>
+ * By default a full buffer blocks the logging threads, or when
+ * <b>Blocking</b> is false, the events are discarded and summarized. When
+ * the <b>SpillFile</b> option names a file, the events are written to that
+ * file instead, and appended in order once the dispatcher catches up. The
+ * file is bounded by the <b>MaxSpillSize</b> option, events which do not
+ * fit are discarded and summarized. Events left in the file by a process
+ * which died are appended by the next AsyncAppender using the file.
+ * </p>
+ * <p/>
+ * Setting the <b>PriorityLevel</b> option gives the events of that level
+ * and above a buffer of their own, which the dispatcher drains first. These
+ * events are never discarded, logging threads wait for room when their
+ * buffer is full. The <b>Fairness</b> option bounds the number of batches
+ * of priority events dispatched in a row while other events wait, priority
+ * events may thus be appended ahead of earlier events. When <b>Blocking</b>
+ * is false, the events at or below the <b>ShedLevel</b> option may only
+ * fill half of the buffer, keeping the other half for more severe events.
+ * </p>
+ * <p/>
+ * The thread dependent fields of the events, such as the NDC and the MDC,
+ * and their rendered message are captured by the logging threads before
+ * the events are buffered. With <b>SelectiveCapture</b> set, only the
+ * fields read by the layouts and filters of the attached appenders are
+ * captured, as told by their {@link EventFieldUsage} implementation, and
+ * messages which are {@link ImmutableMessage immutable} are rendered by
+ * the dispatcher.
+ * </p>
+ * <p/>
+ * Any appender can be moved behind an <code>AsyncAppender</code> from a
+ * configuration file. With {@link org.apache.log4j.PropertyConfigurator},
+ * set the <code>async</code> option of the appender to true; the options
+ * of the <code>AsyncAppender</code> follow that key:
+ * <pre>
+ * log4j.appender.A1.async=true
+ * log4j.appender.A1.async.BufferSize=512
+ * </pre>
+ * With {@link org.apache.log4j.xml.DOMConfigurator}, give the appender an
+ * <code>async</code> attribute set to true, or a nested
+ * <code>&lt;async&gt;</code> element whose params configure the
+ * <code>AsyncAppender</code>. The wrapper takes over the name of the
+ * appender, which stays attached inside it with its filters.
  * </p>
  *
  * @author Ceki G&uuml;lc&uuml;
  * @author Curt Arnold
  * @since 0.9.1
  */
-public class AsyncAppender extends AppenderSkeleton
-  implements AppenderAttachable {
+public class AsyncAppender extends ConcurrentAppender
+  implements AppenderAttachable, EventFieldUsage {
   /**
    * The default buffer size is set to 128 events.
    */
   public static final int DEFAULT_BUFFER_SIZE = 128;
 
   /**
-   * Event buffer, also used as monitor to protect itself and
-   * discardMap from simulatenous modifications.
+   * The default maximum spill file size is 64MB.
+   */
+  public static final long DEFAULT_MAX_SPILL_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * The default number of priority batches dispatched in a row.
+   */
+  public static final int DEFAULT_FAIRNESS = 8;
+
+  /**
+   * Appender classes, mapped to Boolean.TRUE if events are handed to
+   * them in batches. See isBatched.
    */
-  private final List buffer = new ArrayList();
+  private static final Map batchedClasses =
+    Collections.synchronizedMap(new WeakHashMap());
 
   /**
-   * Map of DiscardSummary objects keyed by logger name.
+   * How long an idle dispatcher waits before checking its spill file.
+   */
+  private static final long SPILL_CHECK_INTERVAL = 250;
+
+  /**
+   * Upper bounds in milliseconds of the queue latency histogram buckets.
+   */
+  private static final long[] LATENCY_BOUNDS = {
+      0, 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000,
+      60000
+    };
+
+  /**
+   * Maximum number of loggers whose discarded events are counted apart.
+   */
+  private static final int MAX_DISCARD_LOGGERS = 256;
+
+  /**
+   * Event buffers, one per partition. Replaced by setBufferSize, each
+   * previous buffer is sealed and drained by its dispatcher before it
+   * moves on to the new one. Grown by activateOptions.
+   */
+  private volatile RingBuffer[] buffers =
+    new RingBuffer[] { new RingBuffer(DEFAULT_BUFFER_SIZE) };
+
+  /**
+   * Map of DiscardSummary objects keyed by logger name, also used as
+   * monitor to protect itself from simultaneous modifications.
    */
   private final Map discardMap = new HashMap();
 
+  /**
+   * Counts of discarded events keyed by logger name, guarded by
+   * discardMap.
+   */
+  private final Map discardCounts = new HashMap();
+
+  /**
+   * Total count of discarded events, guarded by discardMap.
+   */
+  private long discardedCount = 0;
+
+  /**
+   * Time from the creation of events to their dispatch.
+   */
+  private final Histogram latency = new Histogram(LATENCY_BOUNDS);
+
+  /**
+   * Number of times a logging thread waited for room in a buffer.
+   */
+  private final StripedCounter blockedCount = new StripedCounter();
+
+  /**
+   * Milliseconds spent by logging threads waiting for room in a buffer.
+   */
+  private final StripedCounter blockedTime = new StripedCounter();
+
+  /**
+   * Largest number of events found in a buffer by its dispatcher.
+   */
+  private volatile int highWaterMark = 0;
+
   /**
    * Buffer size.
    */
-  private int bufferSize = DEFAULT_BUFFER_SIZE;
+  private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
 
   /** Nested appenders. */
   AppenderAttachableImpl aai;
@@ -85,19 +225,77 @@ public class AsyncAppender extends AppenderSkeleton
   private final AppenderAttachableImpl appenders;
 
   /**
-   * Dispatcher.
+   * Dispatcher threads, one per partition. Always assigned before
+   * the buffers they serve.
+   */
+  private volatile Thread[] dispatchers;
+
+  /**
+   * Requested number of dispatchers, applied by activateOptions.
+   */
+  private int dispatcherCount = 1;
+
+  /**
+   * MDC key routing events to partitions, null to route by logger name.
+   */
+  private volatile String partitionKey = null;
+
+  /**
+   * Level from which events go to the priority lane, null if none.
+   */
+  private volatile Level priorityLevel = null;
+
+  /**
+   * Level up to which events are shed first, null if none.
+   */
+  private volatile Level shedLevel = null;
+
+  /**
+   * Maximum number of priority batches dispatched in a row.
+   */
+  private volatile int fairness = DEFAULT_FAIRNESS;
+
+  /**
+   * Whether only the fields read downstream are captured.
    */
-  private final Thread dispatcher;
+  private volatile boolean selectiveCapture = false;
+
+  /**
+   * Fields captured by the logging threads, all of them
+   * unless selectiveCapture is set.
+   */
+  private volatile int capturedFields = ALL;
+
+  /**
+   * Spill files, one per partition, null if events are not spilled.
+   * Opened by activateOptions.
+   */
+  private volatile SpillFile[] spills = null;
+
+  /**
+   * Name of the spill file of the first partition.
+   */
+  private String spillFileName = null;
+
+  /**
+   * Maximum size of each spill file.
+   */
+  private long maxSpillSize = DEFAULT_MAX_SPILL_SIZE;
 
   /**
    * Should location info be included in dispatched messages.
    */
-  private boolean locationInfo = false;
+  private volatile boolean locationInfo = false;
 
   /**
    * Does appender block when buffer is full.
    */
-  private boolean blocking = true;
+  private volatile boolean blocking = true;
+
+  /**
+   * How the dispatcher and blocked logging threads wait for the buffer.
+   */
+  private volatile int waitStrategy = RingBuffer.BLOCKING;
 
   /**
    * Create new instance.
@@ -109,8 +307,21 @@ public class AsyncAppender extends AppenderSkeleton
     //   only set for compatibility
     aai = appenders;
 
-    dispatcher =
-      new Thread(new Dispatcher(this, buffer, discardMap, appenders));
+    dispatchers = new Thread[] { startDispatcher(buffers[0], 0) };
+  }
+
+  /**
+   * Start a dispatcher thread.
+   *
+   * @param buffer buffer served by the dispatcher.
+   * @param partition partition index.
+   * @return the started thread.
+   */
+  private Thread startDispatcher(
+    final RingBuffer buffer, final int partition) {
+    Thread dispatcher =
+      new Thread(
+        new Dispatcher(this, partition, buffer, discardMap, appenders));
 
     // It is the user's responsibility to close appenders before
     // exiting.
@@ -120,6 +331,235 @@ public class AsyncAppender extends AppenderSkeleton
     //        dispatcher.setPriority(Thread.MIN_PRIORITY);
     dispatcher.setName("AsyncAppender-Dispatcher-" + dispatcher.getName());
     dispatcher.start();
+
+    return dispatcher;
+  }
+
+  /**
+   * Starts the additional dispatchers requested by the <b>Dispatchers</b>
+   * option and opens the spill files. Events logged before are all served
+   * by the first dispatcher.
+   */
+  public void activateOptions() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+
+      RingBuffer[] previous = buffers;
+
+      if (dispatcherCount < previous.length) {
+        LogLog.warn(
+          "Cannot reduce the number of dispatchers of AsyncAppender ["
+          + name + "] once started.");
+      } else if (dispatcherCount > previous.length) {
+        addDispatchers();
+      }
+
+      openSpillFiles();
+      openPriorityLanes();
+    }
+
+    updateCapturedFields();
+  }
+
+  /**
+   * Starts dispatchers up to the requested number.
+   * Must be called while holding the lock on this.
+   */
+  private void addDispatchers() {
+    RingBuffer[] previous = buffers;
+    RingBuffer[] next = new RingBuffer[dispatcherCount];
+    Thread[] threads = new Thread[dispatcherCount];
+    System.arraycopy(previous, 0, next, 0, previous.length);
+    System.arraycopy(dispatchers, 0, threads, 0, previous.length);
+
+    for (int i = previous.length; i < next.length; i++) {
+      next[i] = new RingBuffer(bufferSize);
+      next[i].setWaitStrategy(waitStrategy);
+      threads[i] = startDispatcher(next[i], i);
+    }
+
+    //
+    //   append reads the buffers first, so it sees
+    //      the dispatcher of any buffer it finds.
+    dispatchers = threads;
+    buffers = next;
+  }
+
+  /**
+   * Creates the priority lanes of the partitions which do not have one
+   * yet, if there is a priority level.
+   * Must be called while holding the lock on this.
+   */
+  private void openPriorityLanes() {
+    if (priorityLevel == null) {
+      return;
+    }
+
+    RingBuffer[] buffers = this.buffers;
+
+    for (int i = 0; i < buffers.length; i++) {
+      if (buffers[i].getCompanion() == null) {
+        new RingBuffer(bufferSize, buffers[i]);
+      }
+    }
+  }
+
+  /**
+   * Opens the spill files of the partitions which do not have one yet.
+   * Must be called while holding the lock on this.
+   */
+  private void openSpillFiles() {
+    SpillFile[] previous = spills;
+    int count = buffers.length;
+
+    if ((spillFileName == null)
+          || ((previous != null) && (previous.length == count))) {
+      return;
+    }
+
+    SpillFile[] next = new SpillFile[count];
+    int first = 0;
+
+    if (previous != null) {
+      System.arraycopy(previous, 0, next, 0, previous.length);
+      first = previous.length;
+    }
+
+    int size = (int) Math.min(maxSpillSize, Integer.MAX_VALUE);
+
+    for (int i = first; i < count; i++) {
+      File file =
+        new File((i == 0) ? spillFileName : (spillFileName + "." + i));
+
+      try {
+        next[i] = new SpillFile(file, size);
+      } catch (IOException e) {
+        LogLog.error("Could not open spill file [" + file + "].", e);
+
+        for (int j = first; j < i; j++) {
+          next[j].close();
+        }
+
+        return;
+      }
+    }
+
+    spills = next;
+  }
+
+  /**
+   * Determines whether events are handed to an appender in batches.
+   * Every {@link AppenderSkeleton} is a {@link BatchAppender}, but the
+   * batch bypasses the single event {@link Appender#doAppend} and
+   * <code>append</code> methods. A subclass therefore only gets
+   * batches if it overrides the batch <code>append</code> method, does
+   * not override <code>doAppend</code>, and its subclasses do not
+   * override the single event <code>append</code>.
+   *
+   * @param appender appender, may not be null.
+   * @return true if {@link BatchAppender#doAppend} is to be used.
+   */
+  static boolean isBatched(final Appender appender) {
+    if (!(appender instanceof BatchAppender)) {
+      return false;
+    }
+
+    if (!(appender instanceof AppenderSkeleton)) {
+      return true;
+    }
+
+    Class appenderClass = appender.getClass();
+    Boolean batched = (Boolean) batchedClasses.get(appenderClass);
+
+    if (batched == null) {
+      boolean overrides;
+
+      try {
+        overrides = overridesBatch(appenderClass);
+      } catch (SecurityException e) {
+        overrides = false;
+      }
+
+      batched = overrides ? Boolean.TRUE : Boolean.FALSE;
+      batchedClasses.put(appenderClass, batched);
+    }
+
+    return batched.booleanValue();
+  }
+
+  /**
+   * Determines whether a subclass of AppenderSkeleton appends batches
+   * the way it appends single events.
+   *
+   * @param appenderClass class, may not be null.
+   * @return true if a class below AppenderSkeleton declares the batch
+   * append, no class below it declares the single event append and
+   * no class below AppenderSkeleton declares the single event doAppend.
+   */
+  private static boolean overridesBatch(final Class appenderClass) {
+    boolean batch = false;
+    boolean single = false;
+
+    for (Class c = appenderClass;
+          (c != null) && (c != AppenderSkeleton.class);
+          c = c.getSuperclass()) {
+      if (declares(c, "doAppend", new Class[] { LoggingEvent.class })) {
+        return false;
+      }
+
+      if (!batch) {
+        if (declares(
+              c, "append", new Class[] { LoggingEvent[].class, int.class })) {
+          //  a subclass appends single events differently
+          if (single) {
+            return false;
+          }
+
+          batch = true;
+        } else if (declares(c, "append", new Class[] { LoggingEvent.class })) {
+          single = true;
+        }
+      }
+    }
+
+    return batch;
+  }
+
+  /**
+   * Determines whether a class declares a method.
+   *
+   * @param c class, may not be null.
+   * @param name method name.
+   * @param types argument types.
+   * @return true if the method is declared by <code>c</code>.
+   */
+  private static boolean declares(
+    final Class c, final String name, final Class[] types) {
+    try {
+      c.getDeclaredMethod(name, types);
+
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Gets the spill file of a partition.
+   *
+   * @param partition partition index.
+   * @return spill file or null.
+   */
+  private SpillFile getSpill(final int partition) {
+    SpillFile[] spills = this.spills;
+
+    if ((spills == null) || (partition >= spills.length)) {
+      return null;
+    }
+
+    return spills[partition];
   }
 
   /**
@@ -131,294 +571,1164 @@ public class AsyncAppender extends AppenderSkeleton
     synchronized (appenders) {
       appenders.addAppender(newAppender);
     }
+
+    updateCapturedFields();
   }
 
   /**
    * {@inheritDoc}
    */
   public void append(final LoggingEvent event) {
-    //
-    //   if dispatcher thread has died then
-    //      append subsequent events synchronously
-    //   See bug 23021
-    if ((dispatcher == null) || !dispatcher.isAlive() || (bufferSize <= 0)) {
-      synchronized (appenders) {
-        appenders.appendLoopOnAppenders(event);
-      }
+    RingBuffer[] buffers = this.buffers;
+    Thread[] dispatchers = this.dispatchers;
 
-      return;
-    }
+    int fields = capturedFields;
 
     // Set the NDC and thread name for the calling thread as these
     // LoggingEvent fields were not set at event creation time.
-    event.getNDC();
-    event.getThreadName();
+    if ((fields & NDC) != 0) {
+      event.getNDC();
+    }
+
+    if ((fields & THREAD_NAME) != 0) {
+      event.getThreadName();
+    }
+
     // Get a copy of this thread's MDC.
-    event.getMDCCopy();
-    if (locationInfo) {
+    if ((fields & MDC) != 0) {
+      event.getMDCCopy();
+    }
+
+    if (locationInfo && ((fields & LOCATION_INFO) != 0)) {
       event.getLocationInformation();
     }
-    event.getRenderedMessage();
-    event.getThrowableStrRep();
 
-    synchronized (buffer) {
-      while (true) {
-        int previousSize = buffer.size();
+    //
+    //   a message which cannot change is rendered by the dispatcher
+    if (!selectiveCapture || !isImmutable(event.getMessage())) {
+      event.getRenderedMessage();
+      event.getThrowableStrRep();
+    }
 
-        if (previousSize < bufferSize) {
-          buffer.add(event);
+    while (true) {
+      int partition =
+        (buffers.length == 1) ? 0 : getPartition(event, buffers.length);
 
+      //
+      //   if dispatcher thread has died then
+      //      append subsequent events synchronously
+      //   See bug 23021
+      if (!dispatchers[partition].isAlive()) {
+        synchronized (appenders) {
+          appenders.appendLoopOnAppenders(event);
+        }
+
+        return;
+      }
+
+      RingBuffer buffer = buffers[partition];
+      RingBuffer lane = buffer.getCompanion();
+      boolean priority = (lane != null) && isPriority(event);
+      SpillFile spill = null;
+
+      if (priority) {
+        buffer = lane;
+      } else {
+        if (!blocking && isShed(event)
+              && (buffer.size() >= ((buffer.getCapacity() + 1) / 2))) {
+          discard(event);
+
+          break;
+        }
+
+        spill = getSpill(partition);
+
+        if ((spill != null) && spill.isActive()) {
           //
-          //   if buffer had been empty
-          //       signal all threads waiting on buffer
-          //       to check their conditions.
-          //
-          if (previousSize == 0) {
-            buffer.notifyAll();
+          //   older events are waiting in the spill file,
+          //      this one has to follow them.
+          if (!spill.write(event)) {
+            discard(event);
           }
 
           break;
         }
+      }
 
+      int result = buffer.offer(event);
+
+      if (result == RingBuffer.PUBLISHED) {
+        break;
+      }
+
+      if (result == RingBuffer.SEALED) {
         //
-        //   Following code is only reachable if buffer is full
-        //
-        //
-        //   if blocking and thread is not already interrupted
-        //      and not the dispatcher then
-        //      wait for a buffer notification
-        boolean discard = true;
-        if (blocking
-                && !Thread.interrupted()
-                && Thread.currentThread() != dispatcher) {
+        //   buffer replaced by setBufferSize, retry with the new one,
+        //      otherwise the appender is closed.
+        if (buffers != this.buffers) {
+          buffers = this.buffers;
+          dispatchers = this.dispatchers;
+
+          continue;
+        }
+
+        break;
+      }
+
+      //
+      //   Following code is only reachable if buffer is full
+      //
+      if (spill != null) {
+        if (spill.write(event)) {
+          //   wake up the dispatcher if it waits for events
+          buffer.signalAll();
+        } else {
+          discard(event);
+        }
+
+        break;
+      }
+
+      //
+      //   if blocking or a priority event and thread is not
+      //      already interrupted and not the dispatcher then
+      //      wait for room in the buffer
+      if ((blocking || priority)
+              && !Thread.interrupted()
+              && !isDispatcher(dispatchers)) {
+        long start = System.currentTimeMillis();
+
+        try {
           try {
-            buffer.wait();
-            discard = false;
-          } catch (InterruptedException e) {
-            //
-            //  reset interrupt status so
-            //    calling code can see interrupt on
-            //    their next wait or sleep.
-            Thread.currentThread().interrupt();
+            buffer.awaitSpace();
+          } finally {
+            blockedCount.increment();
+            blockedTime.add(System.currentTimeMillis() - start);
           }
+
+          continue;
+        } catch (InterruptedException e) {
+          //
+          //  reset interrupt status so
+          //    calling code can see interrupt on
+          //    their next wait or sleep.
+          Thread.currentThread().interrupt();
         }
+      }
 
-        //
-        //   if blocking is false or thread has been interrupted
-        //   add event to discard map.
-        //
-        if (discard) {
-          String loggerName = event.getLoggerName();
-          DiscardSummary summary = (DiscardSummary) discardMap.get(loggerName);
+      //
+      //   if blocking is false or thread has been interrupted
+      //   add event to discard map.
+      //
+      discard(event);
+
+      break;
+    }
+  }
+
+  /**
+   * Determines if an event goes to the priority lane.
+   *
+   * @param event event, may not be null.
+   * @return true if the event is at or above the priority level.
+   */
+  private boolean isPriority(final LoggingEvent event) {
+    Level level = priorityLevel;
+
+    return (level != null) && event.getLevel().isGreaterOrEqual(level);
+  }
+
+  /**
+   * Determines if an event is shed first.
+   *
+   * @param event event, may not be null.
+   * @return true if the event is at or below the shed level.
+   */
+  private boolean isShed(final LoggingEvent event) {
+    Level level = shedLevel;
+
+    return (level != null) && level.isGreaterOrEqual(event.getLevel());
+  }
+
+  /**
+   * Determines if a message can be rendered by another thread.
+   *
+   * @param message message, may be null.
+   * @return true if the message is immutable.
+   */
+  private static boolean isImmutable(final Object message) {
+    return (message instanceof String)
+      || (message instanceof ImmutableMessage)
+      || (message instanceof Integer)
+      || (message instanceof Long)
+      || (message instanceof Boolean)
+      || (message instanceof Character)
+      || (message instanceof Double)
+      || (message instanceof Float)
+      || (message instanceof Short)
+      || (message instanceof Byte);
+  }
+
+  /**
+   * Recomputes the fields captured by the logging threads.
+   */
+  private void updateCapturedFields() {
+    synchronized (appenders) {
+      if (!selectiveCapture) {
+        capturedFields = ALL;
+
+        return;
+      }
+
+      int fields = 0;
+      Enumeration iter = appenders.getAllAppenders();
+
+      if (iter != null) {
+        while (iter.hasMoreElements()) {
+          fields |= getUsedFields((Appender) iter.nextElement());
+        }
+      }
+
+      capturedFields = fields;
+    }
+  }
+
+  /**
+   * Gets the fields read by an appender. Only the writer appenders are
+   * known to read nothing but what their layout and filters read.
+   *
+   * @param appender appender, may not be null.
+   * @return fields read.
+   */
+  private static int getUsedFields(final Appender appender) {
+    if (appender instanceof EventFieldUsage) {
+      return ((EventFieldUsage) appender).getUsedFields();
+    }
+
+    if (!(appender instanceof WriterAppender)) {
+      return ALL;
+    }
+
+    int fields = getUsedFields(appender.getLayout());
+
+    for (Filter f = appender.getFilter(); f != null; f = f.getNext()) {
+      fields |= getUsedFields(f);
+    }
+
+    return fields;
+  }
+
+  /**
+   * Gets the fields read by a layout or a filter.
+   *
+   * @param component layout or filter, may be null.
+   * @return fields read.
+   */
+  private static int getUsedFields(final Object component) {
+    if (component == null) {
+      return 0;
+    }
+
+    if (component instanceof EventFieldUsage) {
+      return ((EventFieldUsage) component).getUsedFields();
+    }
+
+    return ALL;
+  }
+
+  /**
+   * Returns the fields captured by this appender, an AsyncAppender
+   * must be given at least those.
+   *
+   * @since 1.2.18
+   * @return fields captured.
+   */
+  public int getUsedFields() {
+    return capturedFields;
+  }
+
+  /**
+   * Adds an event to the summary of the discarded events.
+   *
+   * @param event event, may not be null.
+   */
+  private void discard(final LoggingEvent event) {
+    synchronized (discardMap) {
+      String loggerName = event.getLoggerName();
+      DiscardSummary summary = (DiscardSummary) discardMap.get(loggerName);
+
+      if (summary == null) {
+        summary = new DiscardSummary(event);
+        discardMap.put(loggerName, summary);
+      } else {
+        summary.add(event);
+      }
+
+      discardedCount++;
+
+      long[] count = (long[]) discardCounts.get(loggerName);
+
+      if (count != null) {
+        count[0]++;
+      } else if (discardCounts.size() < MAX_DISCARD_LOGGERS) {
+        discardCounts.put(loggerName, new long[] { 1 });
+      }
+    }
+  }
+
+  /**
+   * Records the number of events found in a buffer by a dispatcher.
+   * Events only leave a buffer when its dispatcher takes all of them,
+   * so the largest number taken at once is the high-water mark.
+   *
+   * @param depth number of events taken.
+   */
+  private void recordDepth(final int depth) {
+    if (depth > highWaterMark) {
+      synchronized (latency) {
+        if (depth > highWaterMark) {
+          highWaterMark = depth;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the partition of an event.
+   *
+   * @param event event, may not be null.
+   * @param count number of partitions.
+   * @return partition index.
+   */
+  private int getPartition(final LoggingEvent event, final int count) {
+    String key = partitionKey;
+    Object value;
+
+    if (key == null) {
+      value = event.getLoggerName();
+    } else {
+      value = event.getMDC(key);
+    }
+
+    if (value == null) {
+      return 0;
+    }
+
+    return (value.hashCode() & 0x7fffffff) % count;
+  }
+
+  /**
+   * Determines if the current thread is one of the dispatchers.
+   *
+   * @param dispatchers dispatcher threads.
+   * @return true if the current thread is a dispatcher.
+   */
+  private static boolean isDispatcher(final Thread[] dispatchers) {
+    Thread current = Thread.currentThread();
+
+    for (int i = 0; i < dispatchers.length; i++) {
+      if (dispatchers[i] == current) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Determines if events are spread over several dispatchers.
+   *
+   * @return true if there is more than one partition.
+   */
+  private boolean isPartitioned() {
+    return buffers.length > 1;
+  }
+
+  /**
+   * Close this <code>AsyncAppender</code> by interrupting the dispatcher
+   * threads which will process all pending events before exiting.
+   */
+  public void close() {
+    /**
+     * Set closed flag and seal the buffers.
+     * Should result in dispatchers terminating once the buffers are drained.
+     */
+    Thread[] threads;
+
+    synchronized (this) {
+      closed = true;
+
+      RingBuffer[] buffers = this.buffers;
+
+      for (int i = 0; i < buffers.length; i++) {
+        //
+        //   the dispatcher drains the priority lane once
+        //      the other buffer is sealed and drained.
+        RingBuffer lane = buffers[i].getCompanion();
+
+        if (lane != null) {
+          lane.seal();
+        }
+
+        buffers[i].seal();
+      }
+
+      threads = dispatchers;
+    }
+
+    try {
+      for (int i = 0; i < threads.length; i++) {
+        threads[i].join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LogLog.error(
+        "Got an InterruptedException while waiting for the "
+        + "dispatcher to finish.", e);
+    }
+
+    SpillFile[] spills = this.spills;
+
+    if (spills != null) {
+      for (int i = 0; i < spills.length; i++) {
+        spills[i].close();
+      }
+    }
+
+    //
+    //    close all attached appenders.
+    //
+    synchronized (appenders) {
+      Enumeration iter = appenders.getAllAppenders();
+
+      if (iter != null) {
+        while (iter.hasMoreElements()) {
+          Object next = iter.nextElement();
+
+          if (next instanceof Appender) {
+            ((Appender) next).close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get iterator over attached appenders.
+   * @return iterator or null if no attached appenders.
+   */
+  public Enumeration getAllAppenders() {
+    synchronized (appenders) {
+      return appenders.getAllAppenders();
+    }
+  }
+
+  /**
+   * Get appender by name.
+   *
+   * @param name name, may not be null.
+   * @return matching appender or null.
+   */
+  public Appender getAppender(final String name) {
+    synchronized (appenders) {
+      return appenders.getAppender(name);
+    }
+  }
+
+  /**
+   * Gets whether the location of the logging request call
+   * should be captured.
+   *
+   * @return the current value of the <b>LocationInfo</b> option.
+   */
+  public boolean getLocationInfo() {
+    return locationInfo;
+  }
+
+  /**
+   * Determines if specified appender is attached.
+   * @param appender appender.
+   * @return true if attached.
+   */
+  public boolean isAttached(final Appender appender) {
+    synchronized (appenders) {
+      return appenders.isAttached(appender);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean requiresLayout() {
+    return false;
+  }
+
+  /**
+   * Removes and closes all attached appenders.
+   */
+  public void removeAllAppenders() {
+    synchronized (appenders) {
+      appenders.removeAllAppenders();
+    }
+
+    updateCapturedFields();
+  }
+
+  /**
+   * Removes an appender.
+   * @param appender appender to remove.
+   */
+  public void removeAppender(final Appender appender) {
+    synchronized (appenders) {
+      appenders.removeAppender(appender);
+    }
+
+    updateCapturedFields();
+  }
+
+  /**
+   * Remove appender by name.
+   * @param name name.
+   */
+  public void removeAppender(final String name) {
+    synchronized (appenders) {
+      appenders.removeAppender(name);
+    }
+
+    updateCapturedFields();
+  }
+
+  /**
+   * The <b>LocationInfo</b> option takes a boolean value. By default, it is
+   * set to false which means there will be no effort to extract the location
+   * information related to the event. As a result, the event that will be
+   * ultimately logged will likely to contain the wrong location information
+   * (if present in the log format).
+   * <p/>
+   * <p/>
+   * Location information extraction is comparatively very slow and should be
+   * avoided unless performance is not a concern.
+   * </p>
+   * @param flag true if location information should be extracted.
+   */
+  public void setLocationInfo(final boolean flag) {
+    locationInfo = flag;
+  }
+
+  /**
+   * Sets the number of messages allowed in the event buffer
+   * before the calling thread is blocked (if blocking is true)
+   * or until messages are summarized and discarded.  Changing
+   * the size will not affect messages already in the buffer.
+   *
+   * @param size buffer size, must be positive.
+   */
+  public void setBufferSize(final int size) {
+    //
+    //   log4j 1.2 would throw exception if size was negative
+    //      and deadlock if size was zero.
+    //
+    if (size < 0) {
+      throw new java.lang.NegativeArraySizeException("size");
+    }
+
+    synchronized (this) {
+      //
+      //   don't let size be zero.
+      //
+      bufferSize = (size < 1) ? 1 : size;
+
+      //
+      //   the dispatcher drains the sealed buffer before
+      //      moving on to the new one
+      RingBuffer[] previous = buffers;
+
+      if (!closed && (bufferSize != previous[0].getCapacity())) {
+        RingBuffer[] next = new RingBuffer[previous.length];
+
+        for (int i = 0; i < next.length; i++) {
+          next[i] = new RingBuffer(bufferSize);
+          next[i].setWaitStrategy(waitStrategy);
+
+          if (previous[i].getCompanion() != null) {
+            new RingBuffer(bufferSize, next[i]);
+          }
+        }
+
+        buffers = next;
+
+        for (int i = 0; i < next.length; i++) {
+          RingBuffer lane = previous[i].getCompanion();
+
+          if (lane != null) {
+            lane.seal(next[i].getCompanion());
+          }
+
+          previous[i].seal(next[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the current buffer size.
+   * @return the current value of the <b>BufferSize</b> option.
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Sets whether appender should wait if there is no
+   * space available in the event buffer or immediately return.
+   *
+   * @since 1.2.14
+   * @param value true if appender should wait until available space in buffer.
+   */
+  public void setBlocking(final boolean value) {
+    blocking = value;
+
+    RingBuffer[] buffers = this.buffers;
+
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i].signalAll();
+    }
+  }
+
+  /**
+   * Gets whether appender should block calling thread when buffer is full.
+   * If false, messages will be counted by logger and a summary
+   * message appended after the contents of the buffer have been appended.
+   *
+   * @since 1.2.14
+   * @return true if calling thread will be blocked when buffer is full.
+   */
+  public boolean getBlocking() {
+    return blocking;
+  }
+
+  /**
+   * Sets how the dispatcher waits for events and how logging threads
+   * wait for room in the buffer when blocking. Recognized values are
+   * "Blocking", the default, in which waiting threads are notified,
+   * "Sleeping", in which they poll and sleep in between, "Yielding",
+   * in which they poll and yield in between, and "BusySpin", in which
+   * they poll continuously. The polling strategies shorten the handoff
+   * to the dispatcher at the cost of processor time, "BusySpin"
+   * dedicates a processor to the dispatcher.
+   *
+   * @since 1.2.18
+   * @param value wait strategy name.
+   */
+  public void setWaitStrategy(final String value) {
+    int strategy = RingBuffer.toWaitStrategy(value, -1);
+
+    if (strategy < 0) {
+      LogLog.warn("[" + value + "] is not a known wait strategy, using "
+        + RingBuffer.getWaitStrategyName(waitStrategy) + ".");
+
+      return;
+    }
+
+    synchronized (this) {
+      waitStrategy = strategy;
+
+      for (int i = 0; i < buffers.length; i++) {
+        buffers[i].setWaitStrategy(strategy);
+
+        RingBuffer lane = buffers[i].getCompanion();
+
+        if (lane != null) {
+          lane.setWaitStrategy(strategy);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets how the dispatcher and blocked logging threads wait.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>WaitStrategy</b> option.
+   */
+  public String getWaitStrategy() {
+    return RingBuffer.getWaitStrategyName(waitStrategy);
+  }
+
+  /**
+   * Sets the number of dispatcher threads, each serving its own
+   * partition of the buffer. The additional dispatchers are started
+   * by {@link #activateOptions}, the number cannot be reduced once
+   * they are. Each partition holds up to <b>BufferSize</b> events.
+   *
+   * @since 1.2.18
+   * @param count number of dispatchers, must be positive.
+   */
+  public void setDispatchers(final int count) {
+    if (count < 1) {
+      LogLog.warn("AsyncAppender needs at least one dispatcher.");
+
+      return;
+    }
+
+    synchronized (this) {
+      dispatcherCount = count;
+    }
+  }
+
+  /**
+   * Gets the number of dispatchers.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>Dispatchers</b> option.
+   */
+  public int getDispatchers() {
+    synchronized (this) {
+      return dispatcherCount;
+    }
+  }
+
+  /**
+   * Sets the MDC key whose value routes events to partitions when there
+   * is more than one dispatcher. Events without a value for the key go
+   * to the first partition. By default, or when the key is empty, events
+   * are routed by logger name.
+   *
+   * @since 1.2.18
+   * @param key MDC key, may be null.
+   */
+  public void setPartitionKey(final String key) {
+    if ((key == null) || (key.trim().length() == 0)) {
+      partitionKey = null;
+    } else {
+      partitionKey = key.trim();
+    }
+  }
+
+  /**
+   * Gets the MDC key routing events to partitions.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>PartitionKey</b> option,
+   * null if events are routed by logger name.
+   */
+  public String getPartitionKey() {
+    return partitionKey;
+  }
+
+  /**
+   * Sets the level from which events are given a buffer of their own,
+   * drained first by the dispatcher, and are never discarded. The
+   * buffers are created by {@link #activateOptions}.
+   *
+   * @since 1.2.18
+   * @param level priority level, null for none.
+   */
+  public void setPriorityLevel(final Level level) {
+    priorityLevel = level;
+  }
+
+  /**
+   * Gets the level from which events are given priority.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>PriorityLevel</b> option.
+   */
+  public Level getPriorityLevel() {
+    return priorityLevel;
+  }
+
+  /**
+   * Sets the level up to which events may only fill half of the buffer
+   * when <b>Blocking</b> is false.
+   *
+   * @since 1.2.18
+   * @param level shed level, null for none.
+   */
+  public void setShedLevel(final Level level) {
+    shedLevel = level;
+  }
+
+  /**
+   * Gets the level up to which events are shed first.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>ShedLevel</b> option.
+   */
+  public Level getShedLevel() {
+    return shedLevel;
+  }
+
+  /**
+   * Sets the maximum number of batches of priority events dispatched in
+   * a row while other events wait. The default is 8.
+   *
+   * @since 1.2.18
+   * @param value number of batches, must be positive.
+   */
+  public void setFairness(final int value) {
+    if (value < 1) {
+      LogLog.warn("AsyncAppender fairness must be positive.");
+
+      return;
+    }
+
+    fairness = value;
+  }
+
+  /**
+   * Gets the maximum number of priority batches dispatched in a row.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>Fairness</b> option.
+   */
+  public int getFairness() {
+    return fairness;
+  }
+
+  /**
+   * Sets whether the logging threads only capture the fields read by the
+   * attached appenders, and leave the rendering of immutable messages to
+   * the dispatcher. The fields read are determined when appenders are
+   * attached or removed and when {@link #activateOptions} is called,
+   * which should be called again if the layout or filters of an attached
+   * appender are changed afterwards.
+   *
+   * @since 1.2.18
+   * @param value true to capture only the fields read downstream.
+   */
+  public void setSelectiveCapture(final boolean value) {
+    selectiveCapture = value;
+    updateCapturedFields();
+  }
+
+  /**
+   * Gets whether the logging threads only capture the fields read
+   * downstream.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>SelectiveCapture</b> option.
+   */
+  public boolean getSelectiveCapture() {
+    return selectiveCapture;
+  }
+
+  /**
+   * Sets the file to which events are written when the buffer is full,
+   * instead of blocking or discarding them. With several dispatchers,
+   * the index of the partition is appended to the name of the files of
+   * the partitions other than the first. The file is opened by
+   * {@link #activateOptions}.
+   *
+   * @since 1.2.18
+   * @param file spill file name, may be null.
+   */
+  public void setSpillFile(final String file) {
+    synchronized (this) {
+      if ((file == null) || (file.trim().length() == 0)) {
+        spillFileName = null;
+      } else {
+        spillFileName = file.trim();
+      }
+    }
+  }
+
+  /**
+   * Gets the spill file name.
+   *
+   * @since 1.2.18
+   * @return the current value of the <b>SpillFile</b> option.
+   */
+  public String getSpillFile() {
+    synchronized (this) {
+      return spillFileName;
+    }
+  }
+
+  /**
+   * Sets the maximum size of each spill file, in bytes unless suffixed
+   * with "KB", "MB" or "GB". The default is 64MB.
+   *
+   * @since 1.2.18
+   * @param value maximum size.
+   */
+  public void setMaxSpillSize(final String value) {
+    synchronized (this) {
+      maxSpillSize = OptionConverter.toFileSize(value, maxSpillSize);
+    }
+  }
+
+  /**
+   * Sets the maximum size of each spill file in bytes.
+   *
+   * @since 1.2.18
+   * @param size maximum size.
+   */
+  public void setMaximumSpillSize(final long size) {
+    synchronized (this) {
+      maxSpillSize = size;
+    }
+  }
+
+  /**
+   * Gets the maximum size of each spill file in bytes.
+   *
+   * @since 1.2.18
+   * @return maximum size.
+   */
+  public long getMaximumSpillSize() {
+    synchronized (this) {
+      return maxSpillSize;
+    }
+  }
 
-          if (summary == null) {
-            summary = new DiscardSummary(event);
-            discardMap.put(loggerName, summary);
-          } else {
-            summary.add(event);
-          }
+  /**
+   * Gets the number of events written to the spill files.
+   *
+   * @since 1.2.18
+   * @return number of events.
+   */
+  public long getSpilledCount() {
+    long count = 0;
+    SpillFile[] spills = this.spills;
 
-          break;
-        }
+    if (spills != null) {
+      for (int i = 0; i < spills.length; i++) {
+        count += spills[i].getSpilledCount();
       }
     }
+
+    return count;
   }
 
   /**
-   * Close this <code>AsyncAppender</code> by interrupting the dispatcher
-   * thread which will process all pending events before exiting.
+   * Gets the number of events replayed from the spill files.
+   *
+   * @since 1.2.18
+   * @return number of events.
    */
-  public void close() {
-    /**
-     * Set closed flag and notify all threads to check their conditions.
-     * Should result in dispatcher terminating.
-     */
-    synchronized (buffer) {
-      closed = true;
-      buffer.notifyAll();
-    }
+  public long getReplayedCount() {
+    long count = 0;
+    SpillFile[] spills = this.spills;
 
-    try {
-      dispatcher.join();
-    } catch (InterruptedException e) {
-      Thread.currentThread().interrupt();
-      org.apache.log4j.helpers.LogLog.error(
-        "Got an InterruptedException while waiting for the "
-        + "dispatcher to finish.", e);
+    if (spills != null) {
+      for (int i = 0; i < spills.length; i++) {
+        count += spills[i].getReplayedCount();
+      }
     }
 
-    //
-    //    close all attached appenders.
-    //
-    synchronized (appenders) {
-      Enumeration iter = appenders.getAllAppenders();
+    return count;
+  }
 
-      if (iter != null) {
-        while (iter.hasMoreElements()) {
-          Object next = iter.nextElement();
+  /**
+   * Gets the number of events which did not fit in the spill files
+   * and were discarded.
+   *
+   * @since 1.2.18
+   * @return number of events.
+   */
+  public long getSpillRejectedCount() {
+    long count = 0;
+    SpillFile[] spills = this.spills;
 
-          if (next instanceof Appender) {
-            ((Appender) next).close();
-          }
-        }
+    if (spills != null) {
+      for (int i = 0; i < spills.length; i++) {
+        count += spills[i].getRejectedCount();
       }
     }
+
+    return count;
   }
 
   /**
-   * Get iterator over attached appenders.
-   * @return iterator or null if no attached appenders.
+   * Gets the number of events waiting in the spill files.
+   *
+   * @since 1.2.18
+   * @return number of events.
    */
-  public Enumeration getAllAppenders() {
-    synchronized (appenders) {
-      return appenders.getAllAppenders();
+  public int getSpillBacklog() {
+    int count = 0;
+    SpillFile[] spills = this.spills;
+
+    if (spills != null) {
+      for (int i = 0; i < spills.length; i++) {
+        count += spills[i].getCount();
+      }
     }
+
+    return count;
   }
 
   /**
-   * Get appender by name.
+   * Gets the number of events waiting in the buffers, priority lanes
+   * included.
    *
-   * @param name name, may not be null.
-   * @return matching appender or null.
+   * @since 1.2.18
+   * @return number of events.
    */
-  public Appender getAppender(final String name) {
-    synchronized (appenders) {
-      return appenders.getAppender(name);
+  public int getQueueDepth() {
+    int depth = 0;
+    RingBuffer[] buffers = this.buffers;
+
+    for (int i = 0; i < buffers.length; i++) {
+      depth += buffers[i].size();
+
+      RingBuffer lane = buffers[i].getCompanion();
+
+      if (lane != null) {
+        depth += lane.size();
+      }
     }
+
+    return depth;
   }
 
   /**
-   * Gets whether the location of the logging request call
-   * should be captured.
+   * Gets the largest number of events held at once by a buffer or
+   * priority lane since the statistics were reset.
    *
-   * @return the current value of the <b>LocationInfo</b> option.
+   * @since 1.2.18
+   * @return number of events.
    */
-  public boolean getLocationInfo() {
-    return locationInfo;
+  public int getQueueHighWaterMark() {
+    return highWaterMark;
   }
 
   /**
-   * Determines if specified appender is attached.
-   * @param appender appender.
-   * @return true if attached.
+   * Gets the number of times a logging thread waited for room in a
+   * full buffer.
+   *
+   * @since 1.2.18
+   * @return number of waits.
    */
-  public boolean isAttached(final Appender appender) {
-    synchronized (appenders) {
-      return appenders.isAttached(appender);
-    }
+  public long getBlockedCount() {
+    return blockedCount.get();
   }
 
   /**
-   * {@inheritDoc}
+   * Gets the time logging threads spent waiting for room in a full
+   * buffer.
+   *
+   * @since 1.2.18
+   * @return time in milliseconds.
    */
-  public boolean requiresLayout() {
-    return false;
+  public long getBlockedTime() {
+    return blockedTime.get();
   }
 
   /**
-   * Removes and closes all attached appenders.
+   * Gets the number of events discarded because a buffer was full or
+   * a spill file rejected them.
+   *
+   * @since 1.2.18
+   * @return number of events.
    */
-  public void removeAllAppenders() {
-    synchronized (appenders) {
-      appenders.removeAllAppenders();
+  public long getDiscardedCount() {
+    synchronized (discardMap) {
+      return discardedCount;
     }
   }
 
   /**
-   * Removes an appender.
-   * @param appender appender to remove.
+   * Gets the number of discarded events of each logger, formatted as
+   * <code>name=count</code> pairs sorted by logger name. Only the first
+   * 256 loggers with discarded events are listed.
+   *
+   * @since 1.2.18
+   * @return discarded events by logger, empty if none.
    */
-  public void removeAppender(final Appender appender) {
-    synchronized (appenders) {
-      appenders.removeAppender(appender);
+  public String getDiscardedByLogger() {
+    String[] names;
+    long[] counts;
+
+    synchronized (discardMap) {
+      names =
+        (String[]) discardCounts.keySet().toArray(
+          new String[discardCounts.size()]);
+      Arrays.sort(names);
+      counts = new long[names.length];
+
+      for (int i = 0; i < names.length; i++) {
+        counts[i] = ((long[]) discardCounts.get(names[i]))[0];
+      }
     }
-  }
 
-  /**
-   * Remove appender by name.
-   * @param name name.
-   */
-  public void removeAppender(final String name) {
-    synchronized (appenders) {
-      appenders.removeAppender(name);
+    StringBuffer buf = new StringBuffer();
+
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        buf.append(", ");
+      }
+
+      buf.append(names[i]).append('=').append(counts[i]);
     }
+
+    return buf.toString();
   }
 
   /**
-   * The <b>LocationInfo</b> option takes a boolean value. By default, it is
-   * set to false which means there will be no effort to extract the location
-   * information related to the event. As a result, the event that will be
-   * ultimately logged will likely to contain the wrong location information
-   * (if present in the log format).
-   * <p/>
-   * <p/>
-   * Location information extraction is comparatively very slow and should be
-   * avoided unless performance is not a concern.
-   * </p>
-   * @param flag true if location information should be extracted.
+   * Gets the upper bounds in milliseconds of the buckets of the queue
+   * latency histogram. The last bucket has no bound.
+   *
+   * @since 1.2.18
+   * @return bounds.
    */
-  public void setLocationInfo(final boolean flag) {
-    locationInfo = flag;
+  public long[] getQueueLatencyBounds() {
+    return latency.getBounds();
   }
 
   /**
-   * Sets the number of messages allowed in the event buffer
-   * before the calling thread is blocked (if blocking is true)
-   * or until messages are summarized and discarded.  Changing
-   * the size will not affect messages already in the buffer.
+   * Gets the number of events in each bucket of the queue latency
+   * histogram, that is by time from the creation of the event to its
+   * dispatch to the attached appenders.
    *
-   * @param size buffer size, must be positive.
+   * @since 1.2.18
+   * @return counts, one more than the bounds.
    */
-  public void setBufferSize(final int size) {
-    //
-    //   log4j 1.2 would throw exception if size was negative
-    //      and deadlock if size was zero.
-    //
-    if (size < 0) {
-      throw new java.lang.NegativeArraySizeException("size");
-    }
-
-    synchronized (buffer) {
-      //
-      //   don't let size be zero.
-      //
-      bufferSize = (size < 1) ? 1 : size;
-      buffer.notifyAll();
-    }
+  public long[] getQueueLatencyHistogram() {
+    return latency.getCounts();
   }
 
   /**
-   * Gets the current buffer size.
-   * @return the current value of the <b>BufferSize</b> option.
+   * Gets the queue latency histogram as a readable string.
+   *
+   * @since 1.2.18
+   * @return histogram, empty if no event was dispatched.
    */
-  public int getBufferSize() {
-    return bufferSize;
+  public String getQueueLatency() {
+    return latency.toString();
   }
 
   /**
-   * Sets whether appender should wait if there is no
-   * space available in the event buffer or immediately return.
+   * Gets the bound in milliseconds of the latency bucket under which
+   * 99% of the events were dispatched.
    *
-   * @since 1.2.14
-   * @param value true if appender should wait until available space in buffer.
+   * @since 1.2.18
+   * @return bound, -1 if unknown.
    */
-  public void setBlocking(final boolean value) {
-    synchronized (buffer) {
-      blocking = value;
-      buffer.notifyAll();
-    }
+  public long getQueueLatency99thPercentile() {
+    return latency.getPercentile(99);
   }
 
   /**
-   * Gets whether appender should block calling thread when buffer is full.
-   * If false, messages will be counted by logger and a summary
-   * message appended after the contents of the buffer have been appended.
+   * Resets the high-water mark, blocking, discard and latency
+   * statistics.
    *
-   * @since 1.2.14
-   * @return true if calling thread will be blocked when buffer is full.
+   * @since 1.2.18
    */
-  public boolean getBlocking() {
-    return blocking;
+  public void resetStatistics() {
+    synchronized (latency) {
+      highWaterMark = 0;
+    }
+
+    blockedCount.reset();
+    blockedTime.reset();
+    latency.reset();
+
+    synchronized (discardMap) {
+      discardCounts.clear();
+      discardedCount = 0;
+    }
   }
 
   /**
@@ -435,6 +1745,21 @@ public class AsyncAppender extends AppenderSkeleton
      */
     private int count;
 
+    /**
+     * Levels of the messages discarded, most severe first.
+     */
+    private Level[] levels = new Level[4];
+
+    /**
+     * Count of messages discarded for each level.
+     */
+    private int[] levelCounts = new int[4];
+
+    /**
+     * Number of levels.
+     */
+    private int levelCount = 0;
+
     /**
      * Create new instance.
      *
@@ -443,6 +1768,7 @@ public class AsyncAppender extends AppenderSkeleton
     public DiscardSummary(final LoggingEvent event) {
       maxEvent = event;
       count = 1;
+      addLevel(event.getLevel());
     }
 
     /**
@@ -456,6 +1782,41 @@ public class AsyncAppender extends AppenderSkeleton
       }
 
       count++;
+      addLevel(event.getLevel());
+    }
+
+    /**
+     * Count a discarded message of a level.
+     *
+     * @param level level, may not be null.
+     */
+    private void addLevel(final Level level) {
+      int i = 0;
+
+      while ((i < levelCount) && (levels[i].toInt() > level.toInt())) {
+        i++;
+      }
+
+      if ((i < levelCount) && (levels[i].toInt() == level.toInt())) {
+        levelCounts[i]++;
+
+        return;
+      }
+
+      if (levelCount == levels.length) {
+        Level[] newLevels = new Level[levelCount * 2];
+        int[] newCounts = new int[levelCount * 2];
+        System.arraycopy(levels, 0, newLevels, 0, levelCount);
+        System.arraycopy(levelCounts, 0, newCounts, 0, levelCount);
+        levels = newLevels;
+        levelCounts = newCounts;
+      }
+
+      System.arraycopy(levels, i, levels, i + 1, levelCount - i);
+      System.arraycopy(levelCounts, i, levelCounts, i + 1, levelCount - i);
+      levels[i] = level;
+      levelCounts[i] = 1;
+      levelCount++;
     }
 
     /**
@@ -469,6 +1830,21 @@ public class AsyncAppender extends AppenderSkeleton
           "Discarded {0} messages due to full event buffer including: {1}",
           new Object[] { new Integer(count), maxEvent.getMessage() });
 
+      if (levelCount > 1) {
+        StringBuffer buf = new StringBuffer(msg);
+        buf.append(" (");
+
+        for (int i = 0; i < levelCount; i++) {
+          if (i > 0) {
+            buf.append(", ");
+          }
+
+          buf.append(levels[i]).append(": ").append(levelCounts[i]);
+        }
+
+        msg = buf.append(')').toString();
+      }
+
       return new LoggingEvent(
               "org.apache.log4j.AsyncAppender.DONT_REPORT_LOCATION",
               Logger.getLogger(maxEvent.getLoggerName()),
@@ -488,9 +1864,15 @@ public class AsyncAppender extends AppenderSkeleton
     private final AsyncAppender parent;
 
     /**
-     * Event buffer.
+     * Index of the partition served.
+     */
+    private final int partition;
+
+    /**
+     * Event buffer, followed by its successors when the buffer size
+     * changes.
      */
-    private final List buffer;
+    private RingBuffer buffer;
 
     /**
      * Map of DiscardSummary keyed by logger name.
@@ -506,15 +1888,18 @@ public class AsyncAppender extends AppenderSkeleton
      * Create new instance of dispatcher.
      *
      * @param parent     parent AsyncAppender, may not be null.
+     * @param partition  index of the partition served.
      * @param buffer     event buffer, may not be null.
      * @param discardMap discard map, may not be null.
      * @param appenders  appenders, may not be null.
      */
     public Dispatcher(
-      final AsyncAppender parent, final List buffer, final Map discardMap,
+      final AsyncAppender parent, final int partition,
+      final RingBuffer buffer, final Map discardMap,
       final AppenderAttachableImpl appenders) {
 
       this.parent = parent;
+      this.partition = partition;
       this.buffer = buffer;
       this.appenders = appenders;
       this.discardMap = discardMap;
@@ -524,7 +1909,8 @@ public class AsyncAppender extends AppenderSkeleton
      * {@inheritDoc}
      */
     public void run() {
-      boolean isActive = true;
+      LoggingEvent[] events = new LoggingEvent[buffer.getCapacity()];
+      int priorityBatches = 0;
 
       //
       //   if interrupted (unlikely), end thread
@@ -533,64 +1919,212 @@ public class AsyncAppender extends AppenderSkeleton
         //
         //   loop until the AsyncAppender is closed.
         //
-        while (isActive) {
-          LoggingEvent[] events = null;
-
-          //
-          //   extract pending events while synchronized
-          //       on buffer
+        while (true) {
           //
-          synchronized (buffer) {
-            int bufferSize = buffer.size();
-            isActive = !parent.closed;
-
-            while ((bufferSize == 0) && isActive) {
-              buffer.wait();
-              bufferSize = buffer.size();
-              isActive = !parent.closed;
+          //   the priority lane is drained first, up to the
+          //      fairness bound if it keeps other events waiting.
+          RingBuffer lane = buffer.getCompanion();
+
+          if ((lane != null) && (priorityBatches < parent.fairness)) {
+            int count = lane.poll(events);
+
+            if (count > 0) {
+              parent.recordDepth(count);
+              dispatch(events, count);
+              priorityBatches++;
+
+              continue;
             }
+          }
 
-            if (bufferSize > 0) {
-              events = new LoggingEvent[bufferSize + discardMap.size()];
-              buffer.toArray(events);
+          priorityBatches = 0;
 
-              //
-              //   add events due to buffer overflow
-              //
-              int index = bufferSize;
+          SpillFile spill = parent.getSpill(partition);
+          int count;
 
-              for (
-                Iterator iter = discardMap.values().iterator();
-                  iter.hasNext();) {
-                events[index++] = ((DiscardSummary) iter.next()).createEvent();
+          //
+          //   events in the buffer are older than those in the
+          //      spill file, which is replayed once the buffer is empty.
+          //      The wait is bounded as spill files are opened
+          //      and written without notice, without a spill file
+          //      an idle dispatcher sleeps until woken.
+          if (spill == null) {
+            count = buffer.take(events, 0);
+          } else if (spill.hasPending()) {
+            count = buffer.poll(events);
+          } else {
+            count = buffer.take(events, SPILL_CHECK_INTERVAL);
+          }
+
+          if (count < 0) {
+            //
+            //   drained buffer is sealed, either replaced
+            //      by setBufferSize or closed. Its priority
+            //      lane was sealed before.
+            lane = buffer.getCompanion();
+
+            if (lane != null) {
+              while ((count = lane.take(events)) >= 0) {
+                dispatch(events, count);
+              }
+            }
+
+            RingBuffer next = buffer.getSuccessor();
+
+            if (next == null) {
+              if (spill != null) {
+                while (replay(spill, events)) {
+                }
               }
 
-              //
-              //    clear buffer and discard map
-              //
-              buffer.clear();
-              discardMap.clear();
+              dispatch(events, 0);
+
+              break;
+            }
+
+            buffer = next;
 
-              //
-              //    allow blocked appends to continue
-              buffer.notifyAll();
+            if (events.length < buffer.getCapacity()) {
+              events = new LoggingEvent[buffer.getCapacity()];
             }
+
+            continue;
           }
 
-          //
-          //   process events after lock on buffer is released.
-          //
-          if (events != null) {
-            for (int i = 0; i < events.length; i++) {
-              synchronized (appenders) {
-                appenders.appendLoopOnAppenders(events[i]);
-              }
+          if (count == 0) {
+            if (spill != null) {
+              replay(spill, events);
             }
+
+            continue;
           }
+
+          parent.recordDepth(count);
+          dispatch(events, count);
         }
       } catch (InterruptedException ex) {
         Thread.currentThread().interrupt();
       }
     }
+
+    /**
+     * Append a batch of events from the spill file.
+     *
+     * @param spill spill file, may not be null.
+     * @param events event array, may not be null.
+     * @return true if the file has more events to replay.
+     */
+    private boolean replay(final SpillFile spill, final LoggingEvent[] events) {
+      int count = spill.read(events);
+      dispatch(events, count);
+
+      //
+      //   the events are only removed once appended,
+      //      they are replayed again if the process dies before.
+      spill.release();
+
+      return spill.hasPending();
+    }
+
+    /**
+     * Append events taken from the buffer followed by the
+     * summaries of the events discarded due to buffer overflow.
+     *
+     * @param events events, may not be null.
+     * @param count number of events.
+     */
+    private void dispatch(final LoggingEvent[] events, final int count) {
+      //
+      //   events are discarded while the buffer is full, that is
+      //      after the events just taken were logged, so their
+      //      summaries are appended last.
+      LoggingEvent[] summaries = null;
+
+      if (count > 0) {
+        long now = System.currentTimeMillis();
+
+        //  one lock for the batch rather than one per event
+        synchronized (parent.latency) {
+          for (int i = 0; i < count; i++) {
+            parent.latency.record(now - events[i].timeStamp);
+          }
+        }
+      }
+
+      synchronized (discardMap) {
+        if (!discardMap.isEmpty()) {
+          summaries = new LoggingEvent[discardMap.size()];
+
+          int index = 0;
+
+          for (
+            Iterator iter = discardMap.values().iterator();
+              iter.hasNext();) {
+            summaries[index++] = ((DiscardSummary) iter.next()).createEvent();
+          }
+
+          discardMap.clear();
+        }
+      }
+
+      //
+      //   with several dispatchers, holding the appender list lock
+      //      would serialize them, each batch is appended to a
+      //      snapshot of the list instead.
+      if (parent.isPartitioned()) {
+        append(appenders.getAppenderArray(), events, count, summaries);
+      } else {
+        synchronized (appenders) {
+          append(appenders.getAppenderArray(), events, count, summaries);
+        }
+      }
+
+      for (int i = 0; i < count; i++) {
+        events[i] = null;
+      }
+    }
+
+    /**
+     * Append a batch of events and the discard summaries to each
+     * appender, in a single call to appenders which accept batches.
+     *
+     * @param targets appenders, may not be null.
+     * @param events events, may not be null.
+     * @param count number of events.
+     * @param summaries discard summaries, may be null.
+     */
+    private void append(
+      final Appender[] targets, final LoggingEvent[] events, final int count,
+      final LoggingEvent[] summaries) {
+      for (int i = 0; i < targets.length; i++) {
+        append(targets[i], events, count);
+
+        if (summaries != null) {
+          append(targets[i], summaries, summaries.length);
+        }
+      }
+    }
+
+    /**
+     * Append events to an appender.
+     *
+     * @param target appender, may not be null.
+     * @param events events, may not be null.
+     * @param count number of events.
+     */
+    private void append(
+      final Appender target, final LoggingEvent[] events, final int count) {
+      if (count == 0) {
+        return;
+      }
+
+      if (isBatched(target)) {
+        ((BatchAppender) target).doAppend(events, count);
+      } else {
+        for (int i = 0; i < count; i++) {
+          target.doAppend(events[i]);
+        }
+      }
+    }
   }
 }
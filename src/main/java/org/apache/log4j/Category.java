@@ -32,6 +32,7 @@
 package org.apache.log4j;
 
 import org.apache.log4j.spi.AppenderAttachable;
+import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.LoggerRepository;
 import org.apache.log4j.spi.HierarchyEventListener;
@@ -39,9 +40,12 @@ import org.apache.log4j.helpers.NullEnumeration;
 import org.apache.log4j.helpers.AppenderAttachableImpl;
 
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 
 /**
@@ -112,6 +116,65 @@ public class Category implements AppenderAttachable {
      ancestor which is the root category. */
   volatile protected Category parent;
 
+  /**
+     The effective level of this category as last computed by the
+     {@link Hierarchy}, or <code>null</code> if it has not been
+     computed. Only the <code>Hierarchy</code> class may assign this
+     field, it does so whenever the level of this category or one of
+     its ancestors changes. */
+  volatile Level effectiveLevel;
+
+  /**
+     The appenders inherited by this category, additivity resolved,
+     as last computed by the {@link Hierarchy}, or <code>null</code>
+     if they have not been computed. Only the <code>Hierarchy</code>
+     class may assign this field. */
+  volatile Appender[] effectiveAppenders;
+
+  /**
+     Logical time at which this category was last retrieved from its
+     {@link Hierarchy}, only maintained when the hierarchy bounds its
+     number of loggers. */
+  int lastUsed;
+
+  /**
+     The lowest threshold of the appenders in {@link
+     #effectiveAppenders}, computed on demand. It is valid as long as
+     its generation matches {@link #appenderThresholdGeneration}. */
+  private volatile AppenderThreshold appenderThreshold;
+
+  /**
+     Incremented whenever the threshold of an appender or the appender
+     chain of a category changes, which invalidates the thresholds
+     cached by all categories. */
+  private static volatile int appenderThresholdGeneration = 0;
+
+  /**
+     The level installed for the current thread by {@link
+     LogManager#setThreadLevel}, if any. */
+  private static final ThreadLocal threadLevel = new ThreadLocal();
+
+  /**
+     The number of threads which currently have a level installed.
+     The thread local is only consulted when this is non-zero, which
+     keeps the cost of the feature to a single volatile read while it
+     is not in use. */
+  private static volatile int threadLevelCount = 0;
+
+  /**
+     The threads which have a level installed, guarded by the class
+     lock. A thread which ends without removing its level is forgotten
+     by {@link #purgeThreadLevels}, so that the count drops back to
+     zero. */
+  private static final Map threadLevelOwners = new WeakHashMap();
+
+  /**
+     Minimum number of milliseconds between two purges of the ended
+     threads. */
+  private static final long THREAD_LEVEL_PURGE_INTERVAL = 1000;
+
+  private static volatile long nextThreadLevelPurge = 0;
+
   /**
      The fully qualified name of the Category class. See also the
      getFQCN method. */
@@ -123,7 +186,7 @@ public class Category implements AppenderAttachable {
   protected LoggerRepository repository;
 
 
-  AppenderAttachableImpl aai;
+  volatile AppenderAttachableImpl aai;
 
   /** Additivity is set to true by default, that is children inherit
       the appenders of their ancestors by default. If this variable is
@@ -132,7 +195,7 @@ public class Category implements AppenderAttachable {
       of this category will inherit its appenders, unless the children
       have their additivity flag set to <code>false</code> too. See
       the user manual for more details. */
-  protected boolean additive = true;
+  volatile protected boolean additive = true;
 
   /**
      This constructor created a new <code>Category</code> instance and
@@ -155,14 +218,16 @@ public class Category implements AppenderAttachable {
      <p>If <code>newAppender</code> is already in the list of
      appenders, then it won't be added again.
   */
-  synchronized
   public
   void addAppender(Appender newAppender) {
-    if(aai == null) {
-      aai = new AppenderAttachableImpl();
+    synchronized(this) {
+      if(aai == null) {
+        aai = new AppenderAttachableImpl();
+      }
+      aai.addAppender(newAppender);
+      repository.fireAddAppenderEvent(this, newAppender);
     }
-    aai.addAppender(newAppender);
-    repository.fireAddAppenderEvent(this, newAppender);
+    fireAppendersChangedEvent();
   }
 
   /**
@@ -195,16 +260,30 @@ public class Category implements AppenderAttachable {
      hierarchy circumventing any evaluation of whether to log or not
      to log the particular log request.
 
+     <p>No lock is taken, concurrent calls to addAppender,
+     removeAppender,... publish a new copy of the appender list
+     which is picked up by subsequent events.
+
+     <p>Categories attached to a {@link Hierarchy} use the appender
+     chain precomputed by the hierarchy instead of walking their
+     ancestors.
+
      @param event the event to log.  */
   public
   void callAppenders(LoggingEvent event) {
     int writes = 0;
 
-    for(Category c = this; c != null; c=c.parent) {
-      // Protected against simultaneous call to addAppender, removeAppender,...
-      synchronized(c) {
-	if(c.aai != null) {
-	  writes += c.aai.appendLoopOnAppenders(event);
+    Appender[] chain = effectiveAppenders;
+    if(chain != null) {
+      for(int i = 0; i < chain.length; i++) {
+	chain[i].doAppend(event);
+      }
+      writes = chain.length;
+    } else {
+      for(Category c = this; c != null; c=c.parent) {
+	AppenderAttachableImpl a = c.aai;
+	if(a != null) {
+	  writes += a.appendLoopOnAppenders(event);
 	}
 	if(!c.additive) {
 	  break;
@@ -217,6 +296,32 @@ public class Category implements AppenderAttachable {
     }
   }
 
+  /**
+     Collect the appenders attached to this category and to its
+     ancestors up to the first non-additive one, in the order in
+     which {@link #callAppenders} invokes them.
+
+     @since 1.2.18 */
+  final
+  Appender[] computeEffectiveAppenders() {
+    Vector v = new Vector();
+    for(Category c = this; c != null; c=c.parent) {
+      AppenderAttachableImpl a = c.aai;
+      if(a != null) {
+	Appender[] attached = a.getAppenderArray();
+	for(int i = 0; i < attached.length; i++) {
+	  v.addElement(attached[i]);
+	}
+      }
+      if(!c.additive) {
+	break;
+      }
+    }
+    Appender[] chain = new Appender[v.size()];
+    v.copyInto(chain);
+    return chain;
+  }
+
   /**
      Close all attached appenders implementing the AppenderAttachable
      interface.
@@ -258,7 +363,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.DEBUG_INT)) {
         return;
     }
-    if(Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.DEBUG, message, null)) {
       forcedLog(FQCN, Level.DEBUG, message, null);
     }
   }
@@ -278,7 +383,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.DEBUG_INT)) {
         return;
     }
-    if(Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.DEBUG, message, t)) {
         forcedLog(FQCN, Level.DEBUG, message, t);
     }
   }
@@ -306,7 +411,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.ERROR_INT)) {
         return;
     }
-    if(Level.ERROR.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.ERROR, message, null)) {
         forcedLog(FQCN, Level.ERROR, message, null);
     }
   }
@@ -325,7 +430,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.ERROR_INT)) {
         return;
     }
-    if(Level.ERROR.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.ERROR, message, t)) {
         forcedLog(FQCN, Level.ERROR, message, t);
     }
 
@@ -370,7 +475,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.FATAL_INT)) {
         return;
     }
-    if(Level.FATAL.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.FATAL, message, null)) {
         forcedLog(FQCN, Level.FATAL, message, null);
     }
   }
@@ -389,7 +494,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.FATAL_INT)) {
         return;
     }
-    if(Level.FATAL.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.FATAL, message, t)) {
         forcedLog(FQCN, Level.FATAL, message, t);
     }
   }
@@ -397,12 +502,200 @@ public class Category implements AppenderAttachable {
 
   /**
      This method creates a new logging event and logs the event
-     without further checks.  */
+     without further checks. No event is created if none of the
+     appenders inherited by this category would accept it because of
+     their threshold.  */
   protected
   void forcedLog(String fqcn, Priority level, Object message, Throwable t) {
+    if(!isAsSevereAsAppenderThreshold(level.level)) {
+      return;
+    }
     callAppenders(new LoggingEvent(fqcn, this, level, message, t));
   }
 
+  /**
+     Returns <code>false</code> if all the appenders inherited by this
+     category have a threshold above <code>level</code> and would
+     therefore ignore an event of that level, <code>true</code>
+     otherwise. Appenders other than {@link AppenderSkeleton}s are
+     assumed to accept all levels.
+
+     @since 1.2.18 */
+  final
+  boolean isAsSevereAsAppenderThreshold(int level) {
+    AppenderThreshold t = appenderThreshold;
+    if(t == null || t.generation != appenderThresholdGeneration) {
+      t = computeAppenderThreshold();
+    }
+    return level >= t.level;
+  }
+
+  private
+  AppenderThreshold computeAppenderThreshold() {
+    // read the generation first, a concurrent change makes the
+    // result stale rather than wrong
+    int generation = appenderThresholdGeneration;
+    Appender[] chain = effectiveAppenders;
+    int min = Level.ALL_INT;
+    if(chain != null && chain.length > 0) {
+      min = Level.OFF_INT;
+      for(int i = 0; i < chain.length && min > Level.ALL_INT; i++) {
+	int threshold = Level.ALL_INT;
+	if(chain[i] instanceof AppenderSkeleton) {
+	  Priority p = ((AppenderSkeleton) chain[i]).getThreshold();
+	  if(p != null) {
+	    threshold = p.level;
+	  }
+	}
+	if(threshold < min) {
+	  min = threshold;
+	}
+      }
+    }
+    AppenderThreshold t = new AppenderThreshold(generation, min);
+    appenderThreshold = t;
+    return t;
+  }
+
+  /**
+     Invalidate the appender thresholds cached by all categories. */
+  static
+  synchronized
+  void invalidateAppenderThresholds() {
+    appenderThresholdGeneration++;
+  }
+
+  /**
+     Install <code>level</code> for the current thread, replacing any
+     level previously installed. A <code>null</code> level removes
+     the installed level.
+
+     @since 1.2.18 */
+  static
+  synchronized
+  void setThreadLevel(Level level) {
+    if(level == null) {
+      removeThreadLevel();
+      return;
+    }
+    if(threadLevel.get() == null) {
+      threadLevelOwners.put(Thread.currentThread(), Boolean.TRUE);
+      threadLevelCount = threadLevelOwners.size();
+    }
+    threadLevel.set(level);
+  }
+
+  /**
+     Remove the level installed for the current thread, if any.
+
+     @since 1.2.18 */
+  static
+  synchronized
+  void removeThreadLevel() {
+    if(threadLevel.get() != null) {
+      threadLevel.set(null);
+      threadLevelOwners.remove(Thread.currentThread());
+      threadLevelCount = threadLevelOwners.size();
+    }
+  }
+
+  /**
+     Return the level installed for the current thread, or
+     <code>null</code> if there is none.
+
+     @since 1.2.18 */
+  static
+  Level getThreadLevel() {
+    if(threadLevelCount == 0) {
+      return null;
+    }
+    return (Level) threadLevel.get();
+  }
+
+  /**
+     Forget the threads which ended without removing their level, at
+     most once per purge interval. Called by the threads without a
+     level while the count is not zero.
+
+     @since 1.2.18 */
+  static
+  void purgeThreadLevels() {
+    long now = System.currentTimeMillis();
+    if(now < nextThreadLevelPurge) {
+      return;
+    }
+    synchronized(Category.class) {
+      nextThreadLevelPurge = now + THREAD_LEVEL_PURGE_INTERVAL;
+      Iterator it = threadLevelOwners.keySet().iterator();
+      while(it.hasNext()) {
+	if(!((Thread) it.next()).isAlive()) {
+	  it.remove();
+	}
+      }
+      threadLevelCount = threadLevelOwners.size();
+    }
+  }
+
+  /**
+     Return the number of threads which have a level installed.
+
+     @since 1.2.18 */
+  static
+  int getThreadLevelCount() {
+    return threadLevelCount;
+  }
+
+  /**
+     Decide whether a logging request of <code>level</code> passes
+     the turbo filters of the repository and the level of this
+     category, or the level installed for the current thread. The
+     threshold of the repository is checked by the callers.
+
+     @since 1.2.18 */
+  final
+  boolean isEnabled(Priority level, Object message, Throwable t) {
+    if(repository instanceof Hierarchy) {
+      int decision = ((Hierarchy) repository).decide(this, level, message, t);
+      if(decision != Filter.NEUTRAL) {
+        return decision == Filter.ACCEPT;
+      }
+    }
+    return level.isGreaterOrEqual(this.getEffectiveLevel())
+      || isEnabledForThread(level.level);
+  }
+
+  /**
+     Returns <code>true</code> if the level installed for the current
+     thread, if any, enables <code>level</code>. Categories consult
+     this method when their own effective level disables a request.
+
+     @since 1.2.18 */
+  static
+  boolean isEnabledForThread(int level) {
+    if(threadLevelCount == 0) {
+      return false;
+    }
+    Level l = (Level) threadLevel.get();
+    if(l == null) {
+      purgeThreadLevels();
+      return false;
+    }
+    return level >= l.level;
+  }
+
+  private
+  static
+  final
+  class AppenderThreshold {
+    final int generation;
+    final int level;
+
+    AppenderThreshold(int generation, int level) {
+      this.generation = generation;
+      this.level = level;
+    }
+  }
+
 
   /**
      Get the additivity flag for this Category instance.
@@ -449,10 +742,26 @@ public class Category implements AppenderAttachable {
      root category.
 
      <p>The Category class is designed so that this method executes as
-     quickly as possible.
+     quickly as possible. Categories attached to a {@link Hierarchy}
+     return the effective level cached by the hierarchy without
+     walking their ancestors.
    */
   public
   Level getEffectiveLevel() {
+    Level l = effectiveLevel;
+    if(l != null) {
+      return l;
+    }
+    return computeEffectiveLevel();
+  }
+
+  /**
+     Walk the category hierarchy starting from this category and
+     return the first non-null level found.
+
+     @since 1.2.18 */
+  final
+  Level computeEffectiveLevel() {
     for(Category c = this; c != null; c=c.parent) {
       if(c.level != null) {
         return c.level;
@@ -680,7 +989,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.INFO_INT)) {
         return;
     }
-    if(Level.INFO.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.INFO, message, null)) {
         forcedLog(FQCN, Level.INFO, message, null);
     }
   }
@@ -699,7 +1008,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.INFO_INT)) {
         return;
     }
-    if(Level.INFO.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.INFO, message, t)) {
         forcedLog(FQCN, Level.INFO, message, t);
     }
   }
@@ -755,7 +1064,8 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled( Level.DEBUG_INT)) {
         return false;
     }
-    return Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel());
+    return isEnabled(Level.DEBUG, null, null)
+      && isAsSevereAsAppenderThreshold(Level.DEBUG_INT);
   }
 
   /**
@@ -771,7 +1081,8 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(level.level)) {
         return false;
     }
-    return level.isGreaterOrEqual(this.getEffectiveLevel());
+    return isEnabled(level, null, null)
+      && isAsSevereAsAppenderThreshold(level.level);
   }
 
   /**
@@ -786,7 +1097,8 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.INFO_INT)) {
         return false;
     }
-    return Level.INFO.isGreaterOrEqual(this.getEffectiveLevel());
+    return isEnabled(Level.INFO, null, null)
+      && isAsSevereAsAppenderThreshold(Level.INFO_INT);
   }
 
 
@@ -803,7 +1115,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(priority.level)) {
       return;
     }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(priority, key, t)) {
       String msg = getResourceBundleString(key);
       // if message corresponding to 'key' could not be found in the
       // resource bundle, then default to 'key'.
@@ -827,7 +1139,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(priority.level)) {
       return;
     }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(priority, key, t)) {
       String pattern = getResourceBundleString(key);
       String msg;
       if(pattern == null) {
@@ -847,7 +1159,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(priority.level)) {
       return;
     }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(priority, message, t)) {
         forcedLog(FQCN, priority, message, t);
     }
   }
@@ -860,7 +1172,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(priority.level)) {
       return;
     }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(priority, message, null)) {
         forcedLog(FQCN, priority, message, null);
     }
   }
@@ -879,7 +1191,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(level.level)) {
       return;
     }
-    if(level.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(level, message, t)) {
       forcedLog(callerFQCN, level, message, t);
     }
   }
@@ -907,20 +1219,26 @@ public class Category implements AppenderAttachable {
 
      <p>This is useful when re-reading configuration information.
   */
-  synchronized
   public
   void removeAllAppenders() {
-    if(aai != null) {
-      Vector appenders = new Vector();
-      for (Enumeration iter = aai.getAllAppenders(); iter != null && iter.hasMoreElements();) {
-          appenders.add(iter.nextElement());
+    AppenderAttachableImpl removed;
+    Vector appenders = new Vector();
+    synchronized(this) {
+      removed = aai;
+      if(removed == null) {
+        return;
       }
-      aai.removeAllAppenders();
-      for(Enumeration iter = appenders.elements(); iter.hasMoreElements();) {
-          fireRemoveAppenderEvent((Appender) iter.nextElement());
+      for (Enumeration iter = removed.getAllAppenders(); iter != null && iter.hasMoreElements();) {
+          appenders.add(iter.nextElement());
       }
       aai = null;
     }
+    // Stop dispatching events to the appenders before closing them.
+    fireAppendersChangedEvent();
+    removed.removeAllAppenders();
+    for(Enumeration iter = appenders.elements(); iter.hasMoreElements();) {
+        fireRemoveAppenderEvent((Appender) iter.nextElement());
+    }
   }
 
 
@@ -929,17 +1247,20 @@ public class Category implements AppenderAttachable {
 
      @since 0.8.2
   */
-  synchronized
   public
   void removeAppender(Appender appender) {
-    if(appender == null || aai == null) {
-        return;
-    }
-    boolean wasAttached = aai.isAttached(appender);
-    aai.removeAppender(appender);
-    if (wasAttached) {
-        fireRemoveAppenderEvent(appender);
+    synchronized(this) {
+      if(appender == null || aai == null) {
+          return;
+      }
+      boolean wasAttached = aai.isAttached(appender);
+      aai.removeAppender(appender);
+      if (!wasAttached) {
+          return;
+      }
+      fireRemoveAppenderEvent(appender);
     }
+    fireAppendersChangedEvent();
   }
 
   /**
@@ -947,17 +1268,20 @@ public class Category implements AppenderAttachable {
      list of appenders.
 
      @since 0.8.2 */
-  synchronized
   public
   void removeAppender(String name) {
-    if(name == null || aai == null) {
-        return;
-    }
-    Appender appender = aai.getAppender(name);
-    aai.removeAppender(name);
-    if (appender != null) {
-        fireRemoveAppenderEvent(appender);
+    synchronized(this) {
+      if(name == null || aai == null) {
+          return;
+      }
+      Appender appender = aai.getAppender(name);
+      aai.removeAppender(name);
+      if (appender == null) {
+          return;
+      }
+      fireRemoveAppenderEvent(appender);
     }
+    fireAppendersChangedEvent();
   }
 
   /**
@@ -967,6 +1291,7 @@ public class Category implements AppenderAttachable {
   public
   void setAdditivity(boolean additive) {
     this.additive = additive;
+    fireAppendersChangedEvent();
   }
 
   /**
@@ -991,6 +1316,7 @@ public class Category implements AppenderAttachable {
   public
   void setLevel(Level level) {
     this.level = level;
+    fireLevelChangedEvent();
   }
 
 
@@ -1004,6 +1330,29 @@ public class Category implements AppenderAttachable {
   public
   void setPriority(Priority priority) {
     this.level = (Level) priority;
+    fireLevelChangedEvent();
+  }
+
+  /**
+     Let the stock {@link Hierarchy} know that the level of this
+     category changed so that it can update the effective level
+     cached by this category and its descendants. */
+  private void fireLevelChangedEvent() {
+    if (repository instanceof Hierarchy) {
+      ((Hierarchy) repository).updateEffectiveLevels(this);
+    }
+  }
+
+  /**
+     Let the stock {@link Hierarchy} know that the appenders attached
+     to this category or its additivity changed so that it can
+     rebuild the appender chain of this category and its
+     descendants. Must not be called while holding the lock on this
+     category. */
+  private void fireAppendersChangedEvent() {
+    if (repository instanceof Hierarchy) {
+      ((Hierarchy) repository).updateEffectiveAppenders(this);
+    }
   }
 
 
@@ -1070,7 +1419,7 @@ public class Category implements AppenderAttachable {
         return;
     }
 
-    if(Level.WARN.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.WARN, message, null)) {
         forcedLog(FQCN, Level.WARN, message, null);
     }
   }
@@ -1089,7 +1438,7 @@ public class Category implements AppenderAttachable {
     if(repository.isDisabled(Level.WARN_INT)) {
         return;
     }
-    if(Level.WARN.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isEnabled(Level.WARN, message, t)) {
         forcedLog(FQCN, Level.WARN, message, t);
     }
   }
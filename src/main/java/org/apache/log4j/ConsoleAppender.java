@@ -17,8 +17,7 @@
 
 package org.apache.log4j;
 
-import java.io.IOException;
-import java.io.OutputStream;
+import org.apache.log4j.helpers.ConsoleStreams;
 import org.apache.log4j.helpers.LogLog;
 
 /**
@@ -31,8 +30,8 @@ import org.apache.log4j.helpers.LogLog;
   * @since 1.1 */
 public class ConsoleAppender extends WriterAppender {
 
-  public static final String SYSTEM_OUT = "System.out";
-  public static final String SYSTEM_ERR = "System.err";
+  public static final String SYSTEM_OUT = ConsoleStreams.SYSTEM_OUT;
+  public static final String SYSTEM_ERR = ConsoleStreams.SYSTEM_ERR;
 
   protected String target = SYSTEM_OUT;
 
@@ -75,12 +74,10 @@ public class ConsoleAppender extends WriterAppender {
    * */
   public
   void setTarget(String value) {
-    String v = value.trim();
+    String t = ConsoleStreams.getTarget(value);
 
-    if (SYSTEM_OUT.equalsIgnoreCase(v)) {
-      target = SYSTEM_OUT;
-    } else if (SYSTEM_ERR.equalsIgnoreCase(v)) {
-      target = SYSTEM_ERR;
+    if (t != null) {
+      target = t;
     } else {
       targetWarn(value);
     }
@@ -128,19 +125,7 @@ public class ConsoleAppender extends WriterAppender {
     *   Prepares the appender for use.
     */
    public void activateOptions() {
-        if (follow) {
-            if (target.equals(SYSTEM_ERR)) {
-               setWriter(createWriter(new SystemErrStream()));
-            } else {
-               setWriter(createWriter(new SystemOutStream()));
-            }
-        } else {
-            if (target.equals(SYSTEM_ERR)) {
-               setWriter(createWriter(System.err));
-            } else {
-               setWriter(createWriter(System.out));
-            }
-        }
+        setWriter(createWriter(ConsoleStreams.getStream(target, follow)));
 
         super.activateOptions();
   }
@@ -155,66 +140,5 @@ public class ConsoleAppender extends WriterAppender {
         super.closeWriter();
      }
   }
-  
-
-    /**
-     * An implementation of OutputStream that redirects to the
-     * current System.err.
-     *
-     */
-    private static class SystemErrStream extends OutputStream {
-        public SystemErrStream() {
-        }
-
-        public void close() {
-        }
-
-        public void flush() {
-            System.err.flush();
-        }
-
-        public void write(final byte[] b) throws IOException {
-            System.err.write(b);
-        }
-
-        public void write(final byte[] b, final int off, final int len)
-            throws IOException {
-            System.err.write(b, off, len);
-        }
-
-        public void write(final int b) throws IOException {
-            System.err.write(b);
-        }
-    }
-
-    /**
-     * An implementation of OutputStream that redirects to the
-     * current System.out.
-     *
-     */
-    private static class SystemOutStream extends OutputStream {
-        public SystemOutStream() {
-        }
-
-        public void close() {
-        }
-
-        public void flush() {
-            System.out.flush();
-        }
-
-        public void write(final byte[] b) throws IOException {
-            System.out.write(b);
-        }
-
-        public void write(final byte[] b, final int off, final int len)
-            throws IOException {
-            System.out.write(b, off, len);
-        }
-
-        public void write(final int b) throws IOException {
-            System.out.write(b);
-        }
-    }
 
 }
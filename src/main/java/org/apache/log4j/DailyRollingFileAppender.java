@@ -29,6 +29,7 @@ import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.Locale;
 
+import org.apache.log4j.helpers.FileRoller;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LoggingEvent;
 
@@ -136,6 +137,15 @@ import org.apache.log4j.spi.LoggingEvent;
    as the protocol specificaion of a URL which is probably not what
    you want.
 
+   <p>If the <b>BackgroundRollover</b> option is set, the log file is
+   renamed to a temporary name on rollover and renamed to its dated
+   name later by a background thread.
+
+   <p>Rolled over files can be compressed with the <b>Compression</b>
+   option, for example <code>/foo/bar.log.2001-02-16.gz</code> with
+   gzip. The compression happens in the background and the dated name
+   only appears once the file is complete.
+
 
    @author Eirik Lygre
    @author Ceki G&uuml;lc&uuml;*/
@@ -179,6 +189,34 @@ public class DailyRollingFileAppender extends FileAppender {
 
   SimpleDateFormat sdf;
 
+  /**
+     Rolled over files get their dated name in a background thread
+     when <code>backgroundRollover</code> is set.
+
+     @since 1.2.18 */
+  protected boolean backgroundRollover = false;
+
+  /**
+     Rolled over files are compressed in this format when not
+     <code>null</code>.
+
+     @since 1.2.18 */
+  protected String compression;
+
+  /**
+     Compression level from 0 to 9, -1 for the default level.
+
+     @since 1.2.18 */
+  protected int compressionLevel = -1;
+
+  /**
+     Maximum number of files compressed at the same time.
+
+     @since 1.2.18 */
+  protected int compressionThreads = 1;
+
+  private FileRoller roller;
+
   RollingCalendar rc = new RollingCalendar();
 
   int checkPeriod = TOP_OF_TROUBLE;
@@ -219,6 +257,120 @@ public class DailyRollingFileAppender extends FileAppender {
     return datePattern;
   }
 
+  /**
+     The <b>BackgroundRollover</b> option moves the renaming of the
+     rolled over file off the logging threads. Only a rename to a
+     temporary name in the same directory is done before the new file
+     is opened, replacing an existing file of the dated name and
+     renaming to it are left to a background thread. Closing the
+     appender waits for these renames.
+
+     @since 1.2.18 */
+  public void setBackgroundRollover(boolean backgroundRollover) {
+    this.backgroundRollover = backgroundRollover;
+  }
+
+  /**
+     Returns the value of the <b>BackgroundRollover</b> option.
+
+     @since 1.2.18 */
+  public boolean getBackgroundRollover() {
+    return backgroundRollover;
+  }
+
+  /**
+     The <b>Compression</b> option compresses rolled over files with
+     <code>gzip</code> or <code>deflate</code>, adding the
+     <code>.gz</code> or <code>.deflate</code> suffix to their dated
+     name. The default, <code>none</code>, keeps them as they are.
+     Setting a compression also renames in the background as with
+     <b>BackgroundRollover</b>.
+
+     @since 1.2.18 */
+  public void setCompression(String value) {
+    compression = FileRoller.toCompression(value);
+  }
+
+  /**
+     Returns the value of the <b>Compression</b> option.
+
+     @since 1.2.18 */
+  public String getCompression() {
+    return compression;
+  }
+
+  /**
+     The <b>CompressionLevel</b> option, from 0 to 9 as for
+     {@link java.util.zip.Deflater}, or -1 for the default level.
+
+     @since 1.2.18 */
+  public void setCompressionLevel(int level) {
+    if(level < -1 || level > 9) {
+      LogLog.warn("CompressionLevel must be between -1 and 9, not " + level + ".");
+    } else {
+      compressionLevel = level;
+    }
+  }
+
+  /**
+     Returns the value of the <b>CompressionLevel</b> option.
+
+     @since 1.2.18 */
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+     The <b>CompressionThreads</b> option sets how many rolled over
+     files may be compressed at the same time, which only matters
+     when rollovers come faster than a file can be compressed.
+
+     @since 1.2.18 */
+  public void setCompressionThreads(int threads) {
+    if(threads < 1) {
+      LogLog.warn("CompressionThreads must be positive, not " + threads + ".");
+    } else {
+      compressionThreads = threads;
+    }
+  }
+
+  /**
+     Returns the value of the <b>CompressionThreads</b> option.
+
+     @since 1.2.18 */
+  public int getCompressionThreads() {
+    return compressionThreads;
+  }
+
+  /**
+     Queue again the rolled over files left with a temporary name when
+     the process exited before renaming them. As for the current file,
+     their dated name is given by their modification time.
+  */
+  private void recover() {
+    if(roller == null) {
+      roller = new FileRoller(name);
+    }
+    roller.setCompression(compression, compressionLevel, compressionThreads);
+    File[] detached = roller.recover(fileName);
+    for(int i = 0; i < detached.length; i++) {
+      roller.move(detached[i],
+                  fileName+sdf.format(new Date(detached[i].lastModified())));
+    }
+  }
+
+  /**
+     Close the file and wait for the rolled over files still being
+     renamed in the background.
+
+     @since 1.2.18 */
+  public synchronized void close() {
+    super.close();
+    if(roller != null) {
+      roller.await();
+    }
+  }
+
   public void activateOptions() {
     super.activateOptions();
     if(datePattern != null && fileName != null) {
@@ -229,6 +381,7 @@ public class DailyRollingFileAppender extends FileAppender {
       rc.setType(type);
       File file = new File(fileName);
       scheduledFilename = fileName+sdf.format(new Date(file.lastModified()));
+      recover();
 
     } else {
       LogLog.error("Either File or DatePattern options are not set for appender ["
@@ -319,6 +472,21 @@ public class DailyRollingFileAppender extends FileAppender {
     // close current file, and rename it to datedFilename
     this.closeFile();
 
+    if(backgroundRollover || compression != null) {
+      if(roller == null) {
+        roller = new FileRoller(name);
+      }
+      roller.setCompression(compression, compressionLevel, compressionThreads);
+      File detached = roller.detach(fileName);
+      if(detached != null) {
+        roller.move(detached, scheduledFilename);
+      } else {
+        LogLog.error("Failed to rename ["+fileName+"] to ["+scheduledFilename+"].");
+      }
+      reopen(datedFilename);
+      return;
+    }
+
     File target  = new File(scheduledFilename);
     if (target.exists()) {
       target.delete();
@@ -332,6 +500,10 @@ public class DailyRollingFileAppender extends FileAppender {
       LogLog.error("Failed to rename ["+fileName+"] to ["+scheduledFilename+"].");
     }
 
+    reopen(datedFilename);
+  }
+
+  private void reopen(String datedFilename) {
     try {
       // This will also close the file. This is OK since multiple
       // close operations are safe.
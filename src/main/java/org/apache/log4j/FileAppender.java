@@ -25,7 +25,9 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.Writer;
 
+import org.apache.log4j.helpers.FileChannelWriter;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.MappedFileWriter;
 import org.apache.log4j.helpers.QuietWriter;
 import org.apache.log4j.spi.ErrorCode;
 
@@ -66,6 +68,21 @@ public class FileAppender extends WriterAppender {
    */
   protected int bufferSize = 8*1024;
 
+  /**
+     Do we write through a file channel?
+     @since 1.2.18 */
+  protected boolean channelIO = false;
+
+  /**
+     Do we write through a memory mapped region of the file?
+     @since 1.2.18 */
+  protected boolean memoryMapped = false;
+
+  /**
+     The size of the memory mapped regions. Default is 32MB.
+     @since 1.2.18 */
+  protected int regionSize = 32*1024*1024;
+
 
   /**
      The default constructor does not do anything.
@@ -208,6 +225,33 @@ public class FileAppender extends WriterAppender {
   }
 
 
+  /**
+     Get the value of the <b>ChannelIO</b> option.
+
+     @since 1.2.18 */
+  public
+  boolean getChannelIO() {
+    return this.channelIO;
+  }
+
+  /**
+     Get the value of the <b>MemoryMapped</b> option.
+
+     @since 1.2.18 */
+  public
+  boolean getMemoryMapped() {
+    return this.memoryMapped;
+  }
+
+  /**
+     Get the size of the memory mapped regions.
+
+     @since 1.2.18 */
+  public
+  int getRegionSize() {
+    return this.regionSize;
+  }
+
   /**
      Get the size of the IO buffer.
   */
@@ -252,6 +296,50 @@ public class FileAppender extends WriterAppender {
   }
 
 
+  /**
+     The <b>ChannelIO</b> option takes a boolean value. It is set to
+     <code>false</code> by default. If true, the layout output is
+     encoded into a byte buffer of <b>BufferSize</b> bytes which is
+     written to the channel of the file, without going through an
+     {@link java.io.OutputStreamWriter}. US-ASCII, ISO-8859-1 and
+     UTF-8 are encoded faster than by the JDK, see {@link
+     FileChannelWriter}.
+
+     <p>The buffer is written at the end of each append request, or
+     of each batch of requests, unless <b>ImmediateFlush</b> is false
+     or <b>BufferedIO</b> is true, in which case it is written when
+     full. {@link #createWriter} is not called in this mode.
+
+     @since 1.2.18 */
+  public
+  void setChannelIO(boolean channelIO) {
+    this.channelIO = channelIO;
+  }
+
+  /**
+     The <b>MemoryMapped</b> option takes a boolean value. It is set
+     to <code>false</code> by default. If true, the layout output is
+     encoded into a region of <b>RegionSize</b> bytes of the file
+     mapped in memory, the next region being mapped when it is full,
+     see {@link MappedFileWriter}. The file is truncated to its actual
+     length when it is closed, including on rollover. This option
+     takes precedence over <b>ChannelIO</b> and <b>BufferedIO</b>.
+
+     @since 1.2.18 */
+  public
+  void setMemoryMapped(boolean memoryMapped) {
+    this.memoryMapped = memoryMapped;
+  }
+
+  /**
+     Set the size of the memory mapped regions.
+
+     @since 1.2.18 */
+  public
+  void setRegionSize(int regionSize) {
+    this.regionSize = regionSize;
+  }
+
   /**
      Set the size of the IO buffer.
   */
@@ -310,9 +398,19 @@ public class FileAppender extends WriterAppender {
              throw ex;
           }
     }
-    Writer fw = createWriter(ostream);
-    if(bufferedIO) {
-      fw = new BufferedWriter(fw, bufferSize);
+    Writer fw;
+    if(memoryMapped) {
+      // the stream created or truncated the file, mapping it requires
+      // a readable channel
+      ostream.close();
+      fw = new MappedFileWriter(fileName, getEncoding(), regionSize);
+    } else if(channelIO) {
+      fw = new FileChannelWriter(ostream, fileName, getEncoding(), bufferSize);
+    } else {
+      fw = createWriter(ostream);
+      if(bufferedIO) {
+        fw = new BufferedWriter(fw, bufferSize);
+      }
     }
     this.setQWForFiles(fw);
     this.fileName = fileName;
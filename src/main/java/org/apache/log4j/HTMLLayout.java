@@ -17,6 +17,7 @@
 
 package org.apache.log4j;
 
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.helpers.Transform;
@@ -31,7 +32,7 @@ import org.apache.log4j.helpers.Transform;
  *
  *  @author Ceki G&uuml;lc&uuml;
  */
-public class HTMLLayout extends Layout {
+public class HTMLLayout extends Layout implements EventFieldUsage {
 
   protected final int BUF_SIZE = 256;
   protected final int MAX_CAPACITY = 1024;
@@ -265,4 +266,18 @@ public class HTMLLayout extends Layout {
   boolean ignoresThrowable() {
     return false;
   }
+
+  /**
+     Returns the thread name, the NDC and, depending on the
+     <b>LocationInfo</b> option, the location.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    int fields = THREAD_NAME | NDC;
+    if(locationInfo) {
+      fields |= LOCATION_INFO;
+    }
+    return fields;
+  }
 }
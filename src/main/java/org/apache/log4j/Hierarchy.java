@@ -28,6 +28,8 @@
 package org.apache.log4j;
 
 
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -35,12 +37,15 @@ import java.util.Vector;
 import org.apache.log4j.spi.LoggerFactory;
 import org.apache.log4j.spi.HierarchyEventListener;
 import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggerSubtreeSupport;
 import org.apache.log4j.spi.RendererSupport;
 import org.apache.log4j.or.RendererMap;
 import org.apache.log4j.or.ObjectRenderer;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.ThrowableRendererSupport;
 import org.apache.log4j.spi.ThrowableRenderer;
+import org.apache.log4j.spi.TurboFilter;
+import org.apache.log4j.spi.Filter;
 
 /**
    This class is specialized in retrieving loggers by name and also
@@ -63,12 +68,17 @@ import org.apache.log4j.spi.ThrowableRenderer;
    @author Ceki G&uuml;lc&uuml;
 
 */
-public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRendererSupport {
+public class Hierarchy implements LoggerRepository, RendererSupport,
+                                  ThrowableRendererSupport, LoggerSubtreeSupport {
 
   private LoggerFactory defaultFactory;
   private Vector listeners;
 
   Hashtable ht;
+  // Existing loggers, readable without holding the lock on ht.
+  private final LoggerRegistry registry = new LoggerRegistry();
+  // Existing loggers indexed by name prefix. Guarded by ht.
+  private final LoggerTrie trie = new LoggerTrie();
   Logger root;
   RendererMap rendererMap;
 
@@ -80,6 +90,43 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
 
   private ThrowableRenderer throwableRenderer = null;
 
+  // Number of nested bulk operations, such as resetConfiguration,
+  // during which the effective levels and appenders cached by the
+  // loggers are not maintained. The caches are cleared while
+  // suspended so that loggers walk their ancestors instead, and are
+  // rebuilt once when the outermost operation completes.
+  private int cacheUpdatesSuspended = 0;
+
+  // Number of nested batches, see beginBatch. Guarded by ht.
+  private int batchDepth = 0;
+
+  // Loggers created during the current batch which are linked to
+  // their ancestors and children when the batch commits. Guarded by ht.
+  private Vector pendingLoggers;
+
+  // Maximum number of loggers before unconfigured leaf loggers are
+  // evicted, 0 if unbounded. See setLoggerCapacity.
+  private int loggerCapacity = 0;
+
+  // Number of loggers at which the next eviction pass runs.
+  private int evictionCheckSize;
+
+  // Approximate logical clock stamping logger lookups when
+  // loggerCapacity is set. Racy increments are harmless.
+  private int useClock = 0;
+
+  private long evictedLoggerCount = 0;
+
+  // Appender events withheld during the current batch, null outside
+  // of a batch. Guarded by listeners, never by ht as appender events
+  // are fired while holding the lock on a category.
+  private Vector pendingAppenderEvents;
+
+  // Turbo filters consulted by the loggers of this hierarchy, null if
+  // there are none. Copied on write so that loggers read it without
+  // locking.
+  private volatile TurboFilter[] turboFilters;
+
   /**
      Create a new logger hierarchy.
 
@@ -127,7 +174,18 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   public
   void clear() {
     //System.out.println("\n\nAbout to clear internal hash table.");
-    ht.clear();
+    synchronized(ht) {
+      // Loggers dropped from the table are no longer kept up to date,
+      // make them fall back to walking their ancestors.
+      Enumeration cats = getCurrentLoggers();
+      while(cats.hasMoreElements()) {
+	clearCache((Logger) cats.nextElement());
+      }
+      ht.clear();
+      registry.clear();
+      trie.clear();
+      Category.invalidateAppenderThresholds();
+    }
   }
 
   public
@@ -151,6 +209,10 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   */
   public
   Logger exists(String name) {
+    Logger logger = registry.get(name);
+    if(logger != null) {
+      return logger;
+    }
     Object o = ht.get(new CategoryKey(name));
     if(o instanceof Logger) {
       return (Logger) o;
@@ -187,9 +249,75 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     }
   }
 
+  /**
+     Add a turbo filter to the end of the turbo filter chain of this
+     hierarchy. See {@link TurboFilter} for the way the chain is
+     consulted.
+
+     @since 1.2.18 */
+  public
+  synchronized
+  void addTurboFilter(TurboFilter filter) {
+    if(filter == null) {
+      return;
+    }
+    TurboFilter[] old = turboFilters;
+    int length = old == null ? 0 : old.length;
+    TurboFilter[] filters = new TurboFilter[length + 1];
+    if(old != null) {
+      System.arraycopy(old, 0, filters, 0, length);
+    }
+    filters[length] = filter;
+    turboFilters = filters;
+  }
+
+  /**
+     Return the turbo filters of this hierarchy in the order they are
+     consulted. The returned array is a copy.
+
+     @since 1.2.18 */
+  public
+  TurboFilter[] getTurboFilters() {
+    TurboFilter[] filters = turboFilters;
+    if(filters == null) {
+      return new TurboFilter[0];
+    }
+    return (TurboFilter[]) filters.clone();
+  }
+
+  /**
+     Remove all the turbo filters of this hierarchy.
+
+     @since 1.2.18 */
+  public
+  synchronized
+  void clearTurboFilters() {
+    turboFilters = null;
+  }
+
+  /**
+     Consult the turbo filters of this hierarchy for a logging request
+     and return {@link Filter#DENY}, {@link Filter#ACCEPT} or {@link
+     Filter#NEUTRAL}. */
+  int decide(Category logger, Priority level, Object message, Throwable t) {
+    TurboFilter[] filters = turboFilters;
+    if(filters != null) {
+      for(int i = 0; i < filters.length; i++) {
+        int decision = filters[i].decide(logger, level, message, t);
+        if(decision != Filter.NEUTRAL) {
+          return decision;
+        }
+      }
+    }
+    return Filter.NEUTRAL;
+  }
+
   public
   void fireAddAppenderEvent(Category logger, Appender appender) {
     if(listeners != null) {
+      if(deferAppenderEvent(logger, appender, true)) {
+        return;
+      }
       int size = listeners.size();
       HierarchyEventListener listener;
       for(int i = 0; i < size; i++) {
@@ -201,6 +329,9 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
 
   void fireRemoveAppenderEvent(Category logger, Appender appender) {
     if(listeners != null) {
+      if(deferAppenderEvent(logger, appender, false)) {
+        return;
+      }
       int size = listeners.size();
       HierarchyEventListener listener;
       for(int i = 0; i < size; i++) {
@@ -210,6 +341,118 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     }
   }
 
+  /**
+     Queue an appender event if a batch is in progress. Returns
+     <code>true</code> if the event was queued. */
+  private
+  boolean deferAppenderEvent(Category logger, Appender appender,
+			     boolean added) {
+    synchronized(listeners) {
+      if(pendingAppenderEvents == null) {
+        return false;
+      }
+      pendingAppenderEvents.addElement(
+        new AppenderEvent(logger, appender, added));
+      return true;
+    }
+  }
+
+  /**
+     Start a batch of configuration changes, typically the
+     configuration of many loggers by a configurator.
+
+     <p>Until the matching call to {@link #commitBatch}:
+     <ul>
+     <li>New loggers are only provisionally attached to the root
+     logger. They are linked with their ancestors and children when
+     the batch commits.</li>
+     <li>The effective levels and appender chains cached by the
+     loggers are not maintained, loggers walk their ancestors
+     instead. The caches are rebuilt once when the batch commits.</li>
+     <li>{@link HierarchyEventListener}s are not notified. Withheld
+     notifications are delivered in order when the batch commits.</li>
+     </ul>
+
+     <p>Batches may be nested, only the outermost batch commits. Calls
+     must be paired with calls to <code>commitBatch</code> in a
+     <code>finally</code> block.
+
+     @since 1.2.18 */
+  public
+  void beginBatch() {
+    synchronized(ht) {
+      if(batchDepth++ == 0) {
+        pendingLoggers = new Vector();
+        synchronized(listeners) {
+          pendingAppenderEvents = new Vector();
+        }
+        suspendCacheUpdates();
+      }
+    }
+  }
+
+  /**
+     Commit a batch started with {@link #beginBatch}.
+
+     @since 1.2.18 */
+  public
+  void commitBatch() {
+    Vector events;
+    synchronized(ht) {
+      if(batchDepth == 0) {
+        LogLog.warn("Hierarchy.commitBatch called without a matching beginBatch.");
+        return;
+      }
+      if(--batchDepth > 0) {
+        return;
+      }
+      linkPendingLoggers();
+      resumeCacheUpdates();
+      synchronized(listeners) {
+        events = pendingAppenderEvents;
+        pendingAppenderEvents = null;
+      }
+    }
+    final int size = events.size();
+    for(int i = 0; i < size; i++) {
+      AppenderEvent e = (AppenderEvent) events.elementAt(i);
+      if(e.added) {
+        fireAddAppenderEvent(e.logger, e.appender);
+      } else {
+        fireRemoveAppenderEvent(e.logger, e.appender);
+      }
+    }
+  }
+
+  /**
+     Link the loggers created during a batch. Ancestors are linked
+     before their descendants. Must be called while holding the lock
+     on ht. */
+  private
+  void linkPendingLoggers() {
+    Vector pending = pendingLoggers;
+    pendingLoggers = null;
+    // merge sort, loggers of the same depth keep their creation order
+    Collections.sort(pending, new Comparator() {
+        public int compare(Object o1, Object o2) {
+          return ((PendingLogger) o1).logger.name.length()
+            - ((PendingLogger) o2).logger.name.length();
+        }
+      });
+    final int size = pending.size();
+    for(int i = 0; i < size; i++) {
+      PendingLogger p = (PendingLogger) pending.elementAt(i);
+      // skip loggers discarded by clear() during the batch
+      if(ht.get(new CategoryKey(p.logger.name)) != p.logger) {
+        continue;
+      }
+      if(p.provisionNode != null) {
+        updateChildren(p.provisionNode, p.logger);
+      }
+      updateParents(p.logger);
+    }
+  }
+
   /**
      Returns a {@link Level} representation of the <code>enable</code>
      state.
@@ -263,19 +506,34 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   public
   Logger getLogger(String name, LoggerFactory factory) {
     //System.out.println("getInstance("+name+") called.");
+    // Existing loggers are looked up without locking.
+    Logger logger = registry.get(name);
+    if(logger != null) {
+      if(loggerCapacity > 0) {
+        logger.lastUsed = ++useClock;
+      }
+      return logger;
+    }
+
     CategoryKey key = new CategoryKey(name);
     // Synchronize to prevent write conflicts. Read conflicts (in
     // getChainedLevel method) are possible only if variable
     // assignments are non-atomic.
-    Logger logger;
-
     synchronized(ht) {
       Object o = ht.get(key);
       if(o == null) {
 	logger = factory.makeNewLoggerInstance(name);
 	logger.setHierarchy(this);
 	ht.put(key, logger);
-	updateParents(logger);
+	trie.put(name, logger);
+	if(batchDepth > 0) {
+	  deferLinking(logger, null);
+	} else {
+	  updateParents(logger);
+	  initCache(logger, false);
+	}
+	registry.put(name, logger);
+	loggerCreated(logger);
 	return logger;
       } else if(o instanceof Logger) {
 	return (Logger) o;
@@ -284,8 +542,16 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
 	logger = factory.makeNewLoggerInstance(name);
 	logger.setHierarchy(this);
 	ht.put(key, logger);
-	updateChildren((ProvisionNode) o, logger);
-	updateParents(logger);
+	trie.put(name, logger);
+	if(batchDepth > 0) {
+	  deferLinking(logger, (ProvisionNode) o);
+	} else {
+	  updateChildren((ProvisionNode) o, logger);
+	  updateParents(logger);
+	  initCache(logger, true);
+	}
+	registry.put(name, logger);
+	loggerCreated(logger);
 	return logger;
       }
       else {
@@ -295,6 +561,154 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     }
   }
 
+  /**
+     Bound the number of loggers held by this hierarchy. Once more than
+     <code>capacity</code> loggers exist, the least recently retrieved
+     unconfigured leaf loggers are evicted until a quarter of the
+     capacity is free again. A logger is unconfigured if it has no
+     level, no appenders and no resource bundle and is additive, it is
+     a leaf if no other logger has it as parent.
+
+     <p>An evicted logger keeps working but is detached from the
+     hierarchy: a later call to {@link #getLogger(String)} with its
+     name returns a new instance. This mode is therefore intended for
+     loggers with dynamic names, per tenant or per session for
+     example, which are retrieved whenever they are needed instead of
+     being kept in fields.
+
+     <p>The default value of 0 disables eviction.
+
+     @since 1.2.18 */
+  public
+  void setLoggerCapacity(int capacity) {
+    synchronized(ht) {
+      loggerCapacity = capacity > 0 ? capacity : 0;
+      evictionCheckSize = loggerCapacity + 1;
+      if(loggerCapacity > 0 && registry.size() > loggerCapacity
+	 && batchDepth == 0) {
+	evictLoggers(null);
+      }
+    }
+  }
+
+  /**
+     Returns the logger capacity set by {@link #setLoggerCapacity}.
+
+     @since 1.2.18 */
+  public
+  int getLoggerCapacity() {
+    return loggerCapacity;
+  }
+
+  /**
+     Returns the number of loggers in this hierarchy, the root logger
+     excluded.
+
+     @since 1.2.18 */
+  public
+  int getLiveLoggerCount() {
+    return registry.size();
+  }
+
+  /**
+     Returns the number of loggers evicted since this hierarchy was
+     created. See {@link #setLoggerCapacity}.
+
+     @since 1.2.18 */
+  public
+  long getEvictedLoggerCount() {
+    return evictedLoggerCount;
+  }
+
+  /**
+     Called with the lock on ht held whenever a logger is created. */
+  private
+  void loggerCreated(Logger logger) {
+    if(loggerCapacity > 0) {
+      logger.lastUsed = ++useClock;
+      if(registry.size() >= evictionCheckSize && batchDepth == 0) {
+	evictLoggers(logger);
+      }
+    }
+  }
+
+  /**
+     Evict the least recently used unconfigured leaf loggers, sparing
+     <code>keep</code>. Must be called while holding the lock on ht. */
+  private
+  void evictLoggers(Logger keep) {
+    Hashtable parents = new Hashtable();
+    Enumeration elems = ht.elements();
+    while(elems.hasMoreElements()) {
+      Object o = elems.nextElement();
+      if(o instanceof Logger && ((Logger) o).parent != null) {
+	parents.put(((Logger) o).parent, Boolean.TRUE);
+      }
+    }
+
+    Vector candidates = new Vector();
+    elems = ht.elements();
+    while(elems.hasMoreElements()) {
+      Object o = elems.nextElement();
+      if(o instanceof Logger && o != keep && !parents.containsKey(o)
+	 && isUnconfigured((Logger) o)) {
+	candidates.addElement(o);
+      }
+    }
+    Collections.sort(candidates, new Comparator() {
+        public int compare(Object o1, Object o2) {
+          int u1 = ((Logger) o1).lastUsed;
+          int u2 = ((Logger) o2).lastUsed;
+          return u1 < u2 ? -1 : (u1 == u2 ? 0 : 1);
+        }
+      });
+
+    int excess = registry.size() - (loggerCapacity - loggerCapacity / 4);
+    for(int i = 0; i < excess && i < candidates.size(); i++) {
+      evict((Logger) candidates.elementAt(i));
+    }
+
+    if(registry.size() > loggerCapacity) {
+      // not enough evictable loggers, do not rescan on every creation
+      evictionCheckSize = registry.size() + Math.max(1, loggerCapacity / 4);
+    } else {
+      evictionCheckSize = loggerCapacity + 1;
+    }
+  }
+
+  private
+  static
+  boolean isUnconfigured(Logger l) {
+    return l.level == null && l.additive && l.resourceBundle == null
+      && (l.aai == null || l.aai.getAppenderArray().length == 0);
+  }
+
+  /**
+     Remove a leaf logger from ht and from the provision nodes of its
+     missing ancestors. */
+  private
+  void evict(Logger l) {
+    String name = l.name;
+    ht.remove(new CategoryKey(name));
+    registry.remove(name);
+    trie.remove(name);
+    for(int i = name.lastIndexOf('.', name.length()-1); i >= 0;
+	                                 i = name.lastIndexOf('.', i-1))  {
+      CategoryKey key = new CategoryKey(name.substring(0, i));
+      Object o = ht.get(key);
+      if(o instanceof ProvisionNode) {
+	ProvisionNode pn = (ProvisionNode) o;
+	pn.removeElement(l);
+	if(pn.isEmpty()) {
+	  ht.remove(key);
+	}
+      }
+    }
+    // no longer maintained by this hierarchy
+    clearCache(l);
+    evictedLoggerCount++;
+  }
+
   /**
      Returns all the currently defined categories in this hierarchy as
      an {@link java.util.Enumeration Enumeration}.
@@ -318,6 +732,57 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     return v.elements();
   }
 
+  /**
+     Returns the currently defined loggers named <code>prefix</code> or
+     descending from it as an {@link java.util.Enumeration
+     Enumeration}. A <code>null</code> or empty prefix returns all the
+     loggers, except the root logger.
+
+     <p>Unlike {@link #getCurrentLoggers()}, the cost of this method
+     depends on the number of loggers returned rather than on the
+     number of loggers in the hierarchy.
+
+     @since 1.2.18 */
+  public
+  Enumeration getCurrentLoggers(String prefix) {
+    Vector v = new Vector();
+    synchronized(ht) {
+      trie.collect(prefix, v);
+    }
+    return v.elements();
+  }
+
+  /**
+     Set the level of the currently defined loggers named
+     <code>prefix</code> or descending from it. A <code>null</code> or
+     empty prefix designates all the loggers, except the root logger.
+     The effective levels of the loggers are updated once for the
+     whole subtree, rather than once per logger as with {@link
+     Category#setLevel}.
+
+     @param prefix the name of the subtree.
+     @param level the level to assign, <code>null</code> makes the
+     loggers inherit their level.
+     @return the number of loggers updated.
+     @since 1.2.18 */
+  public
+  int setSubtreeLevel(String prefix, Level level) {
+    Vector v = new Vector();
+    synchronized(ht) {
+      trie.collect(prefix, v);
+      for(int i = 0; i < v.size(); i++) {
+	((Logger) v.elementAt(i)).level = level;
+      }
+      if(cacheUpdatesSuspended == 0) {
+	// assigned levels are read directly, so the order is irrelevant
+	for(int i = 0; i < v.size(); i++) {
+	  updateCache((Logger) v.elementAt(i), true, false);
+	}
+      }
+    }
+    return v.size();
+  }
+
   /**
      @deprecated Please use {@link #getCurrentLoggers} instead.
    */
@@ -370,7 +835,8 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
      the level of all non-root categories to <code>null</code>,
      sets their additivity flag to <code>true</code> and sets the level
      of the root logger to {@link Level#DEBUG DEBUG}.  Moreover,
-     message disabling is set its default "off" value.
+     message disabling is set its default "off" value and the turbo
+     filters are removed.
 
      <p>Existing categories are not removed. They are just reset.
 
@@ -388,18 +854,24 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     // the synchronization is needed to prevent JDK 1.2.x hashtable
     // surprises
     synchronized(ht) {
-      shutdown(); // nested locks are OK
-
-      Enumeration cats = getCurrentLoggers();
-      while(cats.hasMoreElements()) {
-	Logger c = (Logger) cats.nextElement();
-	c.setLevel(null);
-	c.setAdditivity(true);
-	c.setResourceBundle(null);
+      suspendCacheUpdates();
+      try {
+        shutdown(); // nested locks are OK
+
+        Enumeration cats = getCurrentLoggers();
+        while(cats.hasMoreElements()) {
+	  Logger c = (Logger) cats.nextElement();
+	  c.setLevel(null);
+	  c.setAdditivity(true);
+	  c.setResourceBundle(null);
+        }
+      } finally {
+        resumeCacheUpdates();
       }
     }
     rendererMap.clear();
     throwableRenderer = null;
+    clearTurboFilters();
   }
 
   /**
@@ -468,15 +940,148 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
       }
 
       // then, remove all appenders
-      root.removeAllAppenders();
-      cats = this.getCurrentLoggers();
+      suspendCacheUpdates();
+      try {
+        root.removeAllAppenders();
+        cats = this.getCurrentLoggers();
+        while(cats.hasMoreElements()) {
+	  Logger c = (Logger) cats.nextElement();
+	  c.removeAllAppenders();
+        }
+      } finally {
+        resumeCacheUpdates();
+      }
+    }
+  }
+
+
+  /**
+     Recompute the effective level cached by <code>cat</code> and by
+     its descendants which inherit it. This method is called whenever
+     the level of <code>cat</code> changes.
+
+     @since 1.2.18 */
+  void updateEffectiveLevels(Category cat) {
+    updateCaches(cat, true, false);
+  }
+
+  /**
+     Rebuild the appender chain cached by <code>cat</code> and by its
+     descendants which inherit its appenders. This method is called
+     whenever appenders are added to or removed from <code>cat</code>
+     or when its additivity flag changes.
+
+     @since 1.2.18 */
+  void updateEffectiveAppenders(Category cat) {
+    updateCaches(cat, false, true);
+  }
+
+  private
+  void updateCaches(final Category cat, final boolean levels,
+		    final boolean appenders) {
+    synchronized(ht) {
+      if(cacheUpdatesSuspended > 0) {
+        return;
+      }
+      updateCache(cat, levels, appenders);
+      // The descendants of a logger are found in the subtree of its
+      // name. A descendant with its own level, or which is not
+      // additive, hides the change from its own descendants, which are
+      // skipped. The subtree may also hold loggers created during a
+      // batch which are not linked yet, recomputing their caches is
+      // harmless.
+      trie.walk(cat == root ? null : cat.name, new LoggerTrie.Visitor() {
+	  public boolean visit(Logger l) {
+	    if(l == cat) {
+	      return true;
+	    }
+	    updateCache(l, levels, appenders);
+	    return (levels && l.level == null) || (appenders && l.additive);
+	  }
+	});
+      if(appenders) {
+        // only once the new chains are in place
+        Category.invalidateAppenderThresholds();
+      }
+    }
+  }
+
+  private
+  static
+  void updateCache(Category c, boolean levels, boolean appenders) {
+    if(levels) {
+      c.effectiveLevel = c.computeEffectiveLevel();
+    }
+    if(appenders) {
+      c.effectiveAppenders = c.computeEffectiveAppenders();
+    }
+  }
+
+  private
+  static
+  void clearCache(Category c) {
+    c.effectiveLevel = null;
+    c.effectiveAppenders = null;
+  }
+
+  /**
+     Compute the caches of a logger which was just created. If it
+     adopted children from a provision node, their caches need to be
+     updated as well unless the new logger is neutral, that is without
+     level, without appenders and additive.
+   */
+  private
+  void initCache(Logger logger, boolean adoptedChildren) {
+    if(cacheUpdatesSuspended > 0) {
+      return;
+    }
+    if(adoptedChildren
+       && (logger.level != null || logger.aai != null || !logger.additive)) {
+      updateCaches(logger, true, true);
+    } else {
+      updateCache(logger, true, true);
+    }
+  }
+
+  /**
+     Stop maintaining the caches of the loggers until a matching call
+     to {@link #resumeCacheUpdates}. Must be called while holding the
+     lock on ht. */
+  private
+  void suspendCacheUpdates() {
+    if(cacheUpdatesSuspended++ == 0) {
+      clearCache(root);
+      Enumeration cats = getCurrentLoggers();
       while(cats.hasMoreElements()) {
-	Logger c = (Logger) cats.nextElement();
-	c.removeAllAppenders();
+	clearCache((Logger) cats.nextElement());
       }
+      Category.invalidateAppenderThresholds();
     }
   }
 
+  private
+  void resumeCacheUpdates() {
+    if(--cacheUpdatesSuspended == 0) {
+      // the caches of all the loggers were cleared, updateCaches would
+      // skip those below the loggers with a level
+      updateCache(root, true, true);
+      Vector v = new Vector();
+      trie.collect(null, v);
+      for(int i = 0; i < v.size(); i++) {
+	updateCache((Logger) v.elementAt(i), true, true);
+      }
+      Category.invalidateAppenderThresholds();
+    }
+  }
+
+  /**
+     Attach a logger created during a batch to the root logger until
+     the batch commits. */
+  private
+  void deferLinking(Logger logger, ProvisionNode pn) {
+    logger.parent = root;
+    pendingLoggers.addElement(new PendingLogger(logger, pn));
+  }
 
   /**
      This method loops through all the *potential* parents of
@@ -573,6 +1178,37 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     }
   }
 
-}
 
+  /**
+     A logger created during a batch, along with the provision node
+     it replaced, if any. */
+  private
+  static
+  final
+  class PendingLogger {
+    final Logger logger;
+    final ProvisionNode provisionNode;
+
+    PendingLogger(Logger logger, ProvisionNode provisionNode) {
+      this.logger = logger;
+      this.provisionNode = provisionNode;
+    }
+  }
 
+  /**
+     An appender event withheld during a batch. */
+  private
+  static
+  final
+  class AppenderEvent {
+    final Category logger;
+    final Appender appender;
+    final boolean added;
+
+    AppenderEvent(Category logger, Appender appender, boolean added) {
+      this.logger = logger;
+      this.appender = appender;
+      this.added = added;
+    }
+  }
+}
@@ -273,5 +273,74 @@ public class LogManager {
   void resetConfiguration() {
     getLoggerRepository().resetConfiguration();
   }
+
+  /**
+     Install a level for the current thread. While it is installed,
+     every logger enables the requests of the current thread which
+     are at least as severe as <code>level</code>, in addition to
+     those enabled by its own effective level. Repository thresholds
+     and appender thresholds still apply.
+
+     <p>This allows, for instance, turning on debug output for a
+     single request without changing the level of any logger. The
+     level must be removed with {@link #removeThreadLevel} in a
+     <code>finally</code> block once the work is done, or installed
+     with {@link #runWithThreadLevel} which does so. Pooled threads
+     outlive the requests they serve, and while any thread has a
+     level installed, every request disabled by the level of its
+     logger costs a thread local lookup. The levels of the threads
+     which ended are forgotten, but only some time later.
+
+     @param level the level to install, <code>null</code> removes the
+     installed level.
+     @since 1.2.18 */
+  public
+  static
+  void setThreadLevel(final Level level) {
+    Category.setThreadLevel(level);
+  }
+
+  /**
+     Run <code>task</code> with <code>level</code> installed for the
+     current thread as by {@link #setThreadLevel}, then restore the
+     level installed before, if any, even if the task throws.
+
+     @param level the level to install, <code>null</code> runs the
+     task without a level.
+     @param task the task to run.
+     @since 1.2.18 */
+  public
+  static
+  void runWithThreadLevel(final Level level, final Runnable task) {
+    Level previous = Category.getThreadLevel();
+    Category.setThreadLevel(level);
+    try {
+      task.run();
+    } finally {
+      Category.setThreadLevel(previous);
+    }
+  }
+
+  /**
+     Remove the level installed for the current thread by {@link
+     #setThreadLevel}, if any.
+
+     @since 1.2.18 */
+  public
+  static
+  void removeThreadLevel() {
+    Category.removeThreadLevel();
+  }
+
+  /**
+     Return the level installed for the current thread by {@link
+     #setThreadLevel}, or <code>null</code> if there is none.
+
+     @since 1.2.18 */
+  public
+  static
+  Level getThreadLevel() {
+    return Category.getThreadLevel();
+  }
 }
 
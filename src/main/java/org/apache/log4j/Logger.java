@@ -121,7 +121,7 @@ public class Logger extends Category {
         return;
       }
 
-      if (Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel())) {
+      if (isEnabled(Level.TRACE, message, null)) {
         forcedLog(FQCN, Level.TRACE, message, null);
       }
     }
@@ -143,7 +143,7 @@ public class Logger extends Category {
         return;
       }
 
-      if (Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel())) {
+      if (isEnabled(Level.TRACE, message, t)) {
         forcedLog(FQCN, Level.TRACE, message, t);
       }
     }
@@ -160,7 +160,8 @@ public class Logger extends Category {
             return false;
           }
 
-          return Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel());
+          return isEnabled(Level.TRACE, null, null)
+            && isAsSevereAsAppenderThreshold(Level.TRACE_INT);
     }
 
 }
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+/**
+   A map from logger names to existing loggers which can be read
+   without locking.
+
+   <p>Entries are immutable and are only ever prepended to the bucket
+   chains. A writer stores the new chain head in the table and then
+   assigns the volatile <code>table</code> field, readers begin by
+   reading that field. A reader racing with a writer may miss the
+   newest entry, in which case {@link #get} returns <code>null</code>
+   and the caller falls back to the synchronized lookup in the
+   hierarchy.
+
+   <p>Writers must be serialized by the caller, {@link Hierarchy}
+   calls the {@link #put}, {@link #remove} and {@link #clear}
+   methods while holding the lock on its logger table.
+
+   @since 1.2.18 */
+final class LoggerRegistry {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static final class Entry {
+    final int hash;
+    final String name;
+    final Logger logger;
+    final Entry next;
+
+    Entry(int hash, String name, Logger logger, Entry next) {
+      this.hash = hash;
+      this.name = name;
+      this.logger = logger;
+      this.next = next;
+    }
+  }
+
+  private volatile Entry[] table = new Entry[INITIAL_CAPACITY];
+
+  // only accessed by writers
+  private int count;
+
+  /**
+     Return the logger registered under <code>name</code>, or
+     <code>null</code> if there is none. */
+  Logger get(String name) {
+    int hash = name.hashCode();
+    Entry[] tab = table;
+    for(Entry e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+      if(e.hash == hash && name.equals(e.name)) {
+        return e.logger;
+      }
+    }
+    return null;
+  }
+
+  /**
+     Register a logger which is not yet in this registry. */
+  void put(String name, Logger logger) {
+    Entry[] tab = table;
+    if(count >= tab.length - (tab.length >> 2)) {
+      tab = rehash(tab);
+    }
+    int hash = name.hashCode();
+    int i = hash & (tab.length - 1);
+    tab[i] = new Entry(hash, name, logger, tab[i]);
+    count++;
+    // volatile write, publishes the new entry
+    table = tab;
+  }
+
+  /**
+     Remove the logger registered under <code>name</code>, if any. */
+  void remove(String name) {
+    Entry[] tab = table;
+    int hash = name.hashCode();
+    int i = hash & (tab.length - 1);
+    Entry head = tab[i];
+    Entry e = head;
+    while(e != null && !(e.hash == hash && name.equals(e.name))) {
+      e = e.next;
+    }
+    if(e == null) {
+      return;
+    }
+    // entries are immutable, copy the ones in front of the removed one
+    Entry newHead = e.next;
+    for(Entry p = head; p != e; p = p.next) {
+      newHead = new Entry(p.hash, p.name, p.logger, newHead);
+    }
+    tab[i] = newHead;
+    count--;
+    table = tab;
+  }
+
+  /**
+     Remove all loggers from this registry. */
+  void clear() {
+    count = 0;
+    table = new Entry[INITIAL_CAPACITY];
+  }
+
+  int size() {
+    return count;
+  }
+
+  private
+  static
+  Entry[] rehash(Entry[] oldTable) {
+    Entry[] newTable = new Entry[oldTable.length << 1];
+    int mask = newTable.length - 1;
+    for(int i = 0; i < oldTable.length; i++) {
+      for(Entry e = oldTable[i]; e != null; e = e.next) {
+        int j = e.hash & mask;
+        newTable[j] = new Entry(e.hash, e.name, e.logger, newTable[j]);
+      }
+    }
+    return newTable;
+  }
+}
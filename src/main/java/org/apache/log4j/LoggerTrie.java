@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+   An index of loggers by name in which the loggers sharing a name
+   prefix form a subtree. Names are split into segments at dots, so
+   that the subtree of <code>a.b</code> holds the logger named
+   <code>a.b</code> and its descendants such as <code>a.b.c</code>,
+   but not <code>a.bc</code>.
+
+   <p>Finding the loggers of a subtree costs time proportional to the
+   size of the subtree rather than to the number of loggers in the
+   hierarchy.
+
+   <p>This class is not thread safe, {@link Hierarchy} only accesses
+   it while holding the lock on its logger table.
+
+   @since 1.2.18 */
+final class LoggerTrie {
+
+  private static final class Node {
+    // child nodes keyed by name segment, null if there are none
+    HashMap children;
+    // the logger with the name of this node, if it exists
+    Logger logger;
+
+    Node child(String segment, boolean create) {
+      Node child = children == null ? null : (Node) children.get(segment);
+      if(child == null && create) {
+        if(children == null) {
+          children = new HashMap(4);
+        }
+        child = new Node();
+        children.put(segment, child);
+      }
+      return child;
+    }
+
+    boolean isEmpty() {
+      return logger == null && (children == null || children.isEmpty());
+    }
+  }
+
+  /**
+     Visits the loggers of a subtree, each logger before its
+     descendants. */
+  interface Visitor {
+    /**
+       @return false to skip the descendants of <code>logger</code>. */
+    boolean visit(Logger logger);
+  }
+
+  private Node root = new Node();
+
+  /**
+     Index <code>logger</code> under <code>name</code>. */
+  void put(String name, Logger logger) {
+    Node node = root;
+    int begin = 0;
+    int end;
+    while((end = name.indexOf('.', begin)) >= 0) {
+      node = node.child(name.substring(begin, end), true);
+      begin = end + 1;
+    }
+    node.child(name.substring(begin), true).logger = logger;
+  }
+
+  /**
+     Remove the logger indexed under <code>name</code>, if any, along
+     with the nodes which no longer lead to a logger. */
+  void remove(String name) {
+    remove(root, name, 0);
+  }
+
+  private
+  static
+  void remove(Node node, String name, int begin) {
+    int end = name.indexOf('.', begin);
+    String segment = end < 0 ? name.substring(begin) : name.substring(begin, end);
+    Node child = node.child(segment, false);
+    if(child == null) {
+      return;
+    }
+    if(end < 0) {
+      child.logger = null;
+    } else {
+      remove(child, name, end + 1);
+    }
+    if(child.isEmpty()) {
+      node.children.remove(segment);
+    }
+  }
+
+  /**
+     Remove all loggers from this index. */
+  void clear() {
+    root = new Node();
+  }
+
+  /**
+     Add the loggers of the subtree of <code>prefix</code> to
+     <code>v</code>. A <code>null</code> or empty prefix designates
+     all the loggers. */
+  void collect(String prefix, Vector v) {
+    Node node = find(prefix);
+    if(node != null) {
+      collect(node, v);
+    }
+  }
+
+  /**
+     Visit the loggers of the subtree of <code>prefix</code>, skipping
+     the descendants of the loggers for which the visitor returns
+     false. A <code>null</code> or empty prefix designates all the
+     loggers. */
+  void walk(String prefix, Visitor visitor) {
+    Node node = find(prefix);
+    if(node != null) {
+      walk(node, visitor);
+    }
+  }
+
+  private
+  Node find(String prefix) {
+    Node node = root;
+    if(prefix != null && prefix.length() > 0) {
+      int begin = 0;
+      int end;
+      while(node != null && (end = prefix.indexOf('.', begin)) >= 0) {
+        node = node.child(prefix.substring(begin, end), false);
+        begin = end + 1;
+      }
+      if(node != null) {
+        node = node.child(prefix.substring(begin), false);
+      }
+    }
+    return node;
+  }
+
+  private
+  static
+  void walk(Node node, Visitor visitor) {
+    if(node.logger != null && !visitor.visit(node.logger)) {
+      return;
+    }
+    if(node.children != null) {
+      Iterator it = node.children.values().iterator();
+      while(it.hasNext()) {
+        walk((Node) it.next(), visitor);
+      }
+    }
+  }
+
+  private
+  static
+  void collect(Node node, Vector v) {
+    if(node.logger != null) {
+      v.addElement(node.logger);
+    }
+    if(node.children != null) {
+      Iterator it = node.children.values().iterator();
+      while(it.hasNext()) {
+        collect((Node) it.next(), v);
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.io.IOException;
+
+/**
+   MemoryMappedFileAppender is a {@link FileAppender} writing through
+   regions of the file mapped in memory: appending an event stores its
+   bytes in memory instead of calling the operating system. It is a
+   FileAppender with the <b>MemoryMapped</b> option set, which {@link
+   RollingFileAppender} and {@link DailyRollingFileAppender} also
+   accept to combine memory mapping with their rollover.
+
+   <p>The file is longer than its content while it is open, see
+   {@link org.apache.log4j.helpers.MappedFileWriter}.
+
+   @since 1.2.18 */
+public class MemoryMappedFileAppender extends FileAppender {
+
+  /**
+     Create an appender with the <b>MemoryMapped</b> option set.
+  */
+  public
+  MemoryMappedFileAppender() {
+    memoryMapped = true;
+  }
+
+  /**
+    Instantiate a <code>MemoryMappedFileAppender</code> and open the
+    file designated by <code>filename</code>.
+
+    <p>If the <code>append</code> parameter is true, the file will be
+    appended to. Otherwise, the file designated by
+    <code>filename</code> will be truncated before being opened.
+  */
+  public
+  MemoryMappedFileAppender(Layout layout, String filename, boolean append)
+                                                             throws IOException {
+    this.layout = layout;
+    this.memoryMapped = true;
+    this.setFile(filename, append, false, bufferSize);
+  }
+}
@@ -17,6 +17,7 @@
 
 package org.apache.log4j;
 
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.helpers.PatternParser;
 import org.apache.log4j.helpers.PatternConverter;
@@ -396,7 +397,7 @@ import org.apache.log4j.helpers.PatternConverter;
 
 
    @since 0.8.2 */
-public class PatternLayout extends Layout {
+public class PatternLayout extends Layout implements EventFieldUsage {
 
 
   /** Default pattern string for log output. Currently set to the
@@ -508,4 +509,53 @@ public class PatternLayout extends Layout {
     }
     return sbuf.toString();
   }
+
+  /**
+     Returns the fields read by the conversion specifiers of the
+     pattern. Subclasses recognizing custom conversion characters are
+     assumed to read all the fields.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    String p = (pattern == null) ? DEFAULT_CONVERSION_PATTERN : pattern;
+    if(createPatternParser(p).getClass() != PatternParser.class) {
+      return ALL;
+    }
+    int fields = 0;
+    int i = 0;
+    while(i < p.length()) {
+      if(p.charAt(i++) != '%') {
+	continue;
+      }
+      // skip the format modifiers
+      while(i < p.length() && "-.0123456789".indexOf(p.charAt(i)) >= 0) {
+	i++;
+      }
+      if(i == p.length()) {
+	break;
+      }
+      switch(p.charAt(i++)) {
+      case 'x':
+	fields |= NDC;
+	break;
+      case 'X':
+	fields |= MDC;
+	break;
+      case 't':
+	fields |= THREAD_NAME;
+	break;
+      case 'C':
+      case 'F':
+      case 'l':
+      case 'L':
+      case 'M':
+	fields |= LOCATION_INFO;
+	break;
+      default:
+	break;
+      }
+    }
+    return fields;
+  }
 }
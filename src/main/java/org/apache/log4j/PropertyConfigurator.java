@@ -69,8 +69,8 @@ import org.apache.log4j.spi.ErrorHandler;
    advanced configuration features supported by the {@link
    org.apache.log4j.xml.DOMConfigurator DOMConfigurator} such as
    support custom {@link org.apache.log4j.spi.ErrorHandler ErrorHandlers},
-   nested appenders such as the {@link org.apache.log4j.AsyncAppender
-   AsyncAppender}, etc.
+   nested appenders other than an {@link org.apache.log4j.AsyncAppender
+   AsyncAppender} wrapping a single appender, etc.
 
    <p>All option <em>values</em> admit variable substitution. The
    syntax of variable substitution is similar to that of Unix
@@ -106,6 +106,7 @@ public class PropertyConfigurator implements Configurator {
   static final String ROOT_CATEGORY_PREFIX = "log4j.rootCategory";
   static final String ROOT_LOGGER_PREFIX   = "log4j.rootLogger";
   static final String      APPENDER_PREFIX = "log4j.appender.";
+  static final String      ASYNC_SUFFIX = ".async";
   static final String      RENDERER_PREFIX = "log4j.renderer.";
   static final String      THRESHOLD_PREFIX = "log4j.threshold";
   private static final String      THROWABLE_RENDERER_PREFIX = "log4j.throwableRenderer";
@@ -199,6 +200,17 @@ public class PropertyConfigurator implements Configurator {
     log4j.appender.appenderName.errorhandler.optionN=valueN
     </pre>
 
+    An appender is moved off the logging threads by wrapping it in an
+    {@link AsyncAppender}, which takes the name of the appender. The
+    options of the <code>AsyncAppender</code>, such as BufferSize,
+    Blocking or WaitStrategy, follow the <code>async</code> key:
+    <pre>
+    log4j.appender.appenderName.async=true
+    log4j.appender.appenderName.async.option1=value1
+    ...
+    log4j.appender.appenderName.async.optionN=valueN
+    </pre>
+
     <h3>Configuring loggers</h3>
 
     <p>The syntax for configuring the root logger is:
@@ -512,9 +524,21 @@ new PropertyConfigurator().doConfigure(inputStream,
       LogLog.debug("Hierarchy threshold set to ["+hierarchy.getThreshold()+"].");
     }
     
-    configureRootCategory(properties, hierarchy);
-    configureLoggerFactory(properties);
-    parseCatsAndRenderers(properties, hierarchy);
+    // Link loggers and notify listeners once all loggers are configured.
+    Hierarchy batch = null;
+    if(hierarchy instanceof Hierarchy) {
+      batch = (Hierarchy) hierarchy;
+      batch.beginBatch();
+    }
+    try {
+      configureRootCategory(properties, hierarchy);
+      configureLoggerFactory(properties);
+      parseCatsAndRenderers(properties, hierarchy);
+    } finally {
+      if(batch != null) {
+        batch.commitBatch();
+      }
+    }
 
     LogLog.debug("Finished configuring.");
     // We don't want to hold references to appenders preventing their
@@ -848,9 +872,32 @@ new PropertyConfigurator().doConfigure(inputStream,
       LogLog.debug("Parsed \"" + appenderName +"\" options.");
     }
     parseAppenderFilters(props, appenderName, appender);
+    appender = parseAsync(props, prefix, appender);
     registryPut(appender);
     return appender;
   }
+
+  /**
+     Wrap the appender in an {@link AsyncAppender} of the same name if
+     its <code>async</code> option is true.  */
+  Appender parseAsync(Properties props, String prefix, Appender appender) {
+    String asyncPrefix = prefix + ASYNC_SUFFIX;
+    String value = OptionConverter.findAndSubst(asyncPrefix, props);
+    if(!OptionConverter.toBoolean(value, false)) {
+      return appender;
+    }
+    if(appender instanceof AsyncAppender) {
+      LogLog.warn("Appender \"" + appender.getName() +
+                  "\" is already asynchronous, ignoring its async option.");
+      return appender;
+    }
+    AsyncAppender async = new AsyncAppender();
+    async.setName(appender.getName());
+    async.addAppender(appender);
+    LogLog.debug("Wrapping \"" + appender.getName() + "\" in an AsyncAppender.");
+    PropertySetter.setProperties(async, props, asyncPrefix + ".");
+    return async;
+  }
   
   private void parseErrorHandler(
 		  final ErrorHandler eh,
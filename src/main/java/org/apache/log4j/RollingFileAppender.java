@@ -27,6 +27,7 @@ import java.io.InterruptedIOException;
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.CountingQuietWriter;
+import org.apache.log4j.helpers.FileRoller;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -56,6 +57,34 @@ public class RollingFileAppender extends FileAppender {
 
   private long nextRollover = 0;
 
+  /**
+     Backups are shifted by a background thread when
+     <code>backgroundRollover</code> is set.
+
+     @since 1.2.18 */
+  protected boolean backgroundRollover = false;
+
+  /**
+     Rolled over files are compressed in this format when not
+     <code>null</code>.
+
+     @since 1.2.18 */
+  protected String compression;
+
+  /**
+     Compression level from 0 to 9, -1 for the default level.
+
+     @since 1.2.18 */
+  protected int compressionLevel = -1;
+
+  /**
+     Maximum number of files compressed at the same time.
+
+     @since 1.2.18 */
+  protected int compressionThreads = 1;
+
+  private FileRoller roller;
+
   /**
      The default constructor simply calls its {@link
      FileAppender#FileAppender parents constructor}.  */
@@ -90,6 +119,16 @@ public class RollingFileAppender extends FileAppender {
     super(layout, filename);
   }
 
+  /**
+     Returns the value of the <b>BackgroundRollover</b> option.
+
+     @since 1.2.18
+   */
+  public
+  boolean getBackgroundRollover() {
+    return backgroundRollover;
+  }
+
   /**
      Returns the value of the <b>MaxBackupIndex</b> option.
    */
@@ -122,6 +161,11 @@ public class RollingFileAppender extends FileAppender {
      <p>If <code>MaxBackupIndex</code> is equal to zero, then the
      <code>File</code> is truncated with no backup files created.
 
+     <p>If <code>BackgroundRollover</code> or <code>Compression</code>
+     is set, <code>File</code> is only renamed to a temporary name
+     before being reopened, the backups being shifted later by a
+     background thread.
+
    */
   public // synchronization not necessary since doAppend is alreasy synched
   void rollOver() {
@@ -137,24 +181,18 @@ public class RollingFileAppender extends FileAppender {
     }
     LogLog.debug("maxBackupIndex="+maxBackupIndex);
 
+    if((backgroundRollover || compression != null) && maxBackupIndex > 0) {
+      rollOverInBackground();
+      return;
+    }
+
     boolean renameSucceeded = true;
     // If maxBackups <= 0, then there is no file renaming to be done.
     if(maxBackupIndex > 0) {
-      // Delete the oldest file, to keep Windows happy.
-      file = new File(fileName + '.' + maxBackupIndex);
-      if (file.exists()) {
-        renameSucceeded = file.delete();
-    }
-
-      // Map {(maxBackupIndex - 1), ..., 2, 1} to {maxBackupIndex, ..., 3, 2}
-      for (int i = maxBackupIndex - 1; i >= 1 && renameSucceeded; i--) {
-	file = new File(fileName + "." + i);
-	if (file.exists()) {
-	  target = new File(fileName + '.' + (i + 1));
-	  LogLog.debug("Renaming file " + file + " to " + target);
-	  renameSucceeded = file.renameTo(target);
-	}
-      }
+      // Delete the oldest file, to keep Windows happy, and map
+      // {(maxBackupIndex - 1), ..., 2, 1} to {maxBackupIndex, ..., 3, 2},
+      // including the backups compressed by an earlier configuration.
+      renameSucceeded = FileRoller.shiftBackups(fileName, maxBackupIndex);
 
     if(renameSucceeded) {
       // Rename fileName to fileName.1
@@ -201,17 +239,174 @@ public class RollingFileAppender extends FileAppender {
     }
   }
 
+  private
+  void rollOverInBackground() {
+    this.closeFile(); // keep windows happy.
+
+    if(roller == null) {
+      roller = new FileRoller(name);
+    }
+    roller.setCompression(compression, compressionLevel, compressionThreads);
+    File detached = roller.detach(fileName);
+    try {
+      // if the file could not be renamed, keep appending to it
+      this.setFile(fileName, detached == null, bufferedIO, bufferSize);
+      if(detached != null) {
+        nextRollover = 0;
+      }
+    }
+    catch(IOException e) {
+        if (e instanceof InterruptedIOException) {
+            Thread.currentThread().interrupt();
+        }
+        LogLog.error("setFile("+fileName+", "+(detached == null)+") call failed.", e);
+    }
+    if(detached != null) {
+      roller.shift(detached, fileName, maxBackupIndex);
+    }
+  }
+
+  /**
+     Open the file, then queue again the rolled over files left with
+     a temporary name when the process exited before shifting them.
+     Without backups to keep, they are deleted.
+
+     @since 1.2.18 */
+  public
+  void activateOptions() {
+    super.activateOptions();
+    if(fileName == null) {
+      return;
+    }
+    if(roller == null) {
+      roller = new FileRoller(name);
+    }
+    roller.setCompression(compression, compressionLevel, compressionThreads);
+    File[] detached = roller.recover(fileName);
+    for(int i = 0; i < detached.length; i++) {
+      if(maxBackupIndex > 0) {
+        roller.shift(detached[i], fileName, maxBackupIndex);
+      } else {
+        LogLog.debug("Deleting file " + detached[i]);
+        roller.delete(detached[i]);
+      }
+    }
+  }
+
+  /**
+     Close the file and wait for the backups still being shifted in
+     the background.
+
+     @since 1.2.18 */
+  public
+  synchronized
+  void close() {
+    super.close();
+    if(roller != null) {
+      roller.await();
+    }
+  }
+
   public
   synchronized
   void setFile(String fileName, boolean append, boolean bufferedIO, int bufferSize)
                                                                  throws IOException {
+    // the length is taken before opening, a memory mapped file
+    // grows by a whole region when opened
+    long length = append ? new File(fileName).length() : 0;
     super.setFile(fileName, append, this.bufferedIO, this.bufferSize);
     if(append) {
-      File f = new File(fileName);
-      ((CountingQuietWriter) qw).setCount(f.length());
+      ((CountingQuietWriter) qw).setCount(length);
+    }
+  }
+
+
+  /**
+     The <b>BackgroundRollover</b> option keeps the shifting of the
+     backup files off the logging threads. On rollover the file is
+     renamed to a temporary name and a new file is opened right away,
+     a background thread then deletes the oldest backup, renames the
+     others and finally gives the rolled over file its
+     <code>File.1</code> name. Closing the appender waits for these
+     renames.
+
+     @since 1.2.18 */
+  public
+  void setBackgroundRollover(boolean backgroundRollover) {
+    this.backgroundRollover = backgroundRollover;
+  }
+
+  /**
+     The <b>Compression</b> option takes the value <code>gzip</code>,
+     <code>deflate</code> or <code>none</code>. When set, rolled over
+     files are compressed by background threads and the backups are
+     named <code>File.1.gz</code>, <code>File.2.gz</code> and so on,
+     or with the <code>.deflate</code> suffix. Compression implies
+     <b>BackgroundRollover</b>.
+
+     @since 1.2.18 */
+  public
+  void setCompression(String value) {
+    compression = FileRoller.toCompression(value);
+  }
+
+  /**
+     Returns the value of the <b>Compression</b> option.
+
+     @since 1.2.18 */
+  public
+  String getCompression() {
+    return compression;
+  }
+
+  /**
+     The <b>CompressionLevel</b> option trades speed for size, from 1
+     for the fastest to 9 for the smallest files. Zero stores the data
+     uncompressed and -1, the default, picks the usual level 6.
+
+     @since 1.2.18 */
+  public
+  void setCompressionLevel(int level) {
+    if(level < -1 || level > 9) {
+      LogLog.warn("CompressionLevel must be between -1 and 9, not " + level + ".");
+    } else {
+      compressionLevel = level;
+    }
+  }
+
+  /**
+     Returns the value of the <b>CompressionLevel</b> option.
+
+     @since 1.2.18 */
+  public
+  int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+     The <b>CompressionThreads</b> option limits how many rolled over
+     files are compressed at the same time, one by default. Whatever
+     order they complete in, the backups are renamed in the order
+     they were rolled over.
+
+     @since 1.2.18 */
+  public
+  void setCompressionThreads(int threads) {
+    if(threads < 1) {
+      LogLog.warn("CompressionThreads must be positive, not " + threads + ".");
+    } else {
+      compressionThreads = threads;
     }
   }
 
+  /**
+     Returns the value of the <b>CompressionThreads</b> option.
+
+     @since 1.2.18 */
+  public
+  int getCompressionThreads() {
+    return compressionThreads;
+  }
 
   /**
      Set the maximum number of backup files to keep around.
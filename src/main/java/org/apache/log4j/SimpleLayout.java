@@ -17,6 +17,7 @@
 
 package org.apache.log4j;
 
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -33,7 +34,7 @@ import org.apache.log4j.spi.LoggingEvent;
 
    <p>{@link PatternLayout} offers a much more powerful alternative.
 */
-public class SimpleLayout extends Layout {
+public class SimpleLayout extends Layout implements EventFieldUsage {
 
   StringBuffer sbuf = new StringBuffer(128);
 
@@ -75,4 +76,14 @@ public class SimpleLayout extends Layout {
   boolean ignoresThrowable() {
     return true;
   }
+
+  /**
+     The SimpleLayout reads none of the fields taken from the logging
+     thread.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    return 0;
+  }
 }
@@ -21,6 +21,7 @@
 package org.apache.log4j;
 
 import org.apache.log4j.helpers.DateLayout;
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -71,7 +72,7 @@ import org.apache.log4j.spi.LoggingEvent;
   @author <A HREF="mailto:heinz.richter@ecmwf.int">Heinz Richter</a>
 
 */
-public class TTCCLayout extends DateLayout {
+public class TTCCLayout extends DateLayout implements EventFieldUsage {
 
   // Internal representation of options
   private boolean threadPrinting    = true;
@@ -214,4 +215,21 @@ public class TTCCLayout extends DateLayout {
   boolean ignoresThrowable() {
     return true;
   }
+
+  /**
+     Returns the thread name and the NDC, depending on the
+     <b>ThreadPrinting</b> and <b>ContextPrinting</b> options.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    int fields = 0;
+    if(threadPrinting) {
+      fields |= THREAD_NAME;
+    }
+    if(contextPrinting) {
+      fields |= NDC;
+    }
+    return fields;
+  }
 }
@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 
+import org.apache.log4j.helpers.Flusher;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.QuietWriter;
 import org.apache.log4j.spi.ErrorHandler;
@@ -69,6 +70,39 @@ public class WriterAppender extends AppenderSkeleton {
   */
   protected QuietWriter qw;
 
+  // True while a batch of events is written, the flush then waits for
+  // the end of the batch.
+  private boolean batching = false;
+  private boolean flushPending = false;
+
+  /**
+     Number of characters after which the writer is flushed, zero if
+     the size does not matter.
+
+     @since 1.2.18 */
+  protected int flushSize = 0;
+
+  /**
+     Number of milliseconds after which written characters are flushed
+     in the background, zero if no periodic flush is wanted.
+
+     @since 1.2.18 */
+  protected long flushInterval = 0;
+
+  /**
+     Events of this level or higher flush the writer immediately,
+     <code>null</code> if the level does not matter.
+
+     @since 1.2.18 */
+  protected Level flushLevel;
+
+  // characters written since the last flush and the time the first
+  // of them was written, guarded by this appender
+  private int unflushed = 0;
+  private long unflushedSince;
+
+  private Flusher.Client flusherClient;
+
 
   /**
      This default constructor does nothing.  */
@@ -124,6 +158,85 @@ public class WriterAppender extends AppenderSkeleton {
     return immediateFlush;
   }
 
+  /**
+     The <b>FlushSize</b> option flushes the writer once at least
+     this many characters have been written since the last flush. It
+     is useful together with <b>BufferedIO</b> or with
+     <b>ImmediateFlush</b> set to <code>false</code> to write in large
+     groups while bounding what a crash may lose. Setting a positive
+     size turns <b>ImmediateFlush</b> off.
+
+     @since 1.2.18 */
+  public
+  void setFlushSize(int flushSize) {
+    this.flushSize = flushSize;
+    if(flushSize > 0) {
+      immediateFlush = false;
+    }
+  }
+
+  /**
+     Returns value of the <b>FlushSize</b> option.
+
+     @since 1.2.18 */
+  public
+  int getFlushSize() {
+    return flushSize;
+  }
+
+  /**
+     The <b>FlushInterval</b> option flushes written events at most
+     this many milliseconds after they were written, even if no other
+     event follows. The flushing is done by a background thread
+     shared by all appenders. Setting a positive interval turns
+     <b>ImmediateFlush</b> off.
+
+     @since 1.2.18 */
+  public
+  synchronized
+  void setFlushInterval(long flushInterval) {
+    this.flushInterval = flushInterval;
+    if(flushInterval > 0) {
+      immediateFlush = false;
+      if(unflushed > 0) {
+	register();
+      }
+    }
+  }
+
+  /**
+     Returns value of the <b>FlushInterval</b> option.
+
+     @since 1.2.18 */
+  public
+  long getFlushInterval() {
+    return flushInterval;
+  }
+
+  /**
+     The <b>FlushLevel</b> option flushes the writer immediately after
+     an event of this level or higher, so that errors reach the disk
+     while less important events are written in groups. Setting a
+     level turns <b>ImmediateFlush</b> off.
+
+     @since 1.2.18 */
+  public
+  void setFlushLevel(Level flushLevel) {
+    this.flushLevel = flushLevel;
+    if(flushLevel != null) {
+      immediateFlush = false;
+    }
+  }
+
+  /**
+     Returns value of the <b>FlushLevel</b> option.
+
+     @since 1.2.18 */
+  public
+  Level getFlushLevel() {
+    return flushLevel;
+  }
+
   /**
      Does nothing.
   */
@@ -162,6 +275,33 @@ public class WriterAppender extends AppenderSkeleton {
     subAppend(event);
    }
 
+  /**
+     Write the events and flush the writer once at the end of the
+     batch if any of them asks for it, instead of after each event.
+
+     @since 1.2.18 */
+  protected
+  void append(LoggingEvent[] events, int count) {
+    if(!checkEntryConditions()) {
+      return;
+    }
+    batching = true;
+    try {
+      for(int i = 0; i < count; i++) {
+	subAppend(events[i]);
+      }
+    } finally {
+      batching = false;
+    }
+    if(flushPending) {
+      flushPending = false;
+      // a subclass may have closed the writer while appending
+      if(this.qw != null) {
+	flushWriter();
+      }
+    }
+  }
+
   /**
      This method determines if there is a sense in attempting to append.
 
@@ -204,6 +344,9 @@ public class WriterAppender extends AppenderSkeleton {
         return;
     }
     this.closed = true;
+    if(flusherClient != null) {
+      Flusher.remove(flusherClient);
+    }
     writeFooter();
     reset();
   }
@@ -308,7 +451,22 @@ public class WriterAppender extends AppenderSkeleton {
      @since 0.9.0 */
   protected
   void subAppend(LoggingEvent event) {
-    this.qw.write(this.layout.format(event));
+    subAppend(event, this.layout.format(event));
+  }
+
+  /**
+     Write an event already formatted by the layout, then flush the
+     writer as the flush options require. Appenders which format the
+     events outside of the monitor of this appender call this method
+     instead of {@link #subAppend(LoggingEvent)}.
+
+     @param event the event being appended.
+     @param text the event formatted by the layout.
+     @since 1.2.18 */
+  protected
+  void subAppend(LoggingEvent event, String text) {
+    this.qw.write(text);
+    int written = text.length();
 
     if(layout.ignoresThrowable()) {
       String[] s = event.getThrowableStrRep();
@@ -317,13 +475,63 @@ public class WriterAppender extends AppenderSkeleton {
 	for(int i = 0; i < len; i++) {
 	  this.qw.write(s[i]);
 	  this.qw.write(Layout.LINE_SEP);
+	  written += s[i].length() + Layout.LINE_SEP_LEN;
 	}
       }
     }
 
+    if(unflushed == 0 && written > 0 && flushInterval > 0) {
+      unflushedSince = System.currentTimeMillis();
+      register();
+    }
+    unflushed += written;
+
     if(shouldFlush(event)) {
-      this.qw.flush();
+      if(batching) {
+	flushPending = true;
+      } else {
+	flushWriter();
+      }
+    }
+  }
+
+  // Flush the writer and forget about the characters written so far.
+  private
+  void flushWriter() {
+    this.qw.flush();
+    unflushed = 0;
+  }
+
+  private
+  void register() {
+    if(flusherClient == null) {
+      flusherClient = new Flusher.Client() {
+	  public long flushIfDue(long now) {
+	    return timedFlush(now);
+	  }
+	};
+    }
+    Flusher.add(flusherClient);
+  }
+
+  // Called by the flushing thread. The appender unregisters itself
+  // when closed or when the interval has been switched off.
+  private
+  synchronized
+  long timedFlush(long now) {
+    if(this.closed || flushInterval <= 0) {
+      Flusher.remove(flusherClient);
+      return Long.MAX_VALUE;
+    }
+    if(unflushed == 0 || this.qw == null) {
+      return flushInterval;
+    }
+    long due = unflushedSince + flushInterval;
+    if(now < due) {
+      return due - now;
     }
+    flushWriter();
+    return flushInterval;
   }
 
 
@@ -346,6 +554,7 @@ public class WriterAppender extends AppenderSkeleton {
   void reset() {
     closeWriter();
     this.qw = null;
+    unflushed = 0;
     //this.tp = null;
   }
 
@@ -359,7 +568,7 @@ public class WriterAppender extends AppenderSkeleton {
       String f = layout.getFooter();
       if(f != null && this.qw != null) {
 	this.qw.write(f);
-	this.qw.flush();
+	flushWriter();
       }
     }
   }
@@ -379,11 +588,18 @@ public class WriterAppender extends AppenderSkeleton {
   
   /**
    * Determines whether the writer should be flushed after
-   * this event is written.
+   * this event is written. Besides <b>ImmediateFlush</b>, the
+   * <b>FlushLevel</b> and <b>FlushSize</b> options are checked here.
    * 
    * @since 1.2.16
    */
   protected boolean shouldFlush(final LoggingEvent event) {
-     return immediateFlush;
+     if(immediateFlush) {
+       return true;
+     }
+     if(flushLevel != null && event.getLevel().isGreaterOrEqual(flushLevel)) {
+       return true;
+     }
+     return flushSize > 0 && unflushed >= flushSize;
   }
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.concurrent;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   Base class for appenders which handle their own synchronization.
+
+   <p>{@link AppenderSkeleton#doAppend} holds the monitor of the
+   appender while it checks the threshold, runs the filters and calls
+   {@link #append}, so that only one thread at a time logs to an
+   appender. This class performs the same checks without holding any
+   lock and calls {@link #append} concurrently from all the logging
+   threads. Subclasses must therefore make <code>append</code> thread
+   safe, typically by locking only around the part which writes to
+   the destination.
+
+   <p>The filters of this appender are copied into an array when they
+   are changed, so that they can be run while another thread adds or
+   clears filters. The filters themselves must be thread safe, which
+   is the case for the filters in {@link org.apache.log4j.varia}.
+
+   <p>{@link ConcurrentWriterAppender} extends {@link
+   org.apache.log4j.WriterAppender} instead, and appends the same way.
+
+   @since 1.2.18 */
+public abstract class ConcurrentAppender extends AppenderSkeleton {
+
+  private final FilterChain filters = new FilterChain();
+
+  /**
+     Add a filter to end of the filter list. */
+  public
+  synchronized
+  void addFilter(Filter newFilter) {
+    super.addFilter(newFilter);
+    filters.addFilter(newFilter);
+  }
+
+  /**
+     Clear the filters chain. */
+  public
+  synchronized
+  void clearFilters() {
+    super.clearFilters();
+    filters.clearFilters();
+  }
+
+  /**
+     Performs threshold checks and invokes filters before delegating
+     actual logging to {@link #append}, without holding the monitor of
+     this appender. */
+  public
+  void doAppend(LoggingEvent event) {
+    if(closed) {
+      LogLog.error("Attempted to append to closed appender named ["+name+"].");
+      return;
+    }
+
+    if(isAsSevereAsThreshold(event.getLevel()) && filters.isAccepted(event)) {
+      this.append(event);
+    }
+  }
+
+  /**
+     Appends the events in turn with {@link #doAppend(LoggingEvent)},
+     without holding the monitor of this appender. */
+  public
+  void doAppend(LoggingEvent[] events, int count) {
+    for(int i = 0; i < count; i++) {
+      doAppend(events[i]);
+    }
+  }
+}
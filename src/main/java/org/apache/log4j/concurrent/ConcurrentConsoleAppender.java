@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.concurrent;
+
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Layout;
+import org.apache.log4j.helpers.ConsoleStreams;
+import org.apache.log4j.helpers.LogLog;
+
+/**
+  * ConcurrentConsoleAppender appends log events to
+  * <code>System.out</code> or <code>System.err</code>, like {@link
+  * ConsoleAppender}, without serializing the logging threads on the
+  * appender monitor. See {@link ConcurrentWriterAppender}.
+  *
+  * @since 1.2.18 */
+public class ConcurrentConsoleAppender extends ConcurrentWriterAppender {
+
+  protected String target = ConsoleAppender.SYSTEM_OUT;
+
+  /**
+   *  Determines if the appender honors reassignments of System.out
+   *  or System.err made after configuration.
+   */
+  private boolean follow = false;
+
+  /**
+    * Constructs an unconfigured appender.
+    */
+  public ConcurrentConsoleAppender() {
+  }
+
+    /**
+     * Creates a configured appender.
+     *
+     * @param layout layout, may not be null.
+     */
+  public ConcurrentConsoleAppender(Layout layout) {
+    this(layout, ConsoleAppender.SYSTEM_OUT);
+  }
+
+    /**
+     *   Creates a configured appender.
+     * @param layout layout, may not be null.
+     * @param target target, either "System.err" or "System.out".
+     */
+  public ConcurrentConsoleAppender(Layout layout, String target) {
+    setLayout(layout);
+    setTarget(target);
+    activateOptions();
+  }
+
+  /**
+   *  Sets the value of the <b>Target</b> option. Recognized values
+   *  are "System.out" and "System.err". Any other value will be
+   *  ignored.
+   * */
+  public
+  void setTarget(String value) {
+    String t = ConsoleStreams.getTarget(value);
+
+    if (t != null) {
+      target = t;
+    } else {
+      LogLog.warn("["+value+"] should be System.out or System.err.");
+      LogLog.warn("Using previously set target, System.out by default.");
+    }
+  }
+
+  /**
+   * Returns the current value of the <b>Target</b> property. The
+   * default value of the option is "System.out".
+   * */
+  public
+  String getTarget() {
+    return target;
+  }
+
+  /**
+   *  Sets whether the appender honors reassignments of System.out
+   *  or System.err made after configuration.
+   */
+  public final void setFollow(final boolean newValue) {
+     follow = newValue;
+  }
+
+  /**
+   *  Gets whether the appender honors reassignments of System.out
+   *  or System.err made after configuration.
+   */
+  public final boolean getFollow() {
+      return follow;
+  }
+
+  /**
+    *   Prepares the appender for use.
+    */
+  public void activateOptions() {
+    setWriter(createWriter(ConsoleStreams.getStream(target, follow)));
+    super.activateOptions();
+  }
+
+  /**
+   *  Closes the writer only when it wraps the redirecting stream,
+   *  System.out and System.err themselves are left open.
+   */
+  protected
+  final
+  void closeWriter() {
+     if (follow) {
+        super.closeWriter();
+     }
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.concurrent;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.log4j.Layout;
+import org.apache.log4j.WriterAppender;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   ConcurrentWriterAppender appends log events to a {@link
+   java.io.Writer} or an {@link java.io.OutputStream}, like {@link
+   WriterAppender}, without serializing the logging threads on the
+   appender monitor. It accepts the options of {@link WriterAppender},
+   including the flush options.
+
+   <p>The threshold and the filters are checked without holding any
+   lock, as in {@link ConcurrentAppender}. Events are then formatted
+   while holding the monitor of the layout, since layouts commonly
+   reuse a buffer between calls, and are written while holding the
+   monitor of this appender. A thread can thus format its event while
+   another one writes, and threads using the appender are never
+   blocked by the filters of this appender.
+
+   @since 1.2.18 */
+public class ConcurrentWriterAppender extends WriterAppender {
+
+  private final FilterChain filters = new FilterChain();
+
+  /**
+     This default constructor does nothing.  */
+  public
+  ConcurrentWriterAppender() {
+  }
+
+  /**
+     Instantiate a ConcurrentWriterAppender and set the output
+     destination to a new {@link OutputStreamWriter} initialized with
+     <code>os</code> as its {@link OutputStream}.  */
+  public
+  ConcurrentWriterAppender(Layout layout, OutputStream os) {
+    super(layout, os);
+  }
+
+  /**
+     Instantiate a ConcurrentWriterAppender and set the output
+     destination to <code>writer</code>.
+
+     <p>The <code>writer</code> must have been previously opened by
+     the user.  */
+  public
+  ConcurrentWriterAppender(Layout layout, Writer writer) {
+    super(layout, writer);
+  }
+
+  /**
+     Add a filter to end of the filter list. */
+  public
+  synchronized
+  void addFilter(Filter newFilter) {
+    super.addFilter(newFilter);
+    filters.addFilter(newFilter);
+  }
+
+  /**
+     Clear the filters chain. */
+  public
+  synchronized
+  void clearFilters() {
+    super.clearFilters();
+    filters.clearFilters();
+  }
+
+  /**
+     Performs threshold checks and invokes filters before delegating
+     actual logging to {@link #append}, without holding the monitor of
+     this appender. */
+  public
+  void doAppend(LoggingEvent event) {
+    if(closed) {
+      LogLog.error("Attempted to append to closed appender named ["+name+"].");
+      return;
+    }
+
+    if(isAsSevereAsThreshold(event.getLevel()) && filters.isAccepted(event)) {
+      this.append(event);
+    }
+  }
+
+  /**
+     Appends the events in turn with {@link #doAppend(LoggingEvent)},
+     without holding the monitor of this appender. */
+  public
+  void doAppend(LoggingEvent[] events, int count) {
+    for(int i = 0; i < count; i++) {
+      doAppend(events[i]);
+    }
+  }
+
+  /**
+     Format the event outside of the monitor of this appender, then
+     write it with {@link #subAppend(LoggingEvent, String)}.  */
+  public
+  void append(LoggingEvent event) {
+    Layout layout = this.layout;
+    if(layout == null) {
+      errorHandler.error("No layout set for the appender named ["+ name+"].");
+      return;
+    }
+
+    String text;
+    // layouts are not required to be thread safe
+    synchronized(layout) {
+      text = layout.format(event);
+    }
+
+    synchronized(this) {
+      if(!checkEntryConditions()) {
+        return;
+      }
+      subAppend(event, text);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.concurrent;
+
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   The filters of a concurrent appender, copied into an array when
+   they are changed so that they can be run while another thread adds
+   or clears filters.
+
+   @since 1.2.18 */
+final class FilterChain {
+
+  private static final Filter[] NO_FILTERS = new Filter[0];
+
+  /**
+     The filters in the order they are run. */
+  private volatile Filter[] filters = NO_FILTERS;
+
+  /**
+     Add a filter to end of the chain. */
+  synchronized
+  void addFilter(Filter newFilter) {
+    Filter[] old = filters;
+    Filter[] f = new Filter[old.length + 1];
+    System.arraycopy(old, 0, f, 0, old.length);
+    f[old.length] = newFilter;
+    filters = f;
+  }
+
+  /**
+     Clear the chain. */
+  void clearFilters() {
+    filters = NO_FILTERS;
+  }
+
+  /**
+     Run the filters until one of them accepts or denies the event.
+
+     @return false if a filter denied the event. */
+  boolean isAccepted(LoggingEvent event) {
+    Filter[] f = filters;
+
+    for(int i = 0; i < f.length; i++) {
+      switch(f[i].decide(event)) {
+      case Filter.DENY: return false;
+      case Filter.ACCEPT: return true;
+      case Filter.NEUTRAL: break;
+      }
+    }
+    return true;
+  }
+}
@@ -131,7 +131,8 @@ public class PropertySetter {
         
 	String value = OptionConverter.findAndSubst(key, properties);
         key = key.substring(len);
-        if (("layout".equals(key) || "errorhandler".equals(key)) && obj instanceof Appender) {
+        if (("layout".equals(key) || "errorhandler".equals(key) || "async".equals(key))
+                && obj instanceof Appender) {
           continue;
         }
         //
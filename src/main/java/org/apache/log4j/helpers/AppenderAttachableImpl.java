@@ -28,6 +28,15 @@ import java.util.Enumeration;
    A straightforward implementation of the {@link AppenderAttachable}
    interface.
 
+   <p>Besides the {@link #appenderList} vector, this class keeps an
+   immutable array copy of the attached appenders which is replaced
+   whenever an appender is added or removed. The {@link
+   #appendLoopOnAppenders} method iterates over that copy and
+   therefore does not need to be synchronized with the methods that
+   attach or detach appenders. Subclasses modifying
+   <code>appenderList</code> directly must call {@link
+   #publishAppenders}.
+
    @author Ceki G&uuml;lc&uuml;
    @since version 0.9.1 */
 public class AppenderAttachableImpl implements AppenderAttachable {
@@ -35,11 +44,35 @@ public class AppenderAttachableImpl implements AppenderAttachable {
   /** Array of appenders. */
   protected Vector  appenderList;
 
+  private static final Appender[] EMPTY = new Appender[0];
+
+  /** Copy of appenderList read by appendLoopOnAppenders. */
+  private volatile Appender[] appenders = EMPTY;
+
+  /**
+     Replace the copy of the attached appenders used by {@link
+     #appendLoopOnAppenders} with the current content of
+     <code>appenderList</code>.
+
+     @since 1.2.18 */
+  protected
+  synchronized
+  void publishAppenders() {
+    if(appenderList == null || appenderList.isEmpty()) {
+      appenders = EMPTY;
+    } else {
+      Appender[] a = new Appender[appenderList.size()];
+      appenderList.copyInto(a);
+      appenders = a;
+    }
+  }
+
   /**
      Attach an appender. If the appender is already in the list in
      won't be added again.
   */
   public
+  synchronized
   void addAppender(Appender newAppender) {
     // Null values for newAppender parameter are strictly forbidden.
     if(newAppender == null) {
@@ -51,6 +84,7 @@ public class AppenderAttachableImpl implements AppenderAttachable {
     }
     if(!appenderList.contains(newAppender)) {
         appenderList.addElement(newAppender);
+        publishAppenders();
     }
   }
 
@@ -58,20 +92,27 @@ public class AppenderAttachableImpl implements AppenderAttachable {
      Call the <code>doAppend</code> method on all attached appenders.  */
   public
   int appendLoopOnAppenders(LoggingEvent event) {
-    int size = 0;
-    Appender appender;
-
-    if(appenderList != null) {
-      size = appenderList.size();
-      for(int i = 0; i < size; i++) {
-	appender = (Appender) appenderList.elementAt(i);
-	appender.doAppend(event);
-      }
-    }    
-    return size;
+    Appender[] a = appenders;
+    for(int i = 0; i < a.length; i++) {
+      a[i].doAppend(event);
+    }
+    return a.length;
   }
 
 
+  /**
+     Get a copy of the attached appenders as an array. The array is
+     empty if there are no attached appenders.
+
+     @since 1.2.18 */
+  public
+  Appender[] getAppenderArray() {
+    Appender[] a = appenders;
+    Appender[] copy = new Appender[a.length];
+    System.arraycopy(a, 0, copy, 0, a.length);
+    return copy;
+  }
+
   /**
      Get all attached appenders as an Enumeration. If there are no
      attached appenders <code>null</code> is returned.
@@ -140,8 +181,11 @@ public class AppenderAttachableImpl implements AppenderAttachable {
    * Remove and close all previously attached appenders.
    * */
   public
+  synchronized
   void removeAllAppenders() {
     if(appenderList != null) {
+      // stop dispatching to the appenders before closing them
+      appenders = EMPTY;
       int len = appenderList.size();      
       for(int i = 0; i < len; i++) {
 	Appender a = (Appender) appenderList.elementAt(i);
@@ -157,11 +201,14 @@ public class AppenderAttachableImpl implements AppenderAttachable {
      Remove the appender passed as parameter form the list of attached
      appenders.  */
   public
+  synchronized
   void removeAppender(Appender appender) {
     if(appender == null || appenderList == null) {
         return;
     }
-    appenderList.removeElement(appender);    
+    if(appenderList.removeElement(appender)) {
+      publishAppenders();
+    }
   }
 
 
@@ -170,6 +217,7 @@ public class AppenderAttachableImpl implements AppenderAttachable {
     list of appenders.  
   */
   public
+  synchronized
   void removeAppender(String name) {
     if(name == null || appenderList == null) {
         return;
@@ -178,6 +226,7 @@ public class AppenderAttachableImpl implements AppenderAttachable {
     for(int i = 0; i < size; i++) {
       if(name.equals(((Appender)appenderList.elementAt(i)).getName())) {
 	 appenderList.removeElementAt(i);
+	 publishAppenders();
 	 break;
       }
     }
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.util.LinkedList;
+
+/**
+   <code>BackgroundExecutor</code> runs tasks on a small number of
+   daemon threads so that slow file operations are kept off the
+   logging threads.
+
+   <p>Tasks are taken in the order they were submitted. With a single
+   thread they also complete in that order, which callers relying on
+   sequential file renames need. The queue is bounded: once
+   <code>capacity</code> tasks are waiting, {@link #execute} blocks
+   until a thread takes one, so that a burst of work slows the
+   logging threads down rather than exhausting memory.
+
+   <p>Threads are only started when there is work and stop as soon as
+   the queue is empty, an idle executor thus costs nothing.
+
+   @since 1.2.18 */
+public final class BackgroundExecutor {
+
+  private final String name;
+
+  private final int capacity;
+
+  private final LinkedList queue = new LinkedList();
+
+  private int maxThreads;
+
+  // threads started and threads currently running a task, guarded
+  // by queue
+  private int threads = 0;
+  private int busy = 0;
+
+  private int sequence = 0;
+
+  /**
+     Create an executor whose threads are named after
+     <code>name</code>. */
+  public BackgroundExecutor(String name, int maxThreads, int capacity) {
+    if(maxThreads < 1 || capacity < 1) {
+      throw new IllegalArgumentException("maxThreads and capacity must be positive");
+    }
+    this.name = name;
+    this.maxThreads = maxThreads;
+    this.capacity = capacity;
+  }
+
+  /**
+     Change the number of threads running tasks at the same time.
+     Running threads finish their current task before the change
+     takes effect. */
+  public void setMaxThreads(int maxThreads) {
+    if(maxThreads < 1) {
+      throw new IllegalArgumentException("maxThreads must be positive");
+    }
+    synchronized(queue) {
+      this.maxThreads = maxThreads;
+      startThreads();
+    }
+  }
+
+  public int getMaxThreads() {
+    synchronized(queue) {
+      return maxThreads;
+    }
+  }
+
+  /**
+     Queue <code>task</code>, waiting for room in the queue if it is
+     full. An interrupt does not stop the wait, since running the task
+     out of turn would break the order of the tasks; the interrupt
+     status is restored once the task is queued. */
+  public void execute(Runnable task) {
+    boolean interrupted = false;
+    synchronized(queue) {
+      while(queue.size() >= capacity) {
+	try {
+	  queue.wait();
+	} catch(InterruptedException e) {
+	  interrupted = true;
+	}
+      }
+      queue.addLast(task);
+      startThreads();
+    }
+    if(interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+     Wait at most <code>timeout</code> milliseconds, or without limit
+     if zero, until no task is queued or running. Returns
+     <code>true</code> if the executor is idle.
+
+     @throws InterruptedException if interrupted while waiting */
+  public boolean awaitIdle(long timeout) throws InterruptedException {
+    long end = System.currentTimeMillis() + timeout;
+    synchronized(queue) {
+      while(!queue.isEmpty() || busy > 0) {
+	if(timeout == 0) {
+	  queue.wait();
+	} else {
+	  long wait = end - System.currentTimeMillis();
+	  if(wait <= 0) {
+	    return false;
+	  }
+	  queue.wait(wait);
+	}
+      }
+    }
+    return true;
+  }
+
+  // guarded by queue
+  private void startThreads() {
+    int idle = threads - busy;
+    int wanted = Math.min(maxThreads, busy + queue.size());
+    for(int i = threads; i < wanted && idle < queue.size(); i++) {
+      Thread thread = new Thread(new Worker(), name + "-" + (++sequence));
+      thread.setDaemon(true);
+      thread.start();
+      threads++;
+      idle++;
+    }
+  }
+
+  private static void run(Runnable task) {
+    try {
+      task.run();
+    } catch(RuntimeException e) {
+      LogLog.error("Background task failed.", e);
+    }
+  }
+
+  private class Worker implements Runnable {
+    public void run() {
+      while(true) {
+	Runnable task;
+	synchronized(queue) {
+	  if(queue.isEmpty() || threads > maxThreads) {
+	    threads--;
+	    queue.notifyAll();
+	    return;
+	  }
+	  task = (Runnable) queue.removeFirst();
+	  busy++;
+	  // room for a blocked caller
+	  queue.notifyAll();
+	}
+	try {
+	  BackgroundExecutor.run(task);
+	} finally {
+	  synchronized(queue) {
+	    busy--;
+	    queue.notifyAll();
+	  }
+	}
+      }
+    }
+  }
+}
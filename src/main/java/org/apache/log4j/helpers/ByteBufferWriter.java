@@ -0,0 +1,329 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+   <code>ByteBufferWriter</code> encodes characters straight into a
+   byte buffer, which subclasses empty or replace when it is full.
+
+   <p>US-ASCII, ISO-8859-1 and UTF-8 are encoded by this class a
+   chunk of characters at a time, other encodings go through a {@link
+   CharsetEncoder}. Characters which cannot be encoded are replaced
+   by a question mark, like {@link java.io.OutputStreamWriter} does.
+
+   <p>This class is not thread safe, writes are expected to be
+   serialized by the appender.
+
+   @since 1.2.18 */
+public abstract class ByteBufferWriter extends Writer {
+
+  private static final int ASCII = 0;
+  private static final int LATIN1 = 1;
+  private static final int UTF8 = 2;
+  private static final int OTHER = 3;
+
+  // number of characters encoded at a time by the fast paths
+  private static final int CHUNK = 1024;
+
+  /**
+     The smallest room {@link #drain} must leave in the buffer.  */
+  protected static final int MIN_BUFFER_SIZE = CHUNK * 3 + 4;
+
+  /**
+     The buffer the characters are encoded to, null once the writer
+     is closed.  */
+  protected ByteBuffer buffer;
+
+  private final int mode;
+  private final CharsetEncoder encoder;
+
+  // fast path output, at most 3 bytes per character
+  private final byte[] bytes = new byte[MIN_BUFFER_SIZE];
+
+  // input of the encoder, or of the fast path when a string is written
+  private final char[] chars = new char[CHUNK];
+
+  // high surrogate of a pair split between two writes
+  private char highSurrogate = 0;
+
+  /**
+     Create a writer for an encoding. The subclass sets the buffer.
+
+     @param encoding name of the encoding, null for the platform
+     default.  */
+  protected
+  ByteBufferWriter(String encoding) {
+    Charset charset = null;
+    if(encoding != null) {
+      try {
+	charset = Charset.forName(encoding);
+      } catch(RuntimeException e) {
+	LogLog.warn("Unsupported encoding ["+encoding+"], using the default one.");
+      }
+    }
+    if(charset == null) {
+      charset = getDefaultCharset();
+    }
+    String name = charset.name();
+    if("US-ASCII".equals(name)) {
+      mode = ASCII;
+      encoder = null;
+    } else if("ISO-8859-1".equals(name)) {
+      mode = LATIN1;
+      encoder = null;
+    } else if("UTF-8".equals(name)) {
+      mode = UTF8;
+      encoder = null;
+    } else {
+      mode = OTHER;
+      encoder = charset.newEncoder();
+      encoder.onMalformedInput(CodingErrorAction.REPLACE);
+      encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+  }
+
+  /**
+     Make room in the buffer, at least {@link #MIN_BUFFER_SIZE} bytes.  */
+  protected
+  abstract
+  void drain() throws IOException;
+
+  private
+  static
+  Charset getDefaultCharset() {
+    String name = OptionConverter.getSystemProperty("file.encoding", null);
+    if(name != null) {
+      try {
+	return Charset.forName(name);
+      } catch(RuntimeException e) {
+      }
+    }
+    return Charset.forName("UTF-8");
+  }
+
+  public
+  void write(int c) throws IOException {
+    chars[0] = (char) c;
+    write(chars, 0, 1);
+  }
+
+  public
+  void write(String str, int off, int len) throws IOException {
+    while(len > 0) {
+      int n = Math.min(len, chars.length);
+      str.getChars(off, off + n, chars, 0);
+      write(chars, 0, n);
+      off += n;
+      len -= n;
+    }
+  }
+
+  public
+  void write(char[] cbuf, int off, int len) throws IOException {
+    if(buffer == null) {
+      throw new IOException("Writer is closed.");
+    }
+    if(mode == OTHER) {
+      encode(cbuf, off, len);
+      return;
+    }
+    while(len > 0) {
+      int n = Math.min(len, CHUNK);
+      int count;
+      if(mode == UTF8) {
+	count = encodeUTF8(cbuf, off, n);
+      } else {
+	count = encodeSingleByte(cbuf, off, n, (mode == ASCII) ? 0x7f : 0xff);
+      }
+      if(buffer.remaining() < count) {
+	drain();
+      }
+      buffer.put(bytes, 0, count);
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+     Encode characters to <code>bytes</code> with a single byte per
+     character.
+
+     @return the number of bytes.  */
+  private
+  int encodeSingleByte(char[] cbuf, int off, int len, int max) {
+    int count = 0;
+    if(highSurrogate != 0) {
+      // the pair cannot be encoded, and is replaced by a single byte
+      highSurrogate = 0;
+      if(isLowSurrogate(cbuf[off])) {
+	off++;
+	len--;
+      }
+      bytes[count++] = '?';
+    }
+    for(int i = off; i < off + len; i++) {
+      char c = cbuf[i];
+      if(c <= max) {
+	bytes[count++] = (byte) c;
+      } else if(isHighSurrogate(c)) {
+	if(i + 1 < off + len) {
+	  if(isLowSurrogate(cbuf[i + 1])) {
+	    i++;
+	  }
+	  bytes[count++] = '?';
+	} else {
+	  highSurrogate = c;
+	}
+      } else {
+	bytes[count++] = '?';
+      }
+    }
+    return count;
+  }
+
+  /**
+     Encode characters to <code>bytes</code> in UTF-8.
+
+     @return the number of bytes.  */
+  private
+  int encodeUTF8(char[] cbuf, int off, int len) {
+    int count = 0;
+    int end = off + len;
+    int i = off;
+    if(highSurrogate != 0) {
+      char high = highSurrogate;
+      highSurrogate = 0;
+      if(isLowSurrogate(cbuf[i])) {
+	count = encodePair(high, cbuf[i++], count);
+      } else {
+	bytes[count++] = '?';
+      }
+    }
+    while(i < end) {
+      char c = cbuf[i++];
+      if(c < 0x80) {
+	bytes[count++] = (byte) c;
+      } else if(c < 0x800) {
+	bytes[count++] = (byte) (0xc0 | (c >> 6));
+	bytes[count++] = (byte) (0x80 | (c & 0x3f));
+      } else if(isHighSurrogate(c)) {
+	if(i == end) {
+	  highSurrogate = c;
+	} else if(isLowSurrogate(cbuf[i])) {
+	  count = encodePair(c, cbuf[i++], count);
+	} else {
+	  bytes[count++] = '?';
+	}
+      } else if(isLowSurrogate(c)) {
+	bytes[count++] = '?';
+      } else {
+	bytes[count++] = (byte) (0xe0 | (c >> 12));
+	bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+	bytes[count++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return count;
+  }
+
+  private
+  int encodePair(char high, char low, int count) {
+    int cp = ((high - 0xd800) << 10) + (low - 0xdc00) + 0x10000;
+    bytes[count++] = (byte) (0xf0 | (cp >> 18));
+    bytes[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+    bytes[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+    bytes[count++] = (byte) (0x80 | (cp & 0x3f));
+    return count;
+  }
+
+  private
+  static
+  boolean isHighSurrogate(char c) {
+    return c >= 0xd800 && c <= 0xdbff;
+  }
+
+  private
+  static
+  boolean isLowSurrogate(char c) {
+    return c >= 0xdc00 && c <= 0xdfff;
+  }
+
+  /**
+     Encode characters with the encoder, keeping a trailing high
+     surrogate for the next write.  */
+  private
+  void encode(char[] cbuf, int off, int len) throws IOException {
+    CharBuffer in;
+    if(highSurrogate != 0) {
+      char[] joined = new char[len + 1];
+      joined[0] = highSurrogate;
+      System.arraycopy(cbuf, off, joined, 1, len);
+      highSurrogate = 0;
+      in = CharBuffer.wrap(joined);
+    } else {
+      in = CharBuffer.wrap(cbuf, off, len);
+    }
+    while(true) {
+      CoderResult result = encoder.encode(in, buffer, false);
+      if(result.isOverflow()) {
+	drain();
+      } else {
+	break;
+      }
+    }
+    if(in.remaining() == 1) {
+      highSurrogate = in.get();
+    }
+  }
+
+  /**
+     Encode what is left of the characters written, a high surrogate
+     left alone by the last write being replaced by a question mark.
+     Called before the writer is closed.  */
+  protected
+  void finish() throws IOException {
+    if(highSurrogate != 0) {
+      highSurrogate = 0;
+      if(mode == OTHER) {
+	write("?");
+      } else {
+	if(!buffer.hasRemaining()) {
+	  drain();
+	}
+	buffer.put((byte) '?');
+      }
+    }
+    if(mode == OTHER) {
+      CharBuffer empty = CharBuffer.allocate(0);
+      while(encoder.encode(empty, buffer, true).isOverflow()) {
+	drain();
+      }
+      while(encoder.flush(buffer).isOverflow()) {
+	drain();
+      }
+    }
+  }
+}
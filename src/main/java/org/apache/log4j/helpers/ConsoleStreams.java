@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+   Selects the stream written by the console appenders, {@link
+   org.apache.log4j.ConsoleAppender} and {@link
+   org.apache.log4j.concurrent.ConcurrentConsoleAppender}.
+
+   @since 1.2.18 */
+public final class ConsoleStreams {
+
+  public static final String SYSTEM_OUT = "System.out";
+  public static final String SYSTEM_ERR = "System.err";
+
+  private ConsoleStreams() {
+  }
+
+  /**
+     Returns the target named by <code>value</code>, ignoring case
+     and surrounding spaces.
+
+     @return {@link #SYSTEM_OUT}, {@link #SYSTEM_ERR} or
+     <code>null</code> if the value names neither. */
+  public
+  static
+  String getTarget(String value) {
+    String v = value.trim();
+
+    if (SYSTEM_OUT.equalsIgnoreCase(v)) {
+      return SYSTEM_OUT;
+    } else if (SYSTEM_ERR.equalsIgnoreCase(v)) {
+      return SYSTEM_ERR;
+    }
+    return null;
+  }
+
+  /**
+     Returns the stream of a target. If <code>follow</code> is true,
+     the returned stream writes to the <code>System.out</code> or
+     <code>System.err</code> in force when it is written, and closing
+     it does nothing.
+
+     @param target {@link #SYSTEM_OUT} or {@link #SYSTEM_ERR}.
+     @param follow whether reassignments of the stream are honored. */
+  public
+  static
+  OutputStream getStream(String target, boolean follow) {
+    boolean err = SYSTEM_ERR.equals(target);
+    if (follow) {
+      return new SystemStream(err);
+    }
+    return err ? System.err : System.out;
+  }
+
+    /**
+     * An implementation of OutputStream that redirects to the
+     * current System.out or System.err.
+     */
+    private static class SystemStream extends OutputStream {
+        private final boolean err;
+
+        SystemStream(final boolean err) {
+            this.err = err;
+        }
+
+        private PrintStream stream() {
+            return err ? System.err : System.out;
+        }
+
+        public void close() {
+        }
+
+        public void flush() {
+            stream().flush();
+        }
+
+        public void write(final byte[] b) throws IOException {
+            stream().write(b);
+        }
+
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+            stream().write(b, off, len);
+        }
+
+        public void write(final int b) throws IOException {
+            stream().write(b);
+        }
+    }
+}
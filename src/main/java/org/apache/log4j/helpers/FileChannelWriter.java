@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+
+/**
+   <code>FileChannelWriter</code> encodes characters straight into a
+   direct byte buffer and writes the buffer to a file channel when it
+   is full or flushed, in place of an {@link
+   java.io.OutputStreamWriter} over a {@link FileOutputStream}
+   possibly wrapped in a {@link java.io.BufferedWriter}. See {@link
+   ByteBufferWriter} for the encodings.
+
+   <p>A file channel is closed when a thread writing to it is
+   interrupted. This writer clears the interrupt status of the calling
+   thread while writing and restores it afterwards, and reopens the
+   file in append mode if it was closed by an interrupt anyway.
+
+   @since 1.2.18 */
+public class FileChannelWriter extends ByteBufferWriter {
+
+  private final String fileName;
+  private FileOutputStream stream;
+  private FileChannel channel;
+
+  /**
+     Create a writer over an open file.
+
+     @param stream stream opened on the file, closed with the writer.
+     @param fileName name of the file, used to reopen it.
+     @param encoding name of the encoding, null for the platform
+     default.
+     @param bufferSize size of the byte buffer.  */
+  public
+  FileChannelWriter(FileOutputStream stream, String fileName,
+		    String encoding, int bufferSize) {
+    super(encoding);
+    this.stream = stream;
+    this.channel = stream.getChannel();
+    this.fileName = fileName;
+    this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, MIN_BUFFER_SIZE));
+  }
+
+  /**
+     Write the content of the buffer to the channel.  */
+  protected
+  void drain() throws IOException {
+    buffer.flip();
+    boolean interrupted = Thread.interrupted();
+    try {
+      while(buffer.hasRemaining()) {
+	try {
+	  channel.write(buffer);
+	} catch(ClosedByInterruptException e) {
+	  // interrupted while writing, the rest of the buffer goes to
+	  // the reopened file
+	  interrupted |= Thread.interrupted();
+	  reopen();
+	}
+      }
+    } finally {
+      buffer.clear();
+      if(interrupted) {
+	Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private
+  void reopen() throws IOException {
+    LogLog.debug("Reopening ["+fileName+"] closed by an interrupt.");
+    stream = new FileOutputStream(fileName, true);
+    channel = stream.getChannel();
+  }
+
+  /**
+     Write the buffered bytes to the file.  */
+  public
+  void flush() throws IOException {
+    if(buffer != null && buffer.position() > 0) {
+      drain();
+    }
+  }
+
+  /**
+     Flush the buffered bytes and close the file.  */
+  public
+  void close() throws IOException {
+    if(buffer == null) {
+      return;
+    }
+    try {
+      finish();
+      flush();
+    } finally {
+      buffer = null;
+      channel = null;
+      stream.close();
+    }
+  }
+}
@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+   <code>FileRoller</code> moves the renaming of rolled over log files
+   to a background thread.
+
+   <p>The logging thread only renames the active file to a temporary
+   name with {@link #detach} and reopens a fresh file, the backups are
+   then shifted or renamed to their final names by a single thread,
+   in the order the rollovers occurred. Their final names are thus
+   the same as when renaming on the logging thread.
+
+   <p>Rolled over files may also be compressed, in the gzip or zlib
+   deflate format, by a separate bounded pool of threads. A file is
+   compressed under its temporary name and only renamed to its final
+   name, which has the <code>.gz</code> or <code>.deflate</code>
+   suffix, once complete. Should the compression fail, the file keeps
+   its uncompressed final name.
+
+   <p>The threads are daemons, the renames still queued when the
+   process exits leave files with a temporary name behind. They are
+   found by {@link #recover} when the appender starts again.
+
+   @since 1.2.18 */
+public final class FileRoller {
+
+  /**
+     Compression in the gzip format. */
+  public static final String GZIP = "gzip";
+
+  /**
+     Compression in the zlib format of {@link DeflaterOutputStream}. */
+  public static final String DEFLATE = "deflate";
+
+  private static final String DETACHED = ".rolling";
+
+  private static final int CAPACITY = 16;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  // every name a backup may have, so that backups keep their order
+  // when compression is switched on or off
+  private static final String[] SUFFIXES = { "", ".gz", ".deflate" };
+
+  private final String name;
+
+  private final BackgroundExecutor executor;
+
+  private int sequence = 0;
+
+  private String compression;
+
+  private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+  private BackgroundExecutor compressor;
+
+  // absolute paths of the detached files queued by any roller, so
+  // that recovering does not queue them a second time
+  private static final Set queued = new HashSet();
+
+  public FileRoller(String name) {
+    this.name = "FileRoller-" + name;
+    executor = new BackgroundExecutor(this.name, 1, CAPACITY);
+  }
+
+  /**
+     Returns {@link #GZIP} or {@link #DEFLATE} for the corresponding
+     option value, ignoring case, and <code>null</code> for "none" or
+     <code>null</code>. Any other value is reported and ignored. */
+  public static String toCompression(String value) {
+    if(value == null || "none".equalsIgnoreCase(value.trim())) {
+      return null;
+    }
+    value = value.trim();
+    if(GZIP.equalsIgnoreCase(value)) {
+      return GZIP;
+    }
+    if(DEFLATE.equalsIgnoreCase(value)) {
+      return DEFLATE;
+    }
+    LogLog.warn("Unknown compression [" + value + "], expected gzip, deflate or none.");
+    return null;
+  }
+
+  /**
+     Compress the files detached from now on with
+     <code>compression</code>, or not at all if <code>null</code>.
+     The <code>level</code> goes from 0 to 9 as for {@link Deflater},
+     at most <code>threads</code> files are compressed at the same
+     time. */
+  public synchronized void setCompression(String compression, int level,
+					  int threads) {
+    this.compression = compression;
+    this.compressionLevel = level;
+    if(compression != null) {
+      if(compressor == null) {
+	compressor = new BackgroundExecutor(name + "-Compressor", threads, CAPACITY);
+      } else {
+	compressor.setMaxThreads(threads);
+      }
+    }
+  }
+
+  /**
+     Rename <code>fileName</code> to a free temporary name in the same
+     directory. Returns the renamed file, or <code>null</code> if the
+     file could not be renamed. */
+  public synchronized File detach(String fileName) {
+    File file = new File(fileName);
+    File detached;
+    do {
+      detached = new File(fileName + DETACHED + (++sequence));
+    } while(detached.exists());
+
+    if(!file.renameTo(detached)) {
+      return null;
+    }
+    LogLog.debug("Renaming file " + file + " to " + detached);
+    synchronized(queued) {
+      queued.add(detached.getAbsoluteFile().getPath());
+    }
+    return detached;
+  }
+
+  /**
+     Find the files detached from <code>fileName</code> whose renaming
+     never completed, typically because the process exited first, and
+     return them in the order they were rolled over, to be queued
+     again with {@link #shift} or {@link #move}. A compressed file
+     whose uncompressed version still exists is incomplete and is
+     deleted. Files queued by a running roller are left alone. */
+  public File[] recover(String fileName) {
+    File file = new File(fileName).getAbsoluteFile();
+    File dir = file.getParentFile();
+    String[] names = (dir == null) ? null : dir.list();
+    if(names == null) {
+      return new File[0];
+    }
+    String prefix = file.getName() + DETACHED;
+    Vector found = new Vector();
+    synchronized(queued) {
+      for(int i = 0; i < names.length; i++) {
+	if(!names[i].startsWith(prefix)) {
+	  continue;
+	}
+	String base = names[i];
+	String suffix = getSuffix(base);
+	base = base.substring(0, base.length() - suffix.length());
+	if(!isNumber(base.substring(prefix.length()))) {
+	  continue;
+	}
+	File detached = new File(dir, names[i]);
+	File uncompressed = new File(dir, base);
+	if(queued.contains(uncompressed.getPath())
+	   || queued.contains(detached.getPath())) {
+	  continue;
+	}
+	if(suffix.length() > 0 && uncompressed.exists()) {
+	  LogLog.debug("Deleting incomplete file " + detached);
+	  detached.delete();
+	  continue;
+	}
+	queued.add(detached.getPath());
+	found.addElement(detached);
+      }
+    }
+
+    File[] recovered = new File[found.size()];
+    found.copyInto(recovered);
+    // the last write to a detached file is its rollover
+    Arrays.sort(recovered, new Comparator() {
+	public int compare(Object o1, Object o2) {
+	  File f1 = (File) o1;
+	  File f2 = (File) o2;
+	  long t1 = f1.lastModified();
+	  long t2 = f2.lastModified();
+	  if(t1 != t2) {
+	    return (t1 < t2) ? -1 : 1;
+	  }
+	  String n1 = f1.getName();
+	  String n2 = f2.getName();
+	  if(n1.length() != n2.length()) {
+	    return n1.length() - n2.length();
+	  }
+	  return n1.compareTo(n2);
+	}
+      });
+    if(recovered.length > 0) {
+      LogLog.debug("Recovered " + recovered.length + " rolled over files of "
+		   + fileName + ".");
+    }
+    return recovered;
+  }
+
+  private static boolean isNumber(String s) {
+    if(s.length() == 0) {
+      return false;
+    }
+    for(int i = 0; i < s.length(); i++) {
+      if(!Character.isDigit(s.charAt(i))) {
+	return false;
+      }
+    }
+    return true;
+  }
+
+  // the compression suffix of a file name, empty if not compressed
+  private static String getSuffix(String fileName) {
+    for(int i = 1; i < SUFFIXES.length; i++) {
+      if(fileName.endsWith(SUFFIXES[i])) {
+	return SUFFIXES[i];
+      }
+    }
+    return "";
+  }
+
+  private static void release(File detached) {
+    synchronized(queued) {
+      queued.remove(detached.getAbsoluteFile().getPath());
+    }
+  }
+
+  /**
+     Delete the backup of index <code>maxBackupIndex</code> and rename
+     the backups <code>fileName.i</code>, compressed or not, to
+     <code>fileName.(i+1)</code> with the same suffix, freeing index 1.
+     The rolling file appenders call it whether they roll over in the
+     background or not.
+
+     @return false if a backup could not be deleted or renamed, the
+     remaining backups are then left alone. */
+  public static boolean shiftBackups(String fileName, int maxBackupIndex) {
+    boolean renameSucceeded = true;
+    for(int s = 0; s < SUFFIXES.length && renameSucceeded; s++) {
+      File file = new File(fileName + '.' + maxBackupIndex + SUFFIXES[s]);
+      if(file.exists()) {
+	renameSucceeded = file.delete();
+      }
+    }
+
+    for(int i = maxBackupIndex - 1; i >= 1 && renameSucceeded; i--) {
+      for(int s = 0; s < SUFFIXES.length && renameSucceeded; s++) {
+	File file = new File(fileName + "." + i + SUFFIXES[s]);
+	if(file.exists()) {
+	  File target = new File(fileName + '.' + (i + 1) + SUFFIXES[s]);
+	  LogLog.debug("Renaming file " + file + " to " + target);
+	  renameSucceeded = file.renameTo(target);
+	}
+      }
+    }
+    return renameSucceeded;
+  }
+
+  /**
+     Queue the renaming of <code>detached</code> to
+     <code>fileName.1</code>, after renaming the backups
+     {<code>fileName.1</code>, ..., <code>fileName.maxBackupIndex-1</code>}
+     to {<code>fileName.2</code>, ...,
+     <code>fileName.maxBackupIndex</code>} and deleting the oldest. */
+  public void shift(final File detached, final String fileName,
+		    final int maxBackupIndex) {
+    final Compression compressed = compress(detached);
+    executor.execute(new Runnable() {
+	public void run() {
+	  try {
+	    shift(detached, compressed, fileName, maxBackupIndex);
+	  } finally {
+	    release(detached);
+	  }
+	}
+      });
+  }
+
+  private static void shift(File detached, Compression compressed,
+			    String fileName, int maxBackupIndex) {
+    boolean renameSucceeded = shiftBackups(fileName, maxBackupIndex);
+
+    File rolled = detached;
+    String suffix = getSuffix(detached.getName());
+    if(compressed != null) {
+      rolled = compressed.await();
+      suffix = compressed.getSuffix();
+    }
+    if(renameSucceeded) {
+      move(rolled, new File(fileName + "." + 1 + suffix));
+    } else {
+      LogLog.error("Failed to shift the backups of [" + fileName
+		   + "], the rolled over file is left in [" + rolled + "].");
+    }
+  }
+
+  /**
+     Queue the renaming of <code>detached</code> to
+     <code>target</code>, replacing any file of that name. */
+  public void move(final File detached, final String target) {
+    final Compression compressed = compress(detached);
+    executor.execute(new Runnable() {
+	public void run() {
+	  try {
+	    if(compressed == null) {
+	      move(detached, new File(target + getSuffix(detached.getName())));
+	    } else {
+	      move(compressed.await(), new File(target + compressed.getSuffix()));
+	    }
+	  } finally {
+	    release(detached);
+	  }
+	}
+      });
+  }
+
+  /**
+     Queue the deletion of a recovered file which is not to be
+     kept. */
+  public void delete(final File detached) {
+    executor.execute(new Runnable() {
+	public void run() {
+	  try {
+	    if(!detached.delete()) {
+	      LogLog.error("Failed to delete [" + detached + "].");
+	    }
+	  } finally {
+	    release(detached);
+	  }
+	}
+      });
+  }
+
+  /**
+     Wait until every queued rename and compression is done. */
+  public void await() {
+    try {
+      executor.awaitIdle(0);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Start compressing the detached file, returns null if compression
+  // is off or the file is already compressed.
+  private synchronized Compression compress(File detached) {
+    if(compression == null || getSuffix(detached.getName()).length() > 0) {
+      return null;
+    }
+    Compression compressed =
+      new Compression(detached, compression, compressionLevel);
+    compressor.execute(compressed);
+    return compressed;
+  }
+
+  private static void move(File detached, File target) {
+    if(target.exists()) {
+      target.delete();
+    }
+    if(detached.renameTo(target)) {
+      LogLog.debug("Renaming file " + detached + " to " + target);
+    } else {
+      LogLog.error("Failed to rename [" + detached + "] to [" + target + "].");
+    }
+  }
+
+  /**
+     Compresses a detached file next to it. The compressed file
+     replaces the detached one once complete. */
+  private static final class Compression implements Runnable {
+
+    private final File source;
+    private final String format;
+    private final int level;
+
+    // guarded by this
+    private boolean done = false;
+    private File result;
+    private String suffix = "";
+
+    Compression(File source, String format, int level) {
+      this.source = source;
+      this.format = format;
+      this.level = level;
+    }
+
+    public void run() {
+      String compressedSuffix = GZIP.equals(format) ? ".gz" : ".deflate";
+      File target = new File(source.getPath() + compressedSuffix);
+      boolean compressed = false;
+      try {
+	compress(target);
+	compressed = true;
+      } catch(IOException e) {
+	LogLog.error("Failed to compress [" + source + "].", e);
+      } finally {
+	if(compressed) {
+	  // keeps the rollover time for recovery
+	  target.setLastModified(source.lastModified());
+	  if(!source.delete()) {
+	    LogLog.warn("Could not delete [" + source + "] once compressed.");
+	  }
+	} else {
+	  target.delete();
+	}
+	synchronized(this) {
+	  result = compressed ? target : source;
+	  suffix = compressed ? compressedSuffix : "";
+	  done = true;
+	  notifyAll();
+	}
+      }
+    }
+
+    private void compress(File target) throws IOException {
+      InputStream in = new FileInputStream(source);
+      try {
+	OutputStream out = new FileOutputStream(target);
+	Deflater deflater = null;
+	try {
+	  if(GZIP.equals(format)) {
+	    out = new GZIPOutputStream(out, BUFFER_SIZE) {
+		{
+		  def.setLevel(level);
+		}
+	      };
+	  } else {
+	    deflater = new Deflater(level);
+	    out = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+	  }
+	  byte[] buf = new byte[BUFFER_SIZE];
+	  int count;
+	  while((count = in.read(buf)) != -1) {
+	    out.write(buf, 0, count);
+	  }
+	} finally {
+	  out.close();
+	  if(deflater != null) {
+	    deflater.end();
+	  }
+	}
+      } finally {
+	in.close();
+      }
+    }
+
+    /**
+       Wait until done and return the compressed file, or the source
+       file if it could not be compressed. */
+    synchronized File await() {
+      boolean interrupted = false;
+      while(!done) {
+	try {
+	  wait();
+	} catch(InterruptedException e) {
+	  interrupted = true;
+	}
+      }
+      if(interrupted) {
+	Thread.currentThread().interrupt();
+      }
+      return result;
+    }
+
+    synchronized String getSuffix() {
+      return suffix;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+/**
+   <code>Flusher</code> runs a single daemon thread on behalf of all
+   the appenders which flush their output periodically, so that
+   configuring a flush interval on many appenders does not cost a
+   thread each.
+
+   <p>Each registered {@link Client} is asked in turn whether its
+   pending output is due and answers how long the thread may sleep
+   before asking again. The thread is started by the first
+   registration and stops once the last client is removed.
+
+   <p>Clients are called without holding any lock of the flusher, they
+   are thus free to synchronize on themselves, even while another
+   thread holding their lock is registering them.
+
+   @since 1.2.18 */
+public final class Flusher implements Runnable {
+
+  /**
+     A periodically flushed output. */
+  public interface Client {
+
+    /**
+       Flush the pending output if it is due at time <code>now</code>
+       and return the number of milliseconds until the next flush may
+       become due. */
+    long flushIfDue(long now);
+  }
+
+  // shortest sleep, so that a misbehaving client cannot make the
+  // thread spin
+  private static final long MIN_WAIT = 10;
+
+  private static final Object lock = new Object();
+
+  // copy on write, guarded by lock
+  private static Client[] clients = new Client[0];
+
+  private static Thread thread;
+
+  private Flusher() {
+  }
+
+  /**
+     Register <code>client</code>, starting the flushing thread if
+     needed. Adding a registered client has no effect. */
+  public static void add(Client client) {
+    synchronized(lock) {
+      for(int i = 0; i < clients.length; i++) {
+	if(clients[i] == client) {
+	  return;
+	}
+      }
+      Client[] larger = new Client[clients.length + 1];
+      System.arraycopy(clients, 0, larger, 0, clients.length);
+      larger[clients.length] = client;
+      clients = larger;
+      if(thread == null) {
+	thread = new Thread(new Flusher(), "Log4j-Flusher");
+	thread.setDaemon(true);
+	thread.start();
+      } else {
+	// the new client may need an earlier wake up
+	lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+     Unregister <code>client</code>. The flushing thread stops once no
+     client is left. */
+  public static void remove(Client client) {
+    synchronized(lock) {
+      for(int i = 0; i < clients.length; i++) {
+	if(clients[i] == client) {
+	  Client[] smaller = new Client[clients.length - 1];
+	  System.arraycopy(clients, 0, smaller, 0, i);
+	  System.arraycopy(clients, i + 1, smaller, i, smaller.length - i);
+	  clients = smaller;
+	  lock.notifyAll();
+	  return;
+	}
+      }
+    }
+  }
+
+  /**
+     Returns the number of registered clients. */
+  public static int getClientCount() {
+    synchronized(lock) {
+      return clients.length;
+    }
+  }
+
+  public void run() {
+    long wait = 0;
+    while(true) {
+      Client[] current;
+      synchronized(lock) {
+	if(wait > 0 && clients.length > 0) {
+	  try {
+	    lock.wait(wait);
+	  } catch(InterruptedException e) {
+	    // nobody else owns this thread, keep flushing
+	  }
+	}
+	if(clients.length == 0) {
+	  thread = null;
+	  return;
+	}
+	current = clients;
+      }
+
+      long now = System.currentTimeMillis();
+      wait = Long.MAX_VALUE;
+      for(int i = 0; i < current.length; i++) {
+	long next;
+	try {
+	  next = current[i].flushIfDue(now);
+	} catch(RuntimeException e) {
+	  LogLog.error("Periodic flush failed.", e);
+	  continue;
+	}
+	if(next < wait) {
+	  wait = next;
+	}
+      }
+      if(wait < MIN_WAIT) {
+	wait = MIN_WAIT;
+      }
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+/**
+   <code>Histogram</code> counts values in a fixed set of buckets,
+   chosen when it is created. The counts are guarded by the monitor
+   of the histogram, which is meant to be recorded by few threads,
+   such as the dispatchers of {@link org.apache.log4j.AsyncAppender}.
+   A thread recording many values at once can hold the monitor around
+   the calls to {@link #record}.
+
+   <p>Bucket <code>i</code> counts the values greater than the bound
+   of bucket <code>i - 1</code> and at most equal to the bound of
+   bucket <code>i</code>. A last bucket counts the values above the
+   highest bound.
+
+   @since 1.2.18 */
+public final class Histogram {
+
+  private final long[] bounds;
+  private final long[] counts;
+
+  /**
+     Create a histogram with the given bucket bounds.
+
+     @param bounds upper bounds of the buckets, in increasing order.  */
+  public
+  Histogram(long[] bounds) {
+    if(bounds.length == 0) {
+      throw new IllegalArgumentException("At least one bound is required.");
+    }
+    for(int i = 1; i < bounds.length; i++) {
+      if(bounds[i] <= bounds[i - 1]) {
+	throw new IllegalArgumentException("The bounds are not in increasing order.");
+      }
+    }
+    this.bounds = (long[]) bounds.clone();
+    counts = new long[bounds.length + 1];
+  }
+
+  /**
+     Get the index of the bucket counting <code>value</code>.  */
+  private
+  int getBucket(long value) {
+    int low = 0;
+    int high = bounds.length;
+    while(low < high) {
+      int mid = (low + high) >>> 1;
+      if(bounds[mid] < value) {
+	low = mid + 1;
+      } else {
+	high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+     Count <code>value</code> in its bucket.  */
+  public
+  synchronized
+  void record(long value) {
+    counts[getBucket(value)]++;
+  }
+
+  /**
+     Get the upper bounds of the buckets, the last bucket having no
+     bound.  */
+  public
+  long[] getBounds() {
+    return (long[]) bounds.clone();
+  }
+
+  /**
+     Get the count of each bucket, one more than the number of
+     bounds.  */
+  public
+  synchronized
+  long[] getCounts() {
+    return (long[]) counts.clone();
+  }
+
+  /**
+     Get the smallest bound under which at least <code>percent</code>
+     per cent of the values fall, or -1 if no value was recorded or
+     the values fall in the last bucket.  */
+  public
+  long getPercentile(double percent) {
+    long[] counts = getCounts();
+    long total = 0;
+    for(int i = 0; i < counts.length; i++) {
+      total += counts[i];
+    }
+    if(total == 0) {
+      return -1;
+    }
+    double target = total * percent / 100;
+    long sum = 0;
+    for(int i = 0; i < bounds.length; i++) {
+      sum += counts[i];
+      if(sum >= target) {
+	return bounds[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+     Reset all the counts to zero.  */
+  public
+  synchronized
+  void reset() {
+    for(int i = 0; i < counts.length; i++) {
+      counts[i] = 0;
+    }
+  }
+
+  /**
+     Return the counts as a list of <code>&lt;=bound: count</code>
+     pairs, leaving out the empty buckets.  */
+  public
+  String toString() {
+    long[] counts = getCounts();
+    StringBuffer buf = new StringBuffer();
+    for(int i = 0; i < counts.length; i++) {
+      if(counts[i] == 0) {
+	continue;
+      }
+      if(buf.length() > 0) {
+	buf.append(", ");
+      }
+      if(i < bounds.length) {
+	buf.append("<=").append(bounds[i]);
+      } else {
+	buf.append('>').append(bounds[bounds.length - 1]);
+      }
+      buf.append(": ").append(counts[i]);
+    }
+    return buf.toString();
+  }
+}
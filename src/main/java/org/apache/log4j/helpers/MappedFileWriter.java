@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+   <code>MappedFileWriter</code> appends characters to a file through
+   a region of the file mapped in memory, so that writing an event
+   costs memory stores instead of a system call. When the region is
+   full, the next region is mapped from the end of the written bytes.
+   See {@link ByteBufferWriter} for the encodings.
+
+   <p>Mapping a region extends the file to the end of the region. The
+   file is truncated to the bytes actually written when the writer is
+   closed. Until then, and forever if the process dies, the file ends
+   with the zeros of the unused part of the region.
+
+   <p>The written bytes are in the page cache at once, where readers
+   of the file see them, and are written to the disk by the operating
+   system, {@link #flush} does nothing. The mapped regions are
+   released when they are garbage collected.
+
+   @since 1.2.18 */
+public class MappedFileWriter extends ByteBufferWriter {
+
+  private final String fileName;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final int regionSize;
+
+  // offset in the file of the start of the current region
+  private long regionStart;
+
+  /**
+     Open a file to append to it.
+
+     @param fileName name of the file, created if it does not exist.
+     @param encoding name of the encoding, null for the platform
+     default.
+     @param regionSize size of the mapped regions.  */
+  public
+  MappedFileWriter(String fileName, String encoding, int regionSize)
+                                                        throws IOException {
+    super(encoding);
+    this.fileName = fileName;
+    this.regionSize = Math.max(regionSize, MIN_BUFFER_SIZE);
+    this.raf = new RandomAccessFile(fileName, "rw");
+    this.channel = raf.getChannel();
+    try {
+      map(raf.length());
+    } catch(IOException e) {
+      raf.close();
+      throw e;
+    }
+  }
+
+  /**
+     Map the region starting at <code>position</code>. A file channel
+     is closed when the calling thread is interrupted, so the
+     interrupt status is cleared while mapping and restored
+     afterwards.  */
+  private
+  void map(long position) throws IOException {
+    boolean interrupted = Thread.interrupted();
+    try {
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+      regionStart = position;
+    } finally {
+      if(interrupted) {
+	Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+     Map the region following the written bytes.  */
+  protected
+  void drain() throws IOException {
+    map(regionStart + buffer.position());
+  }
+
+  /**
+     Get the number of bytes in the file, not counting the unused
+     part of the current region.  */
+  public
+  long getLength() {
+    return (buffer == null) ? 0 : regionStart + buffer.position();
+  }
+
+  /**
+     Does nothing, the written bytes are already in the page cache.  */
+  public
+  void flush() {
+  }
+
+  /**
+     Truncate the file to the written bytes and close it.  */
+  public
+  void close() throws IOException {
+    if(buffer == null) {
+      return;
+    }
+    try {
+      finish();
+      long length = regionStart + buffer.position();
+      buffer = null;
+      boolean interrupted = Thread.interrupted();
+      try {
+	channel.truncate(length);
+      } catch(IOException e) {
+	// some platforms refuse to truncate a file still mapped
+	LogLog.warn("Could not truncate ["+fileName+"] to "+length+" bytes.", e);
+      } finally {
+	if(interrupted) {
+	  Thread.currentThread().interrupt();
+	}
+      }
+    } finally {
+      raf.close();
+    }
+  }
+}
@@ -0,0 +1,521 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   <code>RingBuffer</code> is a bounded first-in-first-out buffer of
+   logging events with any number of producers and a single consumer,
+   used by the {@link org.apache.log4j.AsyncAppender}.
+
+   <p>The slots are allocated once, their number is the smallest power
+   of two holding the requested capacity. Producers claim a sequence
+   number while holding a lock private to the producers, then fill
+   the slot designated by the sequence and publish it by assigning
+   the volatile sequence of the slot. The consumer never takes that
+   lock, it takes all the published events in a single pass and
+   releases their slots by assigning its own volatile sequence.
+
+   <p>Producers and the consumer only synchronize on a common monitor
+   when one of them has to wait, that is when the buffer is full or
+   empty respectively, and the wait strategy is {@link #BLOCKING}.
+   The other wait strategies poll the buffer instead, trading
+   processor time for a shorter handoff, see {@link
+   #setWaitStrategy}.
+
+   <p>A buffer can be sealed, after which producers are turned away
+   and the consumer is told once the remaining events are drained. A
+   sealed buffer may name the buffer replacing it, so that a consumer
+   can follow a chain of replacements in order.
+
+   <p>A buffer may have a companion buffer, consumed by the same
+   thread, for instance to hand some events over ahead of the others.
+   The two buffers share their monitor so the consumer can wait for
+   either.
+
+   @since 1.2.18 */
+public final class RingBuffer {
+
+  /**
+     Returned by {@link #offer} and {@link #put} when the event was
+     added to the buffer.  */
+  public static final int PUBLISHED = 0;
+
+  /**
+     Returned by {@link #offer} when the buffer is full.  */
+  public static final int FULL = 1;
+
+  /**
+     Returned by {@link #offer} and {@link #put} when the buffer is
+     sealed.  */
+  public static final int SEALED = 2;
+
+  /**
+     Waiting threads wait on a monitor until they are notified. This
+     is the default strategy.  */
+  public static final int BLOCKING = 0;
+
+  /**
+     The waiting consumer spins, then yields, then sleeps for a
+     millisecond at a time. Waiting producers sleep for a millisecond
+     at a time.  */
+  public static final int SLEEPING = 1;
+
+  /**
+     Waiting threads yield the processor between attempts.  */
+  public static final int YIELDING = 2;
+
+  /**
+     Waiting threads retry without pause, keeping a processor busy.  */
+  public static final int BUSY_SPIN = 3;
+
+  private static final String[] WAIT_STRATEGY_NAMES =
+    { "Blocking", "Sleeping", "Yielding", "BusySpin" };
+
+  // Number of attempts after which a sleeping consumer starts to
+  // yield, then to sleep.
+  private static final int SPIN_TRIES = 100;
+  private static final int YIELD_TRIES = 200;
+
+  private static final class Slot {
+    // sequence of the event held by this slot, published last
+    volatile long sequence = -1;
+    LoggingEvent event;
+  }
+
+  private final Slot[] slots;
+  private final int mask;
+  private final int capacity;
+
+  // Serializes the producers when claiming sequences.
+  private final Object claimLock = new Object();
+
+  // Next sequence to claim. Guarded by claimLock.
+  private long claimed = 0;
+
+  // Guarded by claimLock.
+  private boolean sealed = false;
+
+  // The buffer replacing this one once sealed, if any.
+  private volatile RingBuffer successor;
+
+  // Next sequence to consume, only written by the consumer.
+  private volatile long consumed = 0;
+
+  // Monitor on which producers and the consumer wait, shared with
+  // the companion buffer.
+  private static final class Signal {
+    volatile boolean consumerWaiting = false;
+
+    // Number of producers waiting for space. Modified while holding
+    // the signal.
+    volatile int producersWaiting = 0;
+  }
+
+  private final Signal signal;
+
+  // Buffer consumed along with this one, if any.
+  private volatile RingBuffer companion;
+
+  private volatile int waitStrategy = BLOCKING;
+
+  /**
+     Create a buffer holding at most <code>capacity</code> events.
+   */
+  public
+  RingBuffer(int capacity) {
+    this(capacity, null);
+  }
+
+  /**
+     Create a buffer holding at most <code>capacity</code> events,
+     consumed by the thread consuming <code>primary</code>. The new
+     buffer becomes the companion of <code>primary</code>, whose
+     {@link #take(LoggingEvent[], long) timed take} returns as soon as
+     the companion has events.
+   */
+  public
+  RingBuffer(int capacity, RingBuffer primary) {
+    if(capacity < 1) {
+      throw new IllegalArgumentException("The capacity argument ("+capacity+
+			    ") is not a positive integer.");
+    }
+    int size = 1;
+    while(size < capacity) {
+      size <<= 1;
+    }
+    this.capacity = capacity;
+    this.mask = size - 1;
+    this.slots = new Slot[size];
+    for(int i = 0; i < size; i++) {
+      slots[i] = new Slot();
+    }
+    if(primary == null) {
+      this.signal = new Signal();
+    } else {
+      this.signal = primary.signal;
+      this.waitStrategy = primary.waitStrategy;
+      primary.companion = this;
+      // wake up the consumer so that it notices the companion
+      primary.signalAll();
+    }
+  }
+
+  /**
+     Set the way threads wait for this buffer, one of {@link
+     #BLOCKING}, {@link #SLEEPING}, {@link #YIELDING} or {@link
+     #BUSY_SPIN}. Can be changed while the buffer is in use.  */
+  public
+  void setWaitStrategy(int strategy) {
+    if(strategy < BLOCKING || strategy > BUSY_SPIN) {
+      throw new IllegalArgumentException("Unknown wait strategy ("+strategy+").");
+    }
+    waitStrategy = strategy;
+    // threads waiting on the monitor may have to poll now
+    signalAll();
+  }
+
+  /**
+     Get the way threads wait for this buffer.  */
+  public
+  int getWaitStrategy() {
+    return waitStrategy;
+  }
+
+  /**
+     Convert a wait strategy name, such as "Blocking", "Sleeping",
+     "Yielding" or "BusySpin", to the corresponding constant. Case is
+     ignored.
+
+     @return the strategy, or <code>defaultValue</code> if the name is
+     not recognized. */
+  public
+  static
+  int toWaitStrategy(String name, int defaultValue) {
+    if(name != null) {
+      String n = name.trim();
+      for(int i = 0; i < WAIT_STRATEGY_NAMES.length; i++) {
+	if(WAIT_STRATEGY_NAMES[i].equalsIgnoreCase(n)) {
+	  return i;
+	}
+      }
+    }
+    return defaultValue;
+  }
+
+  /**
+     Get the name of a wait strategy constant.  */
+  public
+  static
+  String getWaitStrategyName(int strategy) {
+    return WAIT_STRATEGY_NAMES[strategy];
+  }
+
+  /**
+     Get the maximum number of events held by this buffer.  */
+  public
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+     Get the number of events in this buffer, including the events
+     being added.  */
+  public
+  int size() {
+    synchronized(claimLock) {
+      return (int) (claimed - consumed);
+    }
+  }
+
+  /**
+     Add <code>event</code> to this buffer if there is room for it.
+
+     @return {@link #PUBLISHED}, {@link #FULL} or {@link #SEALED}. */
+  public
+  int offer(LoggingEvent event) {
+    long sequence;
+    synchronized(claimLock) {
+      if(sealed) {
+	return SEALED;
+      }
+      if(claimed - consumed >= capacity) {
+	return FULL;
+      }
+      sequence = claimed++;
+    }
+    Slot slot = slots[(int) sequence & mask];
+    slot.event = event;
+    // volatile write, publishes the event to the consumer
+    slot.sequence = sequence;
+    if(signal.consumerWaiting) {
+      synchronized(signal) {
+	signal.notifyAll();
+      }
+    }
+    return PUBLISHED;
+  }
+
+  /**
+     Add <code>event</code> to this buffer, waiting for room if the
+     buffer is full.
+
+     @return {@link #PUBLISHED} or {@link #SEALED}. */
+  public
+  int put(LoggingEvent event) throws InterruptedException {
+    while(true) {
+      int result = offer(event);
+      if(result != FULL) {
+	return result;
+      }
+      awaitSpace();
+    }
+  }
+
+  /**
+     Wait until this buffer has room for an event, is sealed or {@link
+     #signalAll} is called. May return early, callers are expected to
+     check their conditions again.  */
+  public
+  void awaitSpace() throws InterruptedException {
+    int strategy = waitStrategy;
+    if(strategy != BLOCKING) {
+      // a full buffer means the consumer is behind, a short pause
+      // costs nothing
+      idle(strategy == SLEEPING ? YIELD_TRIES : 0, strategy);
+      return;
+    }
+    synchronized(signal) {
+      signal.producersWaiting++;
+      try {
+	if(isFull()) {
+	  signal.wait();
+	}
+      } finally {
+	signal.producersWaiting--;
+      }
+    }
+  }
+
+  /**
+     Wake up all the threads waiting on this buffer so that they check
+     their conditions again.  */
+  public
+  void signalAll() {
+    synchronized(signal) {
+      signal.notifyAll();
+    }
+  }
+
+  private
+  boolean isFull() {
+    synchronized(claimLock) {
+      return !sealed && claimed - consumed >= capacity;
+    }
+  }
+
+  /**
+     Move the available events to <code>events</code>, waiting for at
+     least one event if the buffer is empty. Only one thread may call
+     this method.
+
+     @return the number of events moved, or -1 once the buffer is
+     sealed and all its events have been moved. */
+  public
+  int take(LoggingEvent[] events) throws InterruptedException {
+    int tries = 0;
+    while(true) {
+      int n = poll(events);
+      if(n != 0) {
+	return n;
+      }
+      int strategy = waitStrategy;
+      if(strategy != BLOCKING) {
+	idle(tries++, strategy);
+	continue;
+      }
+      synchronized(signal) {
+	signal.consumerWaiting = true;
+	try {
+	  // the volatile write above and the read below pair with
+	  // the publication in offer, one of them sees the other
+	  if(!isAvailable() && !isSealed()) {
+	    signal.wait();
+	  }
+	} finally {
+	  signal.consumerWaiting = false;
+	}
+      }
+    }
+  }
+
+  /**
+     Move the available events to <code>events</code>, waiting at
+     most <code>timeout</code> milliseconds, or without limit if zero,
+     for an event if the buffer is empty. May return early if {@link
+     #signalAll} is called. Only one thread may call this method.
+
+     @return the number of events moved, 0 if there was none, or -1
+     once the buffer is sealed and all its events have been moved. */
+  public
+  int take(LoggingEvent[] events, long timeout) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    int tries = 0;
+    while(true) {
+      int n = poll(events);
+      // zero is also how Object.wait is told to wait without limit
+      long left = (timeout == 0) ? 0 : deadline - System.currentTimeMillis();
+      if(n != 0 || (timeout != 0 && left <= 0) || isCompanionAvailable()) {
+	return n;
+      }
+      int strategy = waitStrategy;
+      if(strategy != BLOCKING) {
+	idle(tries++, strategy);
+	continue;
+      }
+      synchronized(signal) {
+	signal.consumerWaiting = true;
+	try {
+	  if(!isAvailable() && !isSealed() && !isCompanionAvailable()) {
+	    signal.wait(left);
+	  }
+	} finally {
+	  signal.consumerWaiting = false;
+	}
+      }
+      return poll(events);
+    }
+  }
+
+  /**
+     Move the available events to <code>events</code> without waiting.
+     Only one thread may call this method.
+
+     @return the number of events moved, or -1 once the buffer is
+     sealed and all its events have been moved. */
+  public
+  int poll(LoggingEvent[] events) {
+    long sequence = consumed;
+    int n = 0;
+    while(n < events.length) {
+      Slot slot = slots[(int) (sequence + n) & mask];
+      if(slot.sequence != sequence + n) {
+	break;
+      }
+      events[n++] = slot.event;
+      slot.event = null;
+    }
+    if(n > 0) {
+      // volatile write, releases the slots to the producers
+      consumed = sequence + n;
+      if(signal.producersWaiting > 0) {
+	synchronized(signal) {
+	  signal.notifyAll();
+	}
+      }
+      return n;
+    }
+    synchronized(claimLock) {
+      if(sealed && claimed == sequence) {
+	return -1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+     Pause a thread polling the buffer according to the strategy.  */
+  private
+  static
+  void idle(int tries, int strategy) throws InterruptedException {
+    if(Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    switch(strategy) {
+    case SLEEPING:
+      if(tries >= YIELD_TRIES) {
+	Thread.sleep(1);
+      } else if(tries >= SPIN_TRIES) {
+	Thread.yield();
+      }
+      break;
+    case YIELDING:
+      Thread.yield();
+      break;
+    default:
+      break;
+    }
+  }
+
+  private
+  boolean isAvailable() {
+    long sequence = consumed;
+    return slots[(int) sequence & mask].sequence == sequence;
+  }
+
+  private
+  boolean isCompanionAvailable() {
+    RingBuffer c = companion;
+    return c != null && c.isAvailable();
+  }
+
+  private
+  boolean isSealed() {
+    synchronized(claimLock) {
+      return sealed;
+    }
+  }
+
+  /**
+     Turn away producers from now on. The events already added remain
+     available to the consumer.  */
+  public
+  void seal() {
+    seal(null);
+  }
+
+  /**
+     Turn away producers from now on, in favor of
+     <code>successor</code>. The events already added remain available
+     to the consumer.  */
+  public
+  void seal(RingBuffer successor) {
+    this.successor = successor;
+    synchronized(claimLock) {
+      sealed = true;
+    }
+    signalAll();
+  }
+
+  /**
+     Get the buffer consumed along with this one, or
+     <code>null</code> if there is none.  */
+  public
+  RingBuffer getCompanion() {
+    return companion;
+  }
+
+  /**
+     Get the buffer replacing this one, or <code>null</code> if there
+     is none.  */
+  public
+  RingBuffer getSuccessor() {
+    return successor;
+  }
+}
@@ -0,0 +1,546 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   <code>SpillFile</code> is a bounded first-in-first-out store of
+   serialized logging events in a memory mapped file, used by the
+   {@link org.apache.log4j.AsyncAppender} to hold the events which do
+   not fit in its buffer.
+
+   <p>The file starts with a header holding the offset of the oldest
+   event not yet replayed, followed by the events appended one after
+   the other. Each event is preceded by its length and checksum, and
+   followed by a zero length marking the end of the events. The
+   length is written last, so an event is either complete or ignored.
+   The events form a ring: an event which does not fit before the end
+   of the file is written after the header, if the events replayed
+   from there left enough room, and a negative length tells the
+   reader to continue from the start. The file thus fills up only
+   when the events it holds take all of its space.
+
+   <p>The events are read back with an <code>ObjectInputStream</code>
+   which only resolves {@link LoggingEvent}, the classes of its
+   serialized fields and the simple MDC values: strings, numbers,
+   booleans and characters. Other MDC values are written as their
+   string form. A file written by another process thus cannot make
+   the reader instantiate arbitrary classes.
+
+   <p>The mapped pages are written back by the operating system, the
+   events of a process which died remain in the file and are
+   replayed by the next <code>SpillFile</code> opened on it. The file
+   is only forced to the disk by {@link #close}.
+
+   <p>The whole file is mapped when opened, which extends it to its
+   maximum size. Most file systems only allocate the pages actually
+   written. {@link #close} truncates the file to the events it still
+   holds.
+
+   <p>Any number of threads may write, a single thread may read.
+
+   @since 1.2.18 */
+public final class SpillFile {
+
+  private static final int MAGIC = 0x4c344a53;
+
+  // magic, reserved, offset of the oldest event, reserved
+  private static final int HEADER_SIZE = 16;
+
+  private static final int READ_OFFSET = 8;
+
+  // length and checksum
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  // length of the marker continuing the events after the header
+  private static final int WRAP = -1;
+
+  // the classes of the serialized form of the events
+  private static final Set ALLOWED_CLASSES = new HashSet();
+
+  static {
+    String[] names = {
+      "org.apache.log4j.spi.LoggingEvent",
+      "org.apache.log4j.spi.ThrowableInformation",
+      "org.apache.log4j.spi.LocationInfo",
+      "java.lang.String",
+      "[Ljava.lang.String;",
+      "java.util.Hashtable",
+      "java.lang.Boolean",
+      "java.lang.Character",
+      "java.lang.Number",
+      "java.lang.Byte",
+      "java.lang.Short",
+      "java.lang.Integer",
+      "java.lang.Long",
+      "java.lang.Float",
+      "java.lang.Double"
+    };
+    for(int i = 0; i < names.length; i++) {
+      ALLOWED_CLASSES.add(names[i]);
+    }
+  }
+
+  private final File file;
+  private final RandomAccessFile raf;
+  private final FileChannel channel;
+  private final MappedByteBuffer map;
+  private final int size;
+
+  // All the following fields are guarded by this.
+
+  // Offset of the oldest event not yet released.
+  private int readOffset;
+
+  // Offset of the oldest event not yet read.
+  private int pendingOffset;
+
+  // Offset of the end marker.
+  private int writeOffset;
+
+  // Offset of the wrap marker, meaningful while the end marker
+  // precedes the oldest event.
+  private int wrapOffset;
+
+  // Number of events not yet released.
+  private int count;
+
+  // Number of events read but not yet released.
+  private int readCount;
+
+  private long spilled = 0;
+  private long replayed = 0;
+  private long rejected = 0;
+  private boolean closed = false;
+
+  // True while the file holds events, read without locking.
+  private volatile boolean active = false;
+
+  /**
+     Open or create a spill file holding at most <code>size</code>
+     bytes. The events left in an existing file are recovered.  */
+  public
+  SpillFile(File file, int size) throws IOException {
+    if(size < HEADER_SIZE + RECORD_HEADER_SIZE + 4) {
+      throw new IllegalArgumentException("The size argument ("+size+
+			    ") is too small.");
+    }
+    this.file = file;
+    this.raf = new RandomAccessFile(file, "rw");
+    boolean recover = raf.length() >= HEADER_SIZE;
+    if(raf.length() > size) {
+      // do not lose the events of a larger file
+      size = (int) Math.min(raf.length(), Integer.MAX_VALUE);
+    }
+    this.size = size;
+    this.channel = raf.getChannel();
+    this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    if(recover && map.getInt(0) == MAGIC) {
+      recover();
+    } else {
+      reset();
+    }
+  }
+
+  /**
+     Scan the events from the saved read offset to find the end of
+     the valid ones.  */
+  private
+  void recover() {
+    int offset = map.getInt(READ_OFFSET);
+    if(offset < HEADER_SIZE || offset > size - 4) {
+      LogLog.warn("Spill file ["+file+"] is corrupted, discarding it.");
+      reset();
+      return;
+    }
+    readOffset = offset;
+    int n = 0;
+    int limit = size;
+    byte[] data;
+    for(;;) {
+      if(limit == size && offset <= size - 4 && map.getInt(offset) == WRAP) {
+	wrapOffset = offset;
+	offset = HEADER_SIZE;
+	limit = readOffset;
+      }
+      data = readRecord(offset, limit);
+      if(data == null) {
+	break;
+      }
+      offset += RECORD_HEADER_SIZE + data.length;
+      n++;
+    }
+    if(n == 0) {
+      reset();
+      return;
+    }
+    LogLog.debug("Recovered "+n+" events from spill file ["+file+"].");
+    pendingOffset = readOffset;
+    writeOffset = offset;
+    // a torn event is overwritten by the next one
+    map.putInt(writeOffset, 0);
+    count = n;
+    active = true;
+  }
+
+  private
+  void reset() {
+    map.putInt(0, MAGIC);
+    map.putInt(4, 0);
+    readOffset = pendingOffset = writeOffset = HEADER_SIZE;
+    map.putInt(HEADER_SIZE, 0);
+    saveReadOffset();
+    count = 0;
+    readCount = 0;
+    active = false;
+  }
+
+  private
+  void saveReadOffset() {
+    map.putInt(READ_OFFSET, readOffset);
+  }
+
+  /**
+     Return the data of the event at <code>offset</code>, or
+     <code>null</code> if there is no complete event there followed by
+     a marker before <code>limit</code>.  */
+  private
+  byte[] readRecord(int offset, int limit) {
+    if(offset > limit - RECORD_HEADER_SIZE - 4) {
+      return null;
+    }
+    int length = map.getInt(offset);
+    if(length <= 0 || length > limit - offset - RECORD_HEADER_SIZE - 4) {
+      return null;
+    }
+    byte[] data = new byte[length];
+    ByteBuffer buffer = map.duplicate();
+    buffer.position(offset + RECORD_HEADER_SIZE);
+    buffer.get(data);
+    if(checksum(data) != map.getInt(offset + 4)) {
+      return null;
+    }
+    return data;
+  }
+
+  private
+  static
+  int checksum(byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return (int) crc.getValue();
+  }
+
+  /**
+     Append an event to the file. The event should have captured its
+     thread dependent information beforehand.
+
+     @return false if the event does not fit in the file, could not be
+     serialized or the file is closed.  */
+  public
+  boolean write(LoggingEvent event) {
+    byte[] data;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+      ObjectOutputStream oos = new EventOutputStream(bytes);
+      oos.writeObject(event);
+      oos.close();
+      data = bytes.toByteArray();
+    } catch(IOException e) {
+      LogLog.warn("Could not serialize event to spill file ["+file+"].", e);
+      synchronized(this) {
+	rejected++;
+      }
+      return false;
+    }
+    int crc = checksum(data);
+
+    synchronized(this) {
+      int length = RECORD_HEADER_SIZE + data.length;
+      int offset = writeOffset;
+      boolean wrap = false;
+      if(closed) {
+	rejected++;
+	return false;
+      }
+      if(writeOffset < readOffset) {
+	// wrapped, the oldest event follows
+	if(offset + length > readOffset - 4) {
+	  rejected++;
+	  return false;
+	}
+      } else if(offset + length > size - 4) {
+	if(HEADER_SIZE + length > readOffset - 4) {
+	  rejected++;
+	  return false;
+	}
+	offset = HEADER_SIZE;
+	wrap = true;
+      }
+      int end = offset + length;
+      ByteBuffer buffer = map.duplicate();
+      buffer.position(offset + RECORD_HEADER_SIZE);
+      buffer.put(data);
+      map.putInt(offset + 4, crc);
+      map.putInt(end, 0);
+      // written last, makes the event visible to recovery
+      map.putInt(offset, data.length);
+      if(wrap) {
+	map.putInt(writeOffset, WRAP);
+	wrapOffset = writeOffset;
+      }
+      writeOffset = end;
+      count++;
+      spilled++;
+      active = true;
+      return true;
+    }
+  }
+
+  /**
+     Move the oldest events not yet read to <code>events</code>. They
+     remain in the file until {@link #release} is called. Events which
+     cannot be deserialized are skipped.
+
+     @return the number of events moved.  */
+  public
+  int read(LoggingEvent[] events) {
+    byte[][] data = new byte[events.length][];
+    int n = 0;
+    synchronized(this) {
+      while(n < data.length && readCount < count) {
+	if(pendingOffset == wrapOffset && map.getInt(pendingOffset) == WRAP) {
+	  pendingOffset = HEADER_SIZE;
+	}
+	byte[] record = readRecord(pendingOffset,
+			   pendingOffset < writeOffset ? writeOffset + 4 : size);
+	if(record == null) {
+	  // cannot happen unless the file is modified behind our back
+	  LogLog.warn("Spill file ["+file+"] is corrupted, skipping "+
+		      (count - readCount)+" events.");
+	  readCount = count;
+	  pendingOffset = writeOffset;
+	  break;
+	}
+	pendingOffset += RECORD_HEADER_SIZE + record.length;
+	readCount++;
+	data[n++] = record;
+      }
+    }
+
+    int moved = 0;
+    for(int i = 0; i < n; i++) {
+      try {
+	ObjectInputStream ois =
+	  new EventInputStream(new ByteArrayInputStream(data[i]));
+	events[moved] = (LoggingEvent) ois.readObject();
+	ois.close();
+	moved++;
+      } catch(Exception e) {
+	LogLog.warn("Could not deserialize event from spill file ["+file+"].", e);
+      }
+    }
+    return moved;
+  }
+
+  /**
+     Remove the events returned by {@link #read} from the file, once
+     they have been appended.  */
+  public
+  synchronized
+  void release() {
+    if(closed || readCount == 0) {
+      return;
+    }
+    replayed += readCount;
+    count -= readCount;
+    readCount = 0;
+    readOffset = pendingOffset;
+    if(readOffset == writeOffset) {
+      reset();
+    } else {
+      saveReadOffset();
+    }
+  }
+
+  /**
+     Return true if the file holds events which have not been
+     released.  */
+  public
+  boolean isActive() {
+    return active;
+  }
+
+  /**
+     Return true if the file holds events which have not been read.  */
+  public
+  synchronized
+  boolean hasPending() {
+    return readCount < count;
+  }
+
+  /**
+     Get the number of events in the file.  */
+  public
+  synchronized
+  int getCount() {
+    return count;
+  }
+
+  /**
+     Get the number of bytes used by the events in the file.  */
+  public
+  synchronized
+  int getUsedBytes() {
+    if(writeOffset < readOffset) {
+      return wrapOffset - readOffset + writeOffset - HEADER_SIZE;
+    }
+    return writeOffset - readOffset;
+  }
+
+  /**
+     Get the size of the file.  */
+  public
+  int getSize() {
+    return size;
+  }
+
+  /**
+     Get the number of events written to the file.  */
+  public
+  synchronized
+  long getSpilledCount() {
+    return spilled;
+  }
+
+  /**
+     Get the number of events released from the file.  */
+  public
+  synchronized
+  long getReplayedCount() {
+    return replayed;
+  }
+
+  /**
+     Get the number of events which could not be written to the
+     file.  */
+  public
+  synchronized
+  long getRejectedCount() {
+    return rejected;
+  }
+
+  /**
+     Force the file to the disk, truncate it after its last event and
+     close it. The events not yet released are recovered when the
+     file is opened again.  */
+  public
+  synchronized
+  void close() {
+    if(closed) {
+      return;
+    }
+    closed = true;
+    // a file channel is closed when the calling thread is interrupted
+    boolean interrupted = Thread.interrupted();
+    try {
+      map.force();
+      try {
+	int end = writeOffset < readOffset ? wrapOffset : writeOffset;
+	channel.truncate(end + 4);
+      } catch(IOException e) {
+	// some platforms refuse to truncate a file still mapped
+	LogLog.warn("Could not truncate spill file ["+file+"].", e);
+      }
+      channel.close();
+      raf.close();
+    } catch(IOException e) {
+      LogLog.warn("Could not close spill file ["+file+"].", e);
+    } finally {
+      if(interrupted) {
+	Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+     Writes the MDC values which the reader would not resolve as
+     their string form.  */
+  private
+  static
+  final
+  class EventOutputStream extends ObjectOutputStream {
+    EventOutputStream(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    protected
+    Object replaceObject(Object obj) {
+      if(obj == null || ALLOWED_CLASSES.contains(obj.getClass().getName())) {
+	return obj;
+      }
+      return obj.toString();
+    }
+  }
+
+  /**
+     Resolves only the classes of the serialized form of the events.  */
+  private
+  static
+  final
+  class EventInputStream extends ObjectInputStream {
+    EventInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    protected
+    Class resolveClass(ObjectStreamClass desc)
+                       throws IOException, ClassNotFoundException {
+      if(!ALLOWED_CLASSES.contains(desc.getName())) {
+	throw new InvalidClassException(desc.getName(),
+					"Not allowed in a spill file.");
+      }
+      return super.resolveClass(desc);
+    }
+
+    protected
+    Class resolveProxyClass(String[] interfaces) throws IOException {
+      throw new InvalidClassException("proxy", "Not allowed in a spill file.");
+    }
+  }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+/**
+   <code>StripedCounter</code> is a counter which many threads can
+   increment at the same time without waiting for each other.
+
+   <p>The count is split over several cells, each guarding its value
+   with its own monitor, and a thread always adds to the cell chosen
+   by its identity hash code. Threads only contend when they land on the same cell, the
+   number of cells being at least the number of processors. Reading
+   the counter sums the cells, so concurrent additions may or may not
+   be seen.
+
+   @since 1.2.18 */
+public final class StripedCounter {
+
+  private static final int MAX_STRIPES = 64;
+
+  /**
+     A value and the lock guarding it, padded so that two cells never
+     share a cache line.  */
+  private static final class Cell {
+    long p0, p1, p2, p3, p4, p5, p6;
+    long value;
+    long q0, q1, q2, q3, q4, q5, q6;
+  }
+
+  private final Cell[] cells;
+  private final int mask;
+
+  /**
+     Create a counter with one cell per processor, rounded up to a
+     power of two.  */
+  public
+  StripedCounter() {
+    this(stripes());
+  }
+
+  StripedCounter(int stripes) {
+    mask = stripes - 1;
+    cells = new Cell[stripes];
+    for(int i = 0; i < stripes; i++) {
+      cells[i] = new Cell();
+    }
+  }
+
+  /**
+     Get the number of stripes to use for the processors of this
+     machine, a power of two.  */
+  static
+  int stripes() {
+    int n = Runtime.getRuntime().availableProcessors();
+    int stripes = 1;
+    while(stripes < n && stripes < MAX_STRIPES) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+
+  /**
+     Get the stripe of the calling thread among <code>mask + 1</code>
+     stripes.  */
+  static
+  int stripe(int mask) {
+    int h = System.identityHashCode(Thread.currentThread());
+    // the low bits of identity hash codes are not always well mixed
+    h ^= (h >>> 16);
+    h ^= (h >>> 7);
+    return h & mask;
+  }
+
+  /**
+     Add <code>value</code> to the counter.  */
+  public
+  void add(long value) {
+    Cell cell = cells[stripe(mask)];
+    synchronized(cell) {
+      cell.value += value;
+    }
+  }
+
+  /**
+     Add one to the counter.  */
+  public
+  void increment() {
+    add(1);
+  }
+
+  /**
+     Get the sum of the cells.  */
+  public
+  long get() {
+    long sum = 0;
+    for(int i = 0; i < cells.length; i++) {
+      Cell cell = cells[i];
+      synchronized(cell) {
+	sum += cell.value;
+      }
+    }
+    return sum;
+  }
+
+  /**
+     Reset the counter to zero.  */
+  public
+  void reset() {
+    for(int i = 0; i < cells.length; i++) {
+      Cell cell = cells[i];
+      synchronized(cell) {
+	cell.value = 0;
+      }
+    }
+  }
+}
@@ -170,6 +170,33 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton {
    * Adds the event to the buffer.  When full the buffer is flushed.
    */
   public void append(LoggingEvent event) {
+    capture(event);
+    buffer.add(event);
+
+    if (buffer.size() >= bufferSize) {
+        flushBuffer();
+    }
+  }
+
+  /**
+   * Adds the events to the buffer and flushes it at most once, after the
+   * whole batch is buffered, rather than each time it fills up.
+   *
+   * @since 1.2.18
+   */
+  protected void append(LoggingEvent[] events, int count) {
+    buffer.ensureCapacity(buffer.size() + count);
+    for (int i = 0; i < count; i++) {
+      capture(events[i]);
+      buffer.add(events[i]);
+    }
+
+    if (buffer.size() >= bufferSize) {
+        flushBuffer();
+    }
+  }
+
+  private void capture(LoggingEvent event) {
     event.getNDC();
     event.getThreadName();
     // Get a copy of this thread's MDC.
@@ -179,11 +206,6 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton {
     }
     event.getRenderedMessage();
     event.getThrowableStrRep();
-    buffer.add(event);
-
-    if (buffer.size() >= bufferSize) {
-        flushBuffer();
-    }
   }
 
   /**
@@ -141,6 +141,11 @@ public class AppenderDynamicMBean extends AbstractDynamicMBean {
       return true;
     }
 
+    // statistics such as the histograms of AsyncAppender
+    if(clazz.isArray() && clazz.getComponentType().isPrimitive()) {
+      return true;
+    }
+
 
     if(clazz.isAssignableFrom(Priority.class)) {
       return true;
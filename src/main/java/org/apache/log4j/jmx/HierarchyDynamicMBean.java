@@ -26,6 +26,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.spi.HierarchyEventListener;
 import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggerSubtreeSupport;
 
 import javax.management.Attribute;
 import javax.management.AttributeNotFoundException;
@@ -49,6 +50,7 @@ import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.RuntimeOperationsException;
 import java.lang.reflect.Constructor;
+import java.util.Enumeration;
 import java.util.Vector;
 
 public class HierarchyDynamicMBean extends AbstractDynamicMBean
@@ -59,7 +61,7 @@ public class HierarchyDynamicMBean extends AbstractDynamicMBean
   static final String THRESHOLD = "threshold";
 
   private MBeanConstructorInfo[] dConstructors = new MBeanConstructorInfo[1];
-  private MBeanOperationInfo[] dOperations = new MBeanOperationInfo[1];
+  private MBeanOperationInfo[] dOperations = new MBeanOperationInfo[3];
 
   private Vector vAttributes = new Vector();
   private String dClassName = this.getClass().getName();
@@ -100,6 +102,26 @@ public class HierarchyDynamicMBean extends AbstractDynamicMBean
 				    params ,
 				    "javax.management.ObjectName",
 				    MBeanOperationInfo.ACTION);
+
+    params = new MBeanParameterInfo[2];
+    params[0] = new MBeanParameterInfo("prefix", "java.lang.String",
+				       "Name of the subtree of loggers" );
+    params[1] = new MBeanParameterInfo("level", "java.lang.String",
+				       "Level to assign, null to inherit" );
+    dOperations[1] = new MBeanOperationInfo("setSubtreeLevel",
+				    "setSubtreeLevel(): set the level of a subtree of loggers",
+				    params ,
+				    "java.lang.Integer",
+				    MBeanOperationInfo.ACTION);
+
+    params = new MBeanParameterInfo[1];
+    params[0] = new MBeanParameterInfo("prefix", "java.lang.String",
+				       "Name of the subtree of loggers" );
+    dOperations[2] = new MBeanOperationInfo("getSubtreeLoggerNames",
+				    "getSubtreeLoggerNames(): list the names of a subtree of loggers",
+				    params ,
+				    "[Ljava.lang.String;",
+				    MBeanOperationInfo.INFO);
   }
 
 
@@ -114,6 +136,67 @@ public class HierarchyDynamicMBean extends AbstractDynamicMBean
     }
   }
 
+  /**
+     Set the level of the loggers named <code>prefix</code> or
+     descending from it and return the number of loggers updated.
+
+     @since 1.2.18 */
+  public
+  int setSubtreeLevel(String prefix, String level) {
+    Level l = level == null ? null : OptionConverter.toLevel(level, null);
+    if(level != null && l == null) {
+      throw new IllegalArgumentException("Unknown level ["+level+"].");
+    }
+    if(hierarchy instanceof LoggerSubtreeSupport) {
+      return ((LoggerSubtreeSupport) hierarchy).setSubtreeLevel(prefix, l);
+    }
+    int count = 0;
+    Enumeration loggers = hierarchy.getCurrentLoggers();
+    while(loggers.hasMoreElements()) {
+      Logger logger = (Logger) loggers.nextElement();
+      if(isInSubtree(logger.getName(), prefix)) {
+	logger.setLevel(l);
+	count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+     Return the names of the loggers named <code>prefix</code> or
+     descending from it.
+
+     @since 1.2.18 */
+  public
+  String[] getSubtreeLoggerNames(String prefix) {
+    Enumeration loggers;
+    if(hierarchy instanceof LoggerSubtreeSupport) {
+      loggers = ((LoggerSubtreeSupport) hierarchy).getCurrentLoggers(prefix);
+    } else {
+      loggers = hierarchy.getCurrentLoggers();
+    }
+    Vector names = new Vector();
+    while(loggers.hasMoreElements()) {
+      String name = ((Logger) loggers.nextElement()).getName();
+      if(isInSubtree(name, prefix)) {
+	names.addElement(name);
+      }
+    }
+    String[] result = new String[names.size()];
+    names.copyInto(result);
+    return result;
+  }
+
+  private
+  static
+  boolean isInSubtree(String name, String prefix) {
+    if(prefix == null || prefix.length() == 0) {
+      return true;
+    }
+    return name.startsWith(prefix)
+      && (name.length() == prefix.length() || name.charAt(prefix.length()) == '.');
+  }
+
   ObjectName addLoggerMBean(Logger logger) {
     String name = logger.getName();
     ObjectName objectName = null;
@@ -189,6 +272,15 @@ public class HierarchyDynamicMBean extends AbstractDynamicMBean
 
     if(operationName.equals("addLoggerMBean")) {
       return addLoggerMBean((String)params[0]);
+    } else if(operationName.equals("setSubtreeLevel")) {
+      try {
+	return new Integer(setSubtreeLevel((String)params[0], (String)params[1]));
+      } catch(IllegalArgumentException e) {
+	throw new RuntimeOperationsException(e,
+	    "Cannot invoke setSubtreeLevel in " + dClassName);
+      }
+    } else if(operationName.equals("getSubtreeLoggerNames")) {
+      return getSubtreeLoggerNames((String)params[0]);
     } else {
       throw new ReflectionException(
 	    new NoSuchMethodException(operationName),
@@ -255,7 +255,44 @@ public class SocketAppender extends AppenderSkeleton {
 
     if(oos != null) {
       try {
-    	 
+	write(event);
+	//LogLog.debug("=========Flushing.");
+	oos.flush();
+      } catch(IOException e) {
+	connectionFailed(e);
+      }
+    }
+  }
+
+  /**
+     Serialize all the events of the batch before flushing the stream
+     once.
+
+     @since 1.2.18 */
+  protected
+  void append(LoggingEvent[] events, int count) {
+    if(address==null) {
+      errorHandler.error("No remote host is set for SocketAppender named \""+
+			this.name+"\".");
+      return;
+    }
+
+    if(oos != null) {
+      try {
+	for(int i = 0; i < count; i++) {
+	  if(events[i] != null) {
+	    write(events[i]);
+	  }
+	}
+	oos.flush();
+      } catch(IOException e) {
+	connectionFailed(e);
+      }
+    }
+  }
+
+  private
+  void write(LoggingEvent event) throws IOException {
 	if(locationInfo) {
 	   event.getLocationInformation();
 	}
@@ -269,8 +306,6 @@ public class SocketAppender extends AppenderSkeleton {
     event.getThrowableStrRep();
     
 	oos.writeObject(event);
-	//LogLog.debug("=========Flushing.");
-	oos.flush();
 	if(++counter >= RESET_FREQUENCY) {
 	  counter = 0;
 	  // Failing to reset the object output stream every now and
@@ -278,7 +313,10 @@ public class SocketAppender extends AppenderSkeleton {
 	  //System.err.println("Doing oos.reset()");
 	  oos.reset();
 	}
-      } catch(IOException e) {
+  }
+
+  private
+  void connectionFailed(IOException e) {
           if (e instanceof InterruptedIOException) {
               Thread.currentThread().interrupt();
           }
@@ -290,8 +328,6 @@ public class SocketAppender extends AppenderSkeleton {
 	         errorHandler.error("Detected problem with connection, not reconnecting.", e,
 	               ErrorCode.GENERIC_FAILURE);
 	      }
-      }
-    }
   }
 
   public void setAdvertiseViaMulticastDNS(boolean advertiseViaMulticastDNS) {
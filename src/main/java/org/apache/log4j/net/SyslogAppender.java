@@ -323,14 +323,50 @@ public class SyslogAppender extends AppenderSkeleton {
       return;
     }
 
+    checkLayoutHeader();
+    send(event, getPacketHeader(event.timeStamp));
+  }
+
+  /**
+     Send the events of the batch one after the other, reusing the
+     packet header of the previous event when both are logged in the
+     same second. Each event still goes in its own datagram.
+
+     @since 1.2.18 */
+  protected
+  void append(LoggingEvent[] events, int count) {
+    if(sqw == null) {
+      errorHandler.error("No syslog host is set for SyslogAppedender named \""+
+			this.name+"\".");
+      return;
+    }
+
+    checkLayoutHeader();
+    String hdr = null;
+    long second = 0;
+    for(int i = 0; i < count; i++) {
+      // the header holds the time stamp to the second
+      long s = events[i].timeStamp / 1000;
+      if(hdr == null || s != second) {
+        hdr = getPacketHeader(events[i].timeStamp);
+        second = s;
+      }
+      send(events[i], hdr);
+    }
+  }
+
+  private
+  void checkLayoutHeader() {
     if (!layoutHeaderChecked) {
         if (layout != null && layout.getHeader() != null) {
             sendLayoutMessage(layout.getHeader());
         }
         layoutHeaderChecked = true;
     }
+  }
 
-    String hdr = getPacketHeader(event.timeStamp);
+  private
+  void send(final LoggingEvent event, final String hdr) {
     String packet;
     if (layout == null) {
         packet = String.valueOf(event.getMessage());
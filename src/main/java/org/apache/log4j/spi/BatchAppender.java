@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.spi;
+
+import org.apache.log4j.Appender;
+
+/**
+ * Implemented by appenders which can append several events at once,
+ * such as those handed over by {@link org.apache.log4j.AsyncAppender}.
+ * Appending a batch takes the lock of the appender once and lets the
+ * appender write and flush the events together instead of one by one.
+ *
+ * <p>{@link org.apache.log4j.AppenderSkeleton} implements this
+ * interface by appending the events in turn, subclasses override
+ * its protected <code>append(LoggingEvent[], int)</code> method to do
+ * better. The {@link org.apache.log4j.AsyncAppender} only hands
+ * batches to the subclasses which override that method, and not to
+ * those which override <code>doAppend(LoggingEvent)</code>, or
+ * <code>append(LoggingEvent)</code> below the class overriding the
+ * batch method, since the batch would bypass them.
+ *
+ * @since 1.2.18
+ */
+public interface BatchAppender extends Appender {
+    /**
+     * Append the first <code>count</code> events of the array, in order.
+     * Each event is subject to the threshold and filters of the appender
+     * as if passed to {@link Appender#doAppend}. The array is not
+     * modified.
+     * @param events events, may contain more than count elements.
+     * @param count number of events to append.
+     */
+    void doAppend(LoggingEvent[] events, int count);
+}
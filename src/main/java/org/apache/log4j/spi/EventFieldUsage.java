@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.log4j.spi;
+
+/**
+ * Implemented by layouts, filters and appenders to tell which fields of
+ * a {@link LoggingEvent} they read among those taken from the logging
+ * thread. These fields have to be captured before the event is handed to
+ * another thread, which {@link org.apache.log4j.AsyncAppender} skips for
+ * the fields that no attached appender reads.
+ *
+ * <p>Subclasses of an implementing class which read more fields must
+ * override {@link #getUsedFields}.
+ *
+ * @since 1.2.18
+ */
+public interface EventFieldUsage {
+    /**
+     * The nested diagnostic context.
+     */
+    int NDC = 1;
+
+    /**
+     * The mapped diagnostic context.
+     */
+    int MDC = 2;
+
+    /**
+     * The thread name.
+     */
+    int THREAD_NAME = 4;
+
+    /**
+     * The location of the logging request.
+     */
+    int LOCATION_INFO = 8;
+
+    /**
+     * All the fields taken from the logging thread.
+     */
+    int ALL = NDC | MDC | THREAD_NAME | LOCATION_INFO;
+
+    /**
+     * Get the fields read, given the current options.
+     * @return combination of NDC, MDC, THREAD_NAME and LOCATION_INFO.
+     */
+    int getUsedFields();
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.log4j.spi;
+
+import java.util.Enumeration;
+
+import org.apache.log4j.Level;
+
+/**
+ * Implemented by logger repositories that index their loggers by name
+ * prefix. The subtree of a prefix holds the logger with that name and
+ * its descendants, for instance the subtree of <code>com.foo</code>
+ * holds <code>com.foo</code> and <code>com.foo.Bar</code> but not
+ * <code>com.foobar</code>. A <code>null</code> or empty prefix
+ * designates all the loggers except the root logger.
+ *
+ * @since 1.2.18
+ */
+public interface LoggerSubtreeSupport {
+    /**
+     * Get the existing loggers of a subtree.
+     * @param prefix name of the subtree, may be null.
+     * @return enumeration of the loggers of the subtree.
+     */
+    Enumeration getCurrentLoggers(String prefix);
+
+    /**
+     * Set the level of all the existing loggers of a subtree.
+     * @param prefix name of the subtree, may be null.
+     * @param level level to assign, null makes the loggers inherit
+     * their level.
+     * @return number of loggers updated.
+     */
+    int setSubtreeLevel(String prefix, Level level);
+}
@@ -64,7 +64,7 @@ public final class RootLogger extends Logger {
       LogLog.error(
         "You have tried to set a null level to root.", new Throwable());
     } else {
-      this.level = level;
+      super.setLevel(level);
     }
   }
 
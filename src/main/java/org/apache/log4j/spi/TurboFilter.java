@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.spi;
+
+import org.apache.log4j.Category;
+import org.apache.log4j.Priority;
+
+/**
+   Users should extend this class to filter logging requests before
+   the corresponding {@link LoggingEvent} is created.
+
+   <p>Turbo filters are attached to a {@link
+   org.apache.log4j.Hierarchy Hierarchy} and are consulted by every
+   category of that hierarchy for every logging request, whether or
+   not the request is enabled by the level of the category. Unlike
+   {@link Filter}s they are given the raw arguments of the request
+   instead of an event, which avoids the cost of creating an event
+   for requests which are dropped.
+
+   <p>The {@link #decide decide} method must return one of the
+   integer constants {@link Filter#DENY}, {@link Filter#NEUTRAL} or
+   {@link Filter#ACCEPT}. The filters of a hierarchy are consulted in
+   the order of their addition. If the value {@link Filter#DENY} is
+   returned, the request is dropped immediately. If the value {@link
+   Filter#ACCEPT} is returned, the request is logged regardless of
+   the level of the category. If all filters return {@link
+   Filter#NEUTRAL}, the level of the category decides as usual.
+
+   <p>The threshold of the hierarchy is checked before the turbo
+   filters are consulted and the thresholds and filters of the
+   appenders still apply to accepted requests.
+
+   <p>Since turbo filters are invoked for every logging request,
+   including disabled ones, implementations should return quickly
+   and must be safe for use by multiple threads.
+
+   @since 1.2.18 */
+public abstract class TurboFilter implements OptionHandler {
+
+  /**
+     Usually filters options become active when set. We provide a
+     default do-nothing implementation for convenience.
+  */
+  public
+  void activateOptions() {
+  }
+
+  /**
+     Decide upon a logging request.
+
+     <p>The <code>message</code> and <code>t</code> parameters are
+     <code>null</code> when the request is made by one of the
+     <code>is<i>Level</i>Enabled</code> methods. For localized
+     requests, the <code>message</code> is the resource bundle key.
+
+     @param logger the category on which the request is made.
+     @param level the level of the request.
+     @param message the message of the request, may be <code>null</code>.
+     @param t the throwable of the request, may be <code>null</code>.
+     @return decision The decision of the filter.  */
+  abstract
+  public
+  int decide(Category logger, Priority level, Object message, Throwable t);
+}
@@ -18,6 +18,7 @@
 package org.apache.log4j.varia;
 
 import org.apache.log4j.Level;
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.helpers.OptionConverter;
@@ -37,16 +38,16 @@ import org.apache.log4j.helpers.OptionConverter;
    @author Ceki G&uuml;lc&uuml;
 
    @since 1.2 */
-public class LevelMatchFilter extends Filter {
+public class LevelMatchFilter extends Filter implements EventFieldUsage {
   
   /**
      Do we return ACCEPT when a match occurs. Default is
      <code>true</code>.  */
-  boolean acceptOnMatch = true;
+  volatile boolean acceptOnMatch = true;
 
   /**
    */
-  Level levelToMatch;
+  volatile Level levelToMatch;
 
  
   public
@@ -83,12 +84,14 @@ public class LevelMatchFilter extends Filter {
   */
   public
   int decide(LoggingEvent event) {
-    if(this.levelToMatch == null) {
+    // read the option once, it may be changed concurrently
+    Level levelToMatch = this.levelToMatch;
+    if(levelToMatch == null) {
       return Filter.NEUTRAL;
     }
     
     boolean matchOccured = false;
-    if(this.levelToMatch.equals(event.getLevel())) {
+    if(levelToMatch.equals(event.getLevel())) {
       matchOccured = true;
     } 
 
@@ -102,4 +105,13 @@ public class LevelMatchFilter extends Filter {
       return Filter.NEUTRAL;
     }
   }
+
+  /**
+     Returns 0, only the level of events is matched.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    return 0;
+  }
 }
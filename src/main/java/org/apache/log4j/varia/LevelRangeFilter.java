@@ -18,6 +18,7 @@
 package org.apache.log4j.varia;
 
 import org.apache.log4j.Level;
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 
@@ -50,15 +51,15 @@ import org.apache.log4j.spi.LoggingEvent;
    @author Simon Kitching
    @author based on code by Ceki G&uuml;lc&uuml; 
 */
-public class LevelRangeFilter extends Filter {
+public class LevelRangeFilter extends Filter implements EventFieldUsage {
 
   /**
      Do we return ACCEPT when a match occurs. Default is
      <code>false</code>, so that later filters get run by default  */
-  boolean acceptOnMatch = false;
+  volatile boolean acceptOnMatch = false;
 
-  Level levelMin;
-  Level levelMax;
+  volatile Level levelMin;
+  volatile Level levelMax;
 
  
   /**
@@ -66,14 +67,17 @@ public class LevelRangeFilter extends Filter {
    */
   public
   int decide(LoggingEvent event) {
-    if(this.levelMin != null) {
+    // read the options once, they may be changed concurrently
+    Level levelMin = this.levelMin;
+    Level levelMax = this.levelMax;
+    if(levelMin != null) {
       if (event.getLevel().isGreaterOrEqual(levelMin) == false) {
         // level of event is less than minimum
         return Filter.DENY;
       }
     }
 
-    if(this.levelMax != null) {
+    if(levelMax != null) {
       if (event.getLevel().toInt() > levelMax.toInt()) {
         // level of event is greater than maximum
         // Alas, there is no Level.isGreater method. and using
@@ -140,5 +144,13 @@ public class LevelRangeFilter extends Filter {
   void setAcceptOnMatch(boolean acceptOnMatch) {
     this.acceptOnMatch = acceptOnMatch;
   }
-}
 
+  /**
+     Returns 0, the range only applies to the level of events.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    return 0;
+  }
+}
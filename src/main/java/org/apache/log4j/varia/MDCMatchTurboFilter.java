@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.varia;
+
+import org.apache.log4j.Category;
+import org.apache.log4j.MDC;
+import org.apache.log4j.Priority;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.TurboFilter;
+
+/**
+   A turbo filter based on the mapped diagnostic context of the
+   current thread.
+
+   <p>The filter admits three options <b>Key</b>, <b>Value</b> and
+   <b>AcceptOnMatch</b>. If the {@link MDC} value of the current
+   thread for <b>Key</b> is equal to <b>Value</b>, then the {@link
+   #decide} method returns {@link Filter#ACCEPT} in case the
+   <b>AcceptOnMatch</b> option value is set to <code>true</code>, if
+   it is <code>false</code> then {@link Filter#DENY} is returned. If
+   there is no match, {@link Filter#NEUTRAL} is returned.
+
+   <p>For instance, a filter with key <code>debug</code>, value
+   <code>true</code> and <b>AcceptOnMatch</b> set to
+   <code>true</code> enables all logging requests made by threads
+   whose MDC maps <code>debug</code> to <code>true</code>.
+
+   @since 1.2.18 */
+public class MDCMatchTurboFilter extends TurboFilter {
+
+  /**
+     Do we return ACCEPT when a match occurs. Default is
+     <code>true</code>.  */
+  volatile boolean acceptOnMatch = true;
+
+  volatile String key;
+
+  volatile String value;
+
+  public
+  void setKey(String key) {
+    this.key = key;
+  }
+
+  public
+  String getKey() {
+    return key;
+  }
+
+  public
+  void setValue(String value) {
+    this.value = value;
+  }
+
+  public
+  String getValue() {
+    return value;
+  }
+
+  public
+  void setAcceptOnMatch(boolean acceptOnMatch) {
+    this.acceptOnMatch = acceptOnMatch;
+  }
+
+  public
+  boolean getAcceptOnMatch() {
+    return acceptOnMatch;
+  }
+
+  /**
+     Return the decision of this filter.
+
+     Returns {@link Filter#NEUTRAL} if the <b>Key</b> or <b>Value</b>
+     option is not set or if there is no match. Otherwise the returned
+     decision is {@link Filter#ACCEPT} if the <b>AcceptOnMatch</b>
+     property is set to <code>true</code> and {@link Filter#DENY} if
+     it is set to <code>false</code>.
+  */
+  public
+  int decide(Category logger, Priority level, Object message, Throwable t) {
+    // read the options once, they may be changed concurrently
+    String key = this.key;
+    String value = this.value;
+    if(key == null || value == null) {
+      return Filter.NEUTRAL;
+    }
+    Object mdcValue = MDC.get(key);
+    if(mdcValue == null || !value.equals(mdcValue.toString())) {
+      return Filter.NEUTRAL;
+    }
+    return acceptOnMatch ? Filter.ACCEPT : Filter.DENY;
+  }
+}
@@ -17,6 +17,7 @@
 
 package org.apache.log4j.varia;
 
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.Filter;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.helpers.OptionConverter;
@@ -35,7 +36,7 @@ import org.apache.log4j.helpers.OptionConverter;
  * @author Ceki G&uuml;lc&uuml;
  * @since 0.9.0 
  */
-public class StringMatchFilter extends Filter {
+public class StringMatchFilter extends Filter implements EventFieldUsage {
   
   /**
      @deprecated Options are now handled using the JavaBeans paradigm.
@@ -51,8 +52,8 @@ public class StringMatchFilter extends Filter {
    */
   public static final String ACCEPT_ON_MATCH_OPTION = "AcceptOnMatch";
   
-  boolean acceptOnMatch = true;
-  String stringToMatch;
+  volatile boolean acceptOnMatch = true;
+  volatile String stringToMatch;
   
   /**
      @deprecated We now use JavaBeans introspection to configure
@@ -103,6 +104,8 @@ public class StringMatchFilter extends Filter {
   public
   int decide(LoggingEvent event) {
     String msg = event.getRenderedMessage();
+    // read the option once, it may be changed concurrently
+    String stringToMatch = this.stringToMatch;
 
     if(msg == null ||  stringToMatch == null) {
         return Filter.NEUTRAL;
@@ -119,4 +122,13 @@ public class StringMatchFilter extends Filter {
       }
     }
   }
+
+  /**
+     Returns 0, the string is matched against the rendered message.
+
+     @since 1.2.18 */
+  public
+  int getUsedFields() {
+    return 0;
+  }
 }
@@ -18,6 +18,8 @@
 package org.apache.log4j.xml;
 
 import org.apache.log4j.Appender;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.Hierarchy;
 import org.apache.log4j.Layout;
 import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
@@ -111,9 +113,11 @@ public class DOMConfigurator implements Configurator {
   static final String PRIORITY_TAG      = "priority";
   static final String FILTER_TAG	= "filter";
   static final String ERROR_HANDLER_TAG	= "errorHandler";
+  static final String ASYNC_TAG		= "async";
   static final String REF_ATTR		= "ref";
   static final String ADDITIVITY_ATTR    = "additivity";  
   static final String THRESHOLD_ATTR       = "threshold";
+  static final String ASYNC_ATTR         = "async";
   static final String CONFIG_DEBUG_ATTR  = "configDebug";
   static final String INTERNAL_DEBUG_ATTR  = "debug";
   private static final String RESET_ATTR  = "reset";
@@ -249,6 +253,7 @@ public class DOMConfigurator implements Configurator {
       PropertySetter propSetter = new PropertySetter(appender);
 
       appender.setName(subst(appenderElement.getAttribute(NAME_ATTR)));
+      Element asyncElement = null;
       
       NodeList children	= appenderElement.getChildNodes();
       final int length 	= children.getLength();
@@ -275,6 +280,10 @@ public class DOMConfigurator implements Configurator {
 	  else if (currentElement.getTagName().equals(ERROR_HANDLER_TAG)) {
 	    parseErrorHandler(currentElement, appender);
 	  }
+	  // Wrapped once the appender is configured
+	  else if (currentElement.getTagName().equals(ASYNC_TAG)) {
+	    asyncElement = currentElement;
+	  }
 	  else if (currentElement.getTagName().equals(APPENDER_REF_TAG)) {
 	    String refName = subst(currentElement.getAttribute(REF_ATTR));
 	    if(appender instanceof AppenderAttachable) {
@@ -293,6 +302,10 @@ public class DOMConfigurator implements Configurator {
 	}
       }
       propSetter.activate();
+      if(asyncElement != null || OptionConverter.toBoolean(
+             subst(appenderElement.getAttribute(ASYNC_ATTR)), false)) {
+        return parseAsync(asyncElement, appender);
+      }
       return appender;
     }
     /* Yes, it's ugly.  But all of these exceptions point to the same
@@ -307,6 +320,49 @@ public class DOMConfigurator implements Configurator {
     }
   }
 
+  /**
+     Used internally to wrap an appender in an {@link AsyncAppender} of
+     the same name, configured by the parameters of the
+     <code>async</code> element.
+
+     @param element async element, may be null if the appender only
+     has an async attribute.
+     @since 1.2.18
+   */
+  protected
+  Appender parseAsync(Element element, Appender appender) {
+    if(appender instanceof AsyncAppender) {
+      LogLog.warn("Appender named ["+appender.getName()+
+		  "] is already asynchronous, ignoring async option.");
+      return appender;
+    }
+    AsyncAppender async = new AsyncAppender();
+    async.setName(appender.getName());
+    async.addAppender(appender);
+    LogLog.debug("Wrapping appender named ["+appender.getName()+
+		 "] in an AsyncAppender.");
+
+    PropertySetter propSetter = new PropertySetter(async);
+    if(element != null) {
+      NodeList children = element.getChildNodes();
+      final int length 	= children.getLength();
+
+      for (int loop = 0; loop < length; loop++) {
+	Node currentNode = children.item(loop);
+	if (currentNode.getNodeType() == Node.ELEMENT_NODE) {
+	  Element currentElement = (Element) currentNode;
+	  if(currentElement.getTagName().equals(PARAM_TAG)) {
+            setParameter(currentElement, propSetter);
+	  } else {
+            quietParseUnrecognizedElement(async, currentElement, props);
+	  }
+	}
+      }
+    }
+    propSetter.activate();
+    return async;
+  }
+
   /**
      Used internally to parse an {@link ErrorHandler} element.
    */
@@ -870,7 +926,7 @@ public class DOMConfigurator implements Configurator {
       docBuilder.setEntityResolver(new Log4jEntityResolver());
          
       Document doc = action.parse(docBuilder);     
-      parse(doc.getDocumentElement());
+      parseInBatch(doc.getDocumentElement());
     } catch (Exception e) {
         if (e instanceof InterruptedException || e instanceof InterruptedIOException) {
             Thread.currentThread().interrupt();
@@ -885,7 +941,28 @@ public class DOMConfigurator implements Configurator {
   */
   public void doConfigure(Element element, LoggerRepository repository) {
     this.repository = repository;
-    parse(element);
+    parseInBatch(element);
+  }
+
+  /**
+     Parse <code>element</code> within a batch of the repository if
+     it is a {@link Hierarchy}, so that loggers are linked and
+     listeners notified once all loggers are configured.
+  */
+  private
+  void parseInBatch(Element element) {
+    Hierarchy batch = null;
+    if(repository instanceof Hierarchy) {
+      batch = (Hierarchy) repository;
+      batch.beginBatch();
+    }
+    try {
+      parse(element);
+    } finally {
+      if(batch != null) {
+        batch.commitBatch();
+      }
+    }
   }
 
   
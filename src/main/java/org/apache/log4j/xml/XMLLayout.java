@@ -21,6 +21,7 @@ package org.apache.log4j.xml;
 
 import org.apache.log4j.Layout;
 import org.apache.log4j.helpers.Transform;
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LocationInfo;
 import org.apache.log4j.spi.LoggingEvent;
 
@@ -65,7 +66,7 @@ import java.util.Arrays;
  * @author Ceki  G&uuml;lc&uuml;
  * @since 0.9.0 
  * */
-public class XMLLayout extends Layout {
+public class XMLLayout extends Layout implements EventFieldUsage {
 
   private  final int DEFAULT_SIZE = 256;
   private final int UPPER_LIMIT = 2048;
@@ -213,4 +214,21 @@ public class XMLLayout extends Layout {
   public boolean ignoresThrowable() {
     return false;
   }
+
+  /**
+     Returns the thread name, the NDC and, depending on the
+     <b>LocationInfo</b> and <b>Properties</b> options, the location
+     and the MDC.
+
+     @since 1.2.18 */
+  public int getUsedFields() {
+    int fields = THREAD_NAME | NDC;
+    if (locationInfo) {
+      fields |= LOCATION_INFO;
+    }
+    if (properties) {
+      fields |= MDC;
+    }
+    return fields;
+  }
 }
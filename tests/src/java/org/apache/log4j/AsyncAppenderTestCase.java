@@ -19,8 +19,14 @@ package org.apache.log4j;
 
 import junit.framework.TestCase;
 
+import java.io.StringWriter;
 import java.util.Vector;
 
+import javax.management.MBeanAttributeInfo;
+
+import org.apache.log4j.concurrent.ConcurrentAppender;
+import org.apache.log4j.jmx.AppenderDynamicMBean;
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -258,6 +264,45 @@ public class AsyncAppenderTestCase extends TestCase {
 
 
 
+    /**
+     * Appender safe for concurrent use which does not delay events.
+     */
+    private static final class ConcurrentVectorAppender
+        extends ConcurrentAppender {
+      /**
+       * Appended events.
+       */
+      private final Vector vector = new Vector();
+
+      /**
+       * {@inheritDoc}
+       */
+      protected void append(final LoggingEvent event) {
+        vector.addElement(event);
+      }
+
+      /**
+       * Get appended events.
+       * @return appended events.
+       */
+      public Vector getVector() {
+        return vector;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean requiresLayout() {
+        return false;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void close() {
+      }
+    }
+
     /**
      * Vector appender that can be explicitly blocked.
      */
@@ -336,4 +381,432 @@ public class AsyncAppenderTestCase extends TestCase {
 
 
 
+    /**
+     * Tests that changing the buffer size of a running appender
+     * keeps all the events in order.
+     */
+    public void testSetBufferSizeWhileRunning() {
+        BlockableVectorAppender blockableAppender = new BlockableVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(blockableAppender);
+        async.setBufferSize(5);
+        Logger rootLogger = Logger.getRootLogger();
+        rootLogger.addAppender(async);
+        synchronized(blockableAppender.getMonitor()) {
+            for (int i = 0; i < 4; i++) {
+                rootLogger.info("m" + i);
+            }
+            async.setBufferSize(64);
+            for (int i = 4; i < 40; i++) {
+                rootLogger.info("m" + i);
+            }
+        }
+        async.close();
+        Vector events = blockableAppender.getVector();
+        assertEquals(40, events.size());
+        for (int i = 0; i < 40; i++) {
+            assertEquals("m" + i, ((LoggingEvent) events.get(i)).getMessage());
+        }
+    }
+
+    /**
+     * Tests that events are delivered with a polling wait strategy
+     * and that unknown strategies are ignored.
+     */
+    public void testWaitStrategy() {
+        VectorAppender vectorAppender = new VectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        assertEquals("Blocking", async.getWaitStrategy());
+        async.setWaitStrategy("yielding");
+        assertEquals("Yielding", async.getWaitStrategy());
+        async.setWaitStrategy("Spinning");
+        assertEquals("Yielding", async.getWaitStrategy());
+        async.setBufferSize(4);
+        async.addAppender(vectorAppender);
+        Logger rootLogger = Logger.getRootLogger();
+        rootLogger.addAppender(async);
+        for (int i = 0; i < 20; i++) {
+            rootLogger.info("m" + i);
+        }
+        async.close();
+        Vector events = vectorAppender.getVector();
+        assertEquals(20, events.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("m" + i, ((LoggingEvent) events.get(i)).getMessage());
+        }
+    }
+
+    /**
+     * Tests that events of each logger, and of each MDC value, keep
+     * their order with several dispatchers.
+     */
+    public void testDispatchers() {
+        ConcurrentVectorAppender vectorAppender = new ConcurrentVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.setDispatchers(4);
+        async.setBufferSize(8);
+        async.activateOptions();
+        async.addAppender(vectorAppender);
+        Logger rootLogger = Logger.getRootLogger();
+        rootLogger.addAppender(async);
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 8; j++) {
+                Logger.getLogger("p" + j).info(new Integer(i));
+            }
+        }
+        async.setPartitionKey("session");
+        for (int i = 100; i < 200; i++) {
+            for (int j = 0; j < 8; j++) {
+                MDC.put("session", "p" + j);
+                Logger.getLogger("x").info(new Integer(i));
+            }
+        }
+        MDC.remove("session");
+        async.close();
+
+        Vector events = vectorAppender.getVector();
+        assertEquals(1600, events.size());
+        //  partitions are not ordered with respect to each other,
+        //     so the two routings are checked separately.
+        int[] byLogger = new int[8];
+        int[] byKey = new int[8];
+        for (int j = 0; j < 8; j++) {
+            byKey[j] = 100;
+        }
+        for (int i = 0; i < events.size(); i++) {
+            LoggingEvent event = (LoggingEvent) events.get(i);
+            int n = ((Integer) event.getMessage()).intValue();
+            int[] last = (n < 100) ? byLogger : byKey;
+            String key = (n < 100) ? event.getLoggerName() : (String) event.getMDC("session");
+            int j = Integer.parseInt(key.substring(1));
+            assertEquals(last[j], n);
+            last[j] = n + 1;
+        }
+    }
+
+    /**
+     * Tests that events which do not fit in the buffer are written
+     * to the spill file and appended in order.
+     */
+    public void testSpillFile() {
+        java.io.File file = new java.io.File("output/asyncspill.bin");
+        file.delete();
+        BlockableVectorAppender blockableAppender = new BlockableVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(blockableAppender);
+        async.setBufferSize(5);
+        async.setBlocking(false);
+        async.setSpillFile(file.getPath());
+        async.setMaxSpillSize("1MB");
+        async.activateOptions();
+        Logger rootLogger = Logger.getRootLogger();
+        rootLogger.addAppender(async);
+        synchronized(blockableAppender.getMonitor()) {
+            for (int i = 0; i < 30; i++) {
+                rootLogger.info("m" + i);
+            }
+            assertTrue(async.getSpilledCount() > 0);
+        }
+        async.close();
+        assertEquals(async.getSpilledCount(), async.getReplayedCount());
+        assertEquals(0, async.getSpillBacklog());
+        Vector events = blockableAppender.getVector();
+        assertEquals(30, events.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals("m" + i, ((LoggingEvent) events.get(i)).getRenderedMessage());
+        }
+        file.delete();
+    }
+
+    /**
+     * Tests that only the fields read by the layouts are captured
+     * and that they hold the values of the logging thread.
+     */
+    public void testSelectiveCapture() {
+        StringWriter writer = new StringWriter();
+        WriterAppender writerAppender =
+            new WriterAppender(new PatternLayout("%x %m%n"), writer);
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(writerAppender);
+        assertEquals(EventFieldUsage.ALL, async.getUsedFields());
+        async.setSelectiveCapture(true);
+        assertEquals(EventFieldUsage.NDC, async.getUsedFields());
+        VectorAppender vectorAppender = new VectorAppender();
+        async.addAppender(vectorAppender);
+        assertEquals(EventFieldUsage.ALL, async.getUsedFields());
+        async.removeAppender(vectorAppender);
+        assertEquals(EventFieldUsage.NDC, async.getUsedFields());
+
+        Logger rootLogger = Logger.getRootLogger();
+        rootLogger.addAppender(async);
+        NDC.push("ctx");
+        rootLogger.info("m0");
+        rootLogger.info(new Integer(1));
+        NDC.pop();
+        async.close();
+        assertEquals("ctx m0" + Layout.LINE_SEP + "ctx 1" + Layout.LINE_SEP,
+            writer.toString());
+    }
+
+    /**
+     * Tests that priority events are not discarded, that low level
+     * events are shed first and that the summary counts each level.
+     */
+    public void testPriorityLevel() throws InterruptedException {
+        BlockableVectorAppender blockableAppender = new BlockableVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(blockableAppender);
+        async.setBufferSize(6);
+        async.setBlocking(false);
+        async.setPriorityLevel(Level.ERROR);
+        async.setShedLevel(Level.DEBUG);
+        async.activateOptions();
+        Logger rootLogger = Logger.getRootLogger();
+        rootLogger.addAppender(async);
+        synchronized(blockableAppender.getMonitor()) {
+            //  let the dispatcher block on a first event
+            rootLogger.warn("w");
+            Thread.sleep(500);
+            for (int i = 0; i < 10; i++) {
+                rootLogger.debug("d" + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                rootLogger.info("i" + i);
+            }
+            for (int i = 0; i < 5; i++) {
+                rootLogger.error("e" + i);
+            }
+        }
+        async.close();
+
+        Vector events = blockableAppender.getVector();
+        int debug = 0;
+        int info = 0;
+        int error = 0;
+        String summary = "";
+        for (int i = 0; i < events.size(); i++) {
+            LoggingEvent event = (LoggingEvent) events.get(i);
+            String msg = event.getRenderedMessage();
+            if (msg.startsWith("Discarded")) {
+                summary += msg;
+            } else if (event.getLevel() == Level.DEBUG) {
+                debug++;
+            } else if (event.getLevel() == Level.INFO) {
+                info++;
+            } else if (event.getLevel() == Level.ERROR) {
+                assertEquals("e" + error, msg);
+                error++;
+            }
+        }
+        assertEquals(5, error);
+        //  debug events leave room for 3 info events
+        assertEquals(3, debug);
+        assertEquals(3, info);
+        assertTrue(summary, summary.indexOf("(INFO: ") > 0);
+        assertTrue(summary, summary.indexOf("DEBUG: ") > 0);
+    }
+
+    /**
+     * Tests the depth, discard and latency statistics and their
+     * exposure through AppenderDynamicMBean.
+     */
+    public void testStatistics() throws Exception {
+        BlockableVectorAppender blockableAppender = new BlockableVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.setName("async");
+        async.addAppender(blockableAppender);
+        async.setBufferSize(4);
+        async.setBlocking(false);
+        async.activateOptions();
+        Logger.getRootLogger().addAppender(async);
+        Logger a = Logger.getLogger("a");
+        Logger b = Logger.getLogger("b");
+        synchronized(blockableAppender.getMonitor()) {
+            //  let the dispatcher block on a first event
+            a.warn("w");
+            Thread.sleep(200);
+            for (int i = 0; i < 10; i++) {
+                a.info("a" + i);
+            }
+            b.info("b");
+            assertEquals(4, async.getQueueDepth());
+        }
+        async.close();
+
+        assertEquals(0, async.getQueueDepth());
+        assertEquals(4, async.getQueueHighWaterMark());
+        assertEquals(7, async.getDiscardedCount());
+        assertEquals("a=6, b=1", async.getDiscardedByLogger());
+        assertEquals(0, async.getBlockedCount());
+        long[] counts = async.getQueueLatencyHistogram();
+        assertEquals(async.getQueueLatencyBounds().length + 1, counts.length);
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+        }
+        assertEquals(5, total);
+        assertTrue(async.getQueueLatency99thPercentile() >= 100);
+
+        AppenderDynamicMBean mbean = new AppenderDynamicMBean(async);
+        MBeanAttributeInfo[] attributes = mbean.getMBeanInfo().getAttributes();
+        String type = null;
+        for (int i = 0; i < attributes.length; i++) {
+            if (attributes[i].getName().equals("queueLatencyHistogram")) {
+                type = attributes[i].getType();
+            }
+        }
+        assertEquals(long[].class.getName(), type);
+        assertEquals(new Long(7), mbean.getAttribute("discardedCount"));
+        assertEquals("a=6, b=1", mbean.getAttribute("discardedByLogger"));
+
+        async.resetStatistics();
+        assertEquals(0, async.getQueueHighWaterMark());
+        assertEquals(0, async.getDiscardedCount());
+        assertEquals("", async.getDiscardedByLogger());
+        assertEquals("", async.getQueueLatency());
+    }
+
+    /**
+     * Tests that the time spent waiting for room in the buffer is
+     * counted.
+     */
+    public void testBlockedTime() throws Exception {
+        final BlockableVectorAppender blockableAppender = new BlockableVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(blockableAppender);
+        async.setBufferSize(1);
+        async.activateOptions();
+        Logger.getRootLogger().addAppender(async);
+        Thread holder = new Thread() {
+            public void run() {
+                synchronized(blockableAppender.getMonitor()) {
+                    try {
+                        Thread.sleep(600);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        };
+        holder.start();
+        Thread.sleep(100);
+        Logger logger = Logger.getLogger("a");
+        //  taken by the dispatcher, which then blocks
+        logger.info("w");
+        Thread.sleep(100);
+        //  fills the buffer
+        logger.info("x");
+        //  waits for the holder to let the dispatcher go
+        logger.info("y");
+        holder.join();
+        async.close();
+
+        assertEquals(3, blockableAppender.getVector().size());
+        assertEquals(1, async.getBlockedCount());
+        assertTrue(async.getBlockedTime() >= 100);
+    }
+
+    /**
+     * Appender which counts the events passed to doAppend.
+     */
+    private static class CountingVectorAppender extends VectorAppender {
+        private int count;
+
+        public void doAppend(final LoggingEvent event) {
+            synchronized(this) {
+                count++;
+            }
+            super.doAppend(event);
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Appender which counts the batches it is given.
+     */
+    private static class BatchVectorAppender extends VectorAppender {
+        private int batches;
+
+        protected void append(final LoggingEvent[] events, final int count) {
+            batches++;
+            super.append(events, count);
+        }
+
+        public synchronized int getBatches() {
+            return batches;
+        }
+    }
+
+    /**
+     * Tests that the batches bypass no override of doAppend.
+     */
+    public void testDoAppendOverride() {
+        assertFalse(AsyncAppender.isBatched(new VectorAppender()));
+        assertFalse(AsyncAppender.isBatched(new CountingVectorAppender()));
+        assertTrue(AsyncAppender.isBatched(new BatchVectorAppender()));
+
+        CountingVectorAppender counting = new CountingVectorAppender();
+        BatchVectorAppender batch = new BatchVectorAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(counting);
+        async.addAppender(batch);
+        async.activateOptions();
+        Logger.getRootLogger().addAppender(async);
+        Logger logger = Logger.getLogger("a");
+        for (int i = 0; i < 100; i++) {
+            logger.info("m" + i);
+        }
+        async.close();
+
+        assertEquals(100, counting.getCount());
+        assertEquals(100, counting.getVector().size());
+        assertEquals(100, batch.getVector().size());
+        assertTrue(batch.getBatches() > 0);
+    }
+
+    /**
+     * Writer appender which counts the events passed to append.
+     */
+    private static class CountingWriterAppender extends WriterAppender {
+        private int count;
+
+        public CountingWriterAppender() {
+            super(new SimpleLayout(), new StringWriter());
+        }
+
+        public synchronized void append(final LoggingEvent event) {
+            count++;
+            super.append(event);
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Tests that the batches bypass no override of the single
+     * event append below the batch append.
+     */
+    public void testAppendOverride() {
+        assertTrue(AsyncAppender.isBatched(
+            new WriterAppender(new SimpleLayout(), new StringWriter())));
+        assertFalse(AsyncAppender.isBatched(new CountingWriterAppender()));
+
+        CountingWriterAppender counting = new CountingWriterAppender();
+        AsyncAppender async = new AsyncAppender();
+        async.addAppender(counting);
+        async.activateOptions();
+        Logger.getRootLogger().addAppender(async);
+        Logger logger = Logger.getLogger("a");
+        for (int i = 0; i < 10; i++) {
+            logger.info("m" + i);
+        }
+        async.close();
+
+        assertEquals(10, counting.getCount());
+    }
+
 }
@@ -37,6 +37,7 @@ public class CoreTestSuite {
         s.addTestSuite(org.apache.log4j.PriorityTest.class);
         s.addTestSuite(org.apache.log4j.CategoryTest.class);
         s.addTestSuite(org.apache.log4j.FileAppenderTest.class);
+        s.addTestSuite(org.apache.log4j.MemoryMappedFileAppenderTest.class);
         s.addTestSuite(org.apache.log4j.LogManagerTest.class);
         s.addTestSuite(org.apache.log4j.helpers.LogLogTest.class);
         s.addTestSuite(org.apache.log4j.LayoutTest.class);
@@ -61,6 +62,10 @@ public class CoreTestSuite {
         s.addTestSuite(org.apache.log4j.pattern.NameAbbreviatorTest.class);
         s.addTestSuite(org.apache.log4j.pattern.PatternParserTest.class);
         s.addTestSuite(org.apache.log4j.helpers.UtilLoggingLevelTest.class);
+        s.addTestSuite(org.apache.log4j.LoggerRegistryTest.class);
+        s.addTestSuite(org.apache.log4j.concurrent.ConcurrentWriterAppenderTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.FileChannelWriterTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.BackgroundExecutorTest.class);
         return s;
     }
 }
@@ -508,5 +508,112 @@ public class DRFATestCase extends TestCase {
 		assertEquals(DailyRollingFileAppender.TOP_OF_WEEK, checkPeriod);
     }
 
+    /**
+     * Tests that the rolled over file gets its dated name
+     * when renamed in the background.
+     *
+     * @throws IOException if IO error during test.
+     */
+    public void testBackgroundRollover() throws IOException {
+        String filename = "output/drfa_backgroundRollover.log";
+        String pattern = "'.'yyyy-MM-dd-HH-mm";
+        new File(filename).delete();
+
+        DailyRollingFileAppender appender =
+                new DailyRollingFileAppender(new SimpleLayout(),
+                        filename,
+                        pattern);
+        appender.setBackgroundRollover(true);
+        //   the appender dates the current file after its modification time
+        Date first = new Date(new File(filename).lastModified());
+        Logger logger = Logger.getLogger(DRFATestCase.class);
+        appender.append(new org.apache.log4j.spi.LoggingEvent(
+                null, logger, Level.INFO, "Hello, World", null));
+
+        File firstFile =
+                new File(filename + new SimpleDateFormat(pattern).format(first));
+        //   an existing file of that name has to be replaced
+        firstFile.createNewFile();
+        appender.now.setTime(first.getTime() + 120000);
+        appender.rollOver();
+        appender.append(new org.apache.log4j.spi.LoggingEvent(
+                null, logger, Level.INFO, "Goodbye", null));
+        appender.close();
+
+        assertEquals(("INFO - Hello, World" + Layout.LINE_SEP).length(),
+                firstFile.length());
+        assertEquals(("INFO - Goodbye" + Layout.LINE_SEP).length(),
+                new File(filename).length());
+        assertFalse(new File(filename + ".rolling1").exists());
+        //   the dated name changes with every run
+        assertTrue(firstFile.delete());
+    }
+
+    /**
+     * Tests that the rolled over file is compressed
+     * under its dated name.
+     *
+     * @throws IOException if IO error during test.
+     */
+    public void testCompression() throws IOException {
+        String filename = "output/drfa_compression.log";
+        String pattern = "'.'yyyy-MM-dd-HH-mm";
+        new File(filename).delete();
+
+        DailyRollingFileAppender appender =
+                new DailyRollingFileAppender(new SimpleLayout(),
+                        filename,
+                        pattern);
+        appender.setCompression("deflate");
+        Date first = new Date(new File(filename).lastModified());
+        Logger logger = Logger.getLogger(DRFATestCase.class);
+        appender.append(new org.apache.log4j.spi.LoggingEvent(
+                null, logger, Level.INFO, "Hello, World", null));
+        appender.now.setTime(first.getTime() + 120000);
+        appender.rollOver();
+        appender.close();
 
+        String dated = filename + new SimpleDateFormat(pattern).format(first);
+        assertFalse(new File(dated).exists());
+        java.io.InputStream in = new java.util.zip.InflaterInputStream(
+                new FileInputStream(dated + ".deflate"));
+        byte[] buf = new byte[100];
+        int count = in.read(buf);
+        in.close();
+        assertEquals("INFO - Hello, World" + Layout.LINE_SEP,
+                new String(buf, 0, count));
+        //   the dated name changes with every run
+        assertTrue(new File(dated + ".deflate").delete());
+    }
+
+    /**
+     * Tests that a rolled over file left with a temporary name
+     * by a previous process gets its dated name on activation.
+     *
+     * @throws IOException if IO error during test.
+     */
+    public void testRecoverDetached() throws IOException {
+        String filename = "output/drfa_recover.log";
+        String pattern = "'.'yyyy-MM-dd-HH";
+        File detached = new File(filename + ".rolling1");
+        FileOutputStream os = new FileOutputStream(detached);
+        os.write("Hello".getBytes());
+        os.close();
+        long twoHoursAgo = System.currentTimeMillis() - 2 * 3600 * 1000;
+        detached.setLastModified(twoHoursAgo);
+        File dated = new File(filename
+                + new SimpleDateFormat(pattern).format(new Date(detached.lastModified())));
+        dated.delete();
+
+        DailyRollingFileAppender appender =
+                new DailyRollingFileAppender(new SimpleLayout(),
+                        filename,
+                        pattern);
+        appender.close();
+
+        assertFalse(detached.exists());
+        assertEquals(5, dated.length());
+        //   the dated name changes with every run
+        assertTrue(dated.delete());
+    }
 }
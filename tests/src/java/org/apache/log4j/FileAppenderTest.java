@@ -19,9 +19,19 @@ package org.apache.log4j;
 
 import junit.framework.TestCase;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
 
 import java.lang.reflect.Method;
+import java.util.Vector;
+
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.StringMatchFilter;
 
 
 /**
@@ -83,4 +93,210 @@ public class FileAppenderTest extends TestCase {
     Priority debug = Level.DEBUG;
     assertTrue(appender.isAsSevereAsThreshold(debug));
   }
+
+  /**
+   * Tests that a batch goes through the threshold and the filters
+   * and leaves the array of the caller untouched.
+   * @throws IOException if IO error reading the file.
+   */
+  public void testBatchAppend() throws IOException {
+    File file = new File("output/batch.log");
+    file.delete();
+
+    FileAppender appender = new FileAppender();
+    appender.setFile(file.getPath());
+    appender.setLayout(new PatternLayout("%m%n"));
+    appender.setThreshold(Level.INFO);
+    StringMatchFilter filter = new StringMatchFilter();
+    filter.setStringToMatch("deny");
+    filter.setAcceptOnMatch(false);
+    appender.addFilter(filter);
+    appender.activateOptions();
+
+    Logger logger = Logger.getLogger(FileAppenderTest.class);
+    LoggingEvent[] events = new LoggingEvent[] {
+      new LoggingEvent(null, logger, Level.INFO, "1", null),
+      new LoggingEvent(null, logger, Level.DEBUG, "2", null),
+      new LoggingEvent(null, logger, Level.WARN, "deny", null),
+      new LoggingEvent(null, logger, Level.ERROR, "3", null),
+      new LoggingEvent(null, logger, Level.ERROR, "4", null)
+    };
+    LoggingEvent[] copy = (LoggingEvent[]) events.clone();
+    appender.doAppend(events, 4);
+    appender.close();
+
+    for (int i = 0; i < events.length; i++) {
+      assertSame(copy[i], events[i]);
+    }
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    assertEquals("1", reader.readLine());
+    assertEquals("3", reader.readLine());
+    assertNull(reader.readLine());
+    reader.close();
+  }
+
+  /**
+   * Tests that the writer is flushed once per batch.
+   */
+  public void testBatchFlush() {
+    final int[] flushes = new int[1];
+    StringWriter writer = new StringWriter() {
+      public void flush() {
+        flushes[0]++;
+      }
+    };
+    WriterAppender appender =
+      new WriterAppender(new PatternLayout("%m%n"), writer);
+
+    Logger logger = Logger.getLogger(FileAppenderTest.class);
+    LoggingEvent[] events = new LoggingEvent[10];
+    for (int i = 0; i < events.length; i++) {
+      events[i] = new LoggingEvent(null, logger, Level.INFO, "m" + i, null);
+    }
+    appender.doAppend(events[0]);
+    assertEquals(1, flushes[0]);
+    appender.doAppend(events, events.length);
+    assertEquals(2, flushes[0]);
+    assertEquals(11, writer.toString().length() / 3);
+
+    appender.setImmediateFlush(false);
+    appender.doAppend(events, events.length);
+    assertEquals(2, flushes[0]);
+  }
+
+  /**
+   * Tests that the writer is flushed once enough characters
+   * are written or an important event is written.
+   */
+  public void testFlushSizeAndLevel() {
+    final int[] flushes = new int[1];
+    StringWriter writer = new StringWriter() {
+      public void flush() {
+        flushes[0]++;
+      }
+    };
+    WriterAppender appender =
+      new WriterAppender(new PatternLayout("%m%n"), writer);
+    appender.setFlushSize(10);
+    appender.setFlushLevel(Level.ERROR);
+    assertFalse(appender.getImmediateFlush());
+
+    Logger logger = Logger.getLogger(FileAppenderTest.class);
+    int lineLength = ("m0" + Layout.LINE_SEP).length();
+    int perFlush = (10 + lineLength - 1) / lineLength;
+    for (int i = 0; i < perFlush - 1; i++) {
+      appender.doAppend(
+        new LoggingEvent(null, logger, Level.INFO, "m" + i, null));
+    }
+    assertEquals(0, flushes[0]);
+    appender.doAppend(new LoggingEvent(null, logger, Level.INFO, "m9", null));
+    assertEquals(1, flushes[0]);
+
+    appender.doAppend(new LoggingEvent(null, logger, Level.WARN, "m0", null));
+    assertEquals(1, flushes[0]);
+    appender.doAppend(new LoggingEvent(null, logger, Level.ERROR, "m1", null));
+    assertEquals(2, flushes[0]);
+    appender.doAppend(new LoggingEvent(null, logger, Level.FATAL, "m2", null));
+    assertEquals(3, flushes[0]);
+  }
+
+  /**
+   * Tests that written events are flushed in the background
+   * once the flush interval elapsed.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public void testFlushInterval() throws InterruptedException {
+    final int[] flushes = new int[1];
+    StringWriter writer = new StringWriter() {
+      public void flush() {
+        synchronized (flushes) {
+          flushes[0]++;
+          flushes.notifyAll();
+        }
+      }
+    };
+    WriterAppender appender =
+      new WriterAppender(new PatternLayout("%m%n"), writer);
+    appender.setFlushInterval(50);
+    assertFalse(appender.getImmediateFlush());
+
+    Logger logger = Logger.getLogger(FileAppenderTest.class);
+    long start = System.currentTimeMillis();
+    appender.doAppend(new LoggingEvent(null, logger, Level.INFO, "m0", null));
+    appender.doAppend(new LoggingEvent(null, logger, Level.INFO, "m1", null));
+    synchronized (flushes) {
+      while (flushes[0] == 0 && System.currentTimeMillis() - start < 5000) {
+        flushes.wait(100);
+      }
+    }
+    assertEquals(1, flushes[0]);
+    assertTrue(System.currentTimeMillis() - start >= 50);
+
+    // nothing left to flush
+    Thread.sleep(150);
+    assertEquals(1, flushes[0]);
+
+    appender.close();
+    assertEquals(0, org.apache.log4j.helpers.Flusher.getClientCount());
+  }
+
+  /**
+   * Tests that a rolling appender writing through a file channel
+   * rolls over and writes its header and footer.
+   * @throws IOException if IO error reading the files.
+   */
+  public void testChannelIO() throws IOException {
+    File file = new File("output/channel.log");
+    File backup = new File("output/channel.log.1");
+    file.delete();
+    backup.delete();
+
+    RollingFileAppender appender = new RollingFileAppender();
+    appender.setFile(file.getPath());
+    appender.setAppend(false);
+    appender.setChannelIO(true);
+    appender.setEncoding("UTF-8");
+    appender.setMaximumFileSize(100);
+    appender.setLayout(new PatternLayout("%m%n") {
+        public String getHeader() {
+          return "header\n";
+        }
+
+        public String getFooter() {
+          return "footer\n";
+        }
+      });
+    appender.activateOptions();
+
+    Logger logger = Logger.getLogger(FileAppenderTest.class);
+    for (int i = 0; i < 20; i++) {
+      appender.doAppend(
+        new LoggingEvent(null, logger, Level.INFO, "caf\u00e9 " + i, null));
+    }
+    appender.close();
+
+    String[] first = readLines(backup);
+    assertEquals("header", first[0]);
+    assertEquals("caf\u00e9 0", first[1]);
+    String[] second = readLines(file);
+    assertEquals("header", second[0]);
+    assertEquals("caf\u00e9 19", second[second.length - 2]);
+    assertEquals("footer", second[second.length - 1]);
+    assertEquals(20, first.length + second.length - 3);
+  }
+
+  private static String[] readLines(File file) throws IOException {
+    BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    Vector lines = new Vector();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lines.addElement(line);
+    }
+    reader.close();
+    String[] result = new String[lines.size()];
+    lines.copyInto(result);
+    return result;
+  }
 }
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import junit.framework.TestCase;
+import org.apache.log4j.spi.RootLogger;
+
+
+/**
+ *    Tests for LoggerRegistry.
+ *
+ **/
+public class LoggerRegistryTest extends TestCase {
+  /**
+   * Create new instance of LoggerRegistryTest.
+   * @param testName test name
+   */
+  public LoggerRegistryTest(final String testName) {
+    super(testName);
+  }
+
+  /**
+   * Tests put, get and remove across table growth.
+   */
+  public void testPutGetRemove() {
+    LoggerRegistry registry = new LoggerRegistry();
+    Logger[] loggers = new Logger[1000];
+    for (int i = 0; i < loggers.length; i++) {
+      loggers[i] = new Logger("logger." + i);
+      registry.put(loggers[i].getName(), loggers[i]);
+    }
+    assertEquals(loggers.length, registry.size());
+    for (int i = 0; i < loggers.length; i++) {
+      assertSame(loggers[i], registry.get("logger." + i));
+    }
+    assertNull(registry.get("logger.x"));
+
+    for (int i = 0; i < loggers.length; i += 2) {
+      registry.remove("logger." + i);
+    }
+    assertEquals(loggers.length / 2, registry.size());
+    for (int i = 0; i < loggers.length; i++) {
+      if (i % 2 == 0) {
+        assertNull(registry.get("logger." + i));
+      } else {
+        assertSame(loggers[i], registry.get("logger." + i));
+      }
+    }
+
+    registry.clear();
+    assertEquals(0, registry.size());
+    assertNull(registry.get("logger.1"));
+  }
+
+  /**
+   * Tests that Hierarchy returns existing loggers from the registry.
+   */
+  public void testHierarchyLookup() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    Logger abc = h.getLogger("a.b.c");
+    Logger a = h.getLogger("a");
+    assertSame(abc, h.getLogger("a.b.c"));
+    assertSame(a, h.exists("a"));
+    assertNull(h.exists("a.b"));
+    assertSame(a, abc.getParent());
+
+    h.clear();
+    assertNull(h.exists("a"));
+    assertNotSame(a, h.getLogger("a"));
+  }
+}
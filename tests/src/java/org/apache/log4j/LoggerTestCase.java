@@ -22,6 +22,9 @@ import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.RootLogger;
 import org.apache.log4j.spi.LoggerRepository;
 import org.apache.log4j.spi.HierarchyEventListener;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.TurboFilter;
+import org.apache.log4j.varia.MDCMatchTurboFilter;
 
 import java.util.Enumeration;
 import java.util.Locale;
@@ -208,6 +211,100 @@ public class LoggerTestCase extends TestCase {
   }
 
 
+  /**
+   * Tests that the appenders of a logger follow changes of the
+   * appenders and additivity of its ancestors.
+   * @since 1.2.18
+   */
+  public void testAppenderChainUpdates() {
+    Logger abc = Logger.getLogger("a.b.c");
+    CountingAppender caRoot = new CountingAppender();
+    Logger.getRootLogger().addAppender(caRoot);
+    abc.debug(MSG);
+    assertEquals(1, caRoot.counter);
+
+    Logger ab = Logger.getLogger("a.b");
+    CountingAppender caAB = new CountingAppender();
+    ab.addAppender(caAB);
+    abc.debug(MSG);
+    assertEquals(2, caRoot.counter);
+    assertEquals(1, caAB.counter);
+
+    ab.setAdditivity(false);
+    abc.debug(MSG);
+    assertEquals(2, caRoot.counter);
+    assertEquals(2, caAB.counter);
+
+    ab.removeAppender(caAB);
+    abc.debug(MSG);
+    assertEquals(2, caRoot.counter);
+    assertEquals(2, caAB.counter);
+
+    ab.setAdditivity(true);
+    abc.debug(MSG);
+    assertEquals(3, caRoot.counter);
+  }
+
+  /**
+   * Tests that a logger is not enabled for levels below the thresholds
+   * of all of its appenders.
+   * @since 1.2.18
+   */
+  public void testAppenderThreshold() {
+    Logger root = Logger.getRootLogger();
+    Logger ab = Logger.getLogger("a.b");
+    assertTrue(ab.isDebugEnabled());
+
+    CountingAppender ca1 = new CountingAppender();
+    ca1.setThreshold(Level.INFO);
+    root.addAppender(ca1);
+    assertFalse(ab.isDebugEnabled());
+    assertTrue(ab.isInfoEnabled());
+    ab.debug(MSG);
+    ab.info(MSG);
+    assertEquals(1, ca1.counter);
+
+    CountingAppender ca2 = new CountingAppender();
+    ca2.setThreshold(Level.WARN);
+    Logger.getLogger("a").addAppender(ca2);
+    assertFalse(ab.isDebugEnabled());
+    assertTrue(ab.isInfoEnabled());
+
+    ca1.setThreshold(Level.ERROR);
+    assertFalse(ab.isInfoEnabled());
+    assertTrue(ab.isEnabledFor(Level.WARN));
+
+    ca2.setThreshold(null);
+    assertTrue(ab.isDebugEnabled());
+    assertTrue(ab.isTraceEnabled() == Level.TRACE.isGreaterOrEqual(ab.getEffectiveLevel()));
+  }
+
+  /**
+   * Tests that an appender detached while an event is being dispatched
+   * does not disturb the dispatch of that event.
+   * @since 1.2.18
+   */
+  public void testRemoveAppenderDuringDispatch() {
+    final Logger a = Logger.getLogger("a");
+    CountingAppender ca = new CountingAppender();
+    AppenderSkeleton remover = new CountingAppender() {
+      public void append(LoggingEvent event) {
+        super.append(event);
+        a.removeAppender(this);
+      }
+    };
+    a.addAppender(remover);
+    a.addAppender(ca);
+
+    a.debug(MSG);
+    assertEquals(1, ((CountingAppender) remover).counter);
+    assertEquals(1, ca.counter);
+    a.debug(MSG);
+    assertEquals(1, ((CountingAppender) remover).counter);
+    assertEquals(2, ca.counter);
+    assertFalse(a.isAttached(remover));
+  }
+
   public
   void testDisable1() {
     CountingAppender caRoot = new CountingAppender();
@@ -329,6 +426,309 @@ public class LoggerTestCase extends TestCase {
     assertSame(a0, a1);
   }
 
+  /**
+   * Tests that effective levels follow level changes of ancestors,
+   * including ancestors created after their descendants.
+   * @since 1.2.18
+   */
+  public void testEffectiveLevelUpdates() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.ERROR));
+    Logger abc = h.getLogger("a.b.c");
+    Logger x = h.getLogger("x");
+    assertSame(Level.ERROR, abc.getEffectiveLevel());
+
+    Logger a = h.getLogger("a");
+    a.setLevel(Level.INFO);
+    assertSame(Level.INFO, abc.getEffectiveLevel());
+    assertSame(Level.ERROR, x.getEffectiveLevel());
+
+    Logger ab = h.getLogger("a.b");
+    assertSame(Level.INFO, ab.getEffectiveLevel());
+    ab.setLevel(Level.DEBUG);
+    assertSame(Level.DEBUG, abc.getEffectiveLevel());
+    assertTrue(abc.isDebugEnabled());
+
+    h.getRootLogger().setLevel(Level.WARN);
+    assertSame(Level.WARN, x.getEffectiveLevel());
+    assertSame(Level.DEBUG, abc.getEffectiveLevel());
+
+    h.resetConfiguration();
+    assertSame(Level.DEBUG, x.getEffectiveLevel());
+    assertSame(Level.DEBUG, abc.getEffectiveLevel());
+    a.setPriority(Level.FATAL);
+    assertSame(Level.FATAL, abc.getEffectiveLevel());
+    assertFalse(abc.isEnabledFor(Level.ERROR));
+  }
+
+  /**
+   * Tests that loggers created during a batch are linked and that
+   * listeners are notified when the batch commits.
+   * @since 1.2.18
+   */
+  public void testBatch() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.ERROR));
+    CountingHierarchyEventListener listener = new CountingHierarchyEventListener();
+    h.addHierarchyEventListener(listener);
+    Logger abc = h.getLogger("a.b.c");
+
+    h.beginBatch();
+    Logger abcd = h.getLogger("a.b.c.d");
+    Logger abx = h.getLogger("a.b.x");
+    Logger a = h.getLogger("a");
+    Logger ab = h.getLogger("a.b");
+    a.setLevel(Level.INFO);
+    CountingAppender ca = new CountingAppender();
+    ab.addAppender(ca);
+    assertEquals(0, listener.getAddEventCount());
+    h.beginBatch();
+    h.commitBatch();
+    assertEquals(0, listener.getAddEventCount());
+    h.commitBatch();
+
+    assertEquals(1, listener.getAddEventCount());
+    assertSame(h.getRootLogger(), a.getParent());
+    assertSame(a, ab.getParent());
+    assertSame(ab, abc.getParent());
+    assertSame(ab, abx.getParent());
+    assertSame(abc, abcd.getParent());
+    assertSame(Level.INFO, abcd.getEffectiveLevel());
+    abcd.info(MSG);
+    abx.debug(MSG);
+    assertEquals(1, ca.counter);
+  }
+
+  /**
+   * Tests that only unconfigured leaf loggers are evicted once the
+   * logger capacity is exceeded.
+   * @since 1.2.18
+   */
+  public void testLoggerCapacity() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.ERROR));
+    h.setLoggerCapacity(8);
+    Logger tenants = h.getLogger("tenant");
+    tenants.setLevel(Level.INFO);
+    Logger configured = h.getLogger("tenant.configured");
+    configured.setLevel(Level.DEBUG);
+    Logger parent = h.getLogger("tenant.parent");
+    h.getLogger("tenant.parent.child").setAdditivity(false);
+    for (int i = 0; i < 20; i++) {
+      Logger l = h.getLogger("tenant.t" + i + ".session");
+      assertSame(Level.INFO, l.getEffectiveLevel());
+    }
+
+    assertTrue(h.getLiveLoggerCount() <= 8);
+    assertTrue(h.getEvictedLoggerCount() >= 16);
+    assertSame(tenants, h.exists("tenant"));
+    assertSame(configured, h.exists("tenant.configured"));
+    assertSame(parent, h.exists("tenant.parent"));
+    assertNotNull(h.exists("tenant.t19.session"));
+    assertNull(h.exists("tenant.t0.session"));
+
+    Logger recreated = h.getLogger("tenant.t0.session");
+    assertSame(tenants, recreated.getParent());
+    Logger t0 = h.getLogger("tenant.t0");
+    assertSame(t0, recreated.getParent());
+    tenants.setLevel(Level.WARN);
+    assertSame(Level.WARN, recreated.getEffectiveLevel());
+  }
+
+  /**
+   * Tests that a level installed for the current thread enables
+   * requests of that thread only.
+   * @since 1.2.18
+   */
+  public void testThreadLevel() throws InterruptedException {
+    final Logger a = Logger.getLogger("a");
+    a.setLevel(Level.WARN);
+    CountingAppender ca = new CountingAppender();
+    a.addAppender(ca);
+    assertNull(LogManager.getThreadLevel());
+
+    LogManager.setThreadLevel(Level.DEBUG);
+    try {
+      assertSame(Level.DEBUG, LogManager.getThreadLevel());
+      assertTrue(a.isDebugEnabled());
+      assertFalse(a.isTraceEnabled());
+      a.debug(MSG);
+      a.trace(MSG);
+      assertEquals(1, ca.counter);
+
+      final boolean[] enabled = new boolean[1];
+      Thread other = new Thread() {
+        public void run() {
+          enabled[0] = a.isDebugEnabled();
+          a.debug(MSG);
+        }
+      };
+      other.start();
+      other.join();
+      assertFalse(enabled[0]);
+      assertEquals(1, ca.counter);
+    } finally {
+      LogManager.removeThreadLevel();
+    }
+
+    assertNull(LogManager.getThreadLevel());
+    assertFalse(a.isDebugEnabled());
+    a.debug(MSG);
+    assertEquals(1, ca.counter);
+  }
+
+  /**
+   * Tests that runWithThreadLevel restores the previous level.
+   * @since 1.2.18
+   */
+  public void testRunWithThreadLevel() {
+    final Logger a = Logger.getLogger("a");
+    a.setLevel(Level.WARN);
+    final boolean[] enabled = new boolean[2];
+    LogManager.setThreadLevel(Level.INFO);
+    try {
+      LogManager.runWithThreadLevel(Level.DEBUG, new Runnable() {
+        public void run() {
+          enabled[0] = a.isDebugEnabled();
+        }
+      });
+      enabled[1] = a.isDebugEnabled();
+      assertSame(Level.INFO, LogManager.getThreadLevel());
+    } finally {
+      LogManager.removeThreadLevel();
+    }
+    assertTrue(enabled[0]);
+    assertFalse(enabled[1]);
+    assertEquals(0, Category.getThreadLevelCount());
+  }
+
+  /**
+   * Tests that the level of a thread which ended without removing
+   * it is forgotten.
+   * @since 1.2.18
+   */
+  public void testEndedThreadLevel() throws InterruptedException {
+    Logger a = Logger.getLogger("a");
+    a.setLevel(Level.WARN);
+    Thread other = new Thread() {
+      public void run() {
+        LogManager.setThreadLevel(Level.DEBUG);
+      }
+    };
+    other.start();
+    other.join();
+    assertEquals(1, Category.getThreadLevelCount());
+    Thread.sleep(1100);
+    assertFalse(a.isDebugEnabled());
+    assertEquals(0, Category.getThreadLevelCount());
+  }
+
+  /**
+   * Tests that turbo filters decide before the level of the logger.
+   * @since 1.2.18
+   */
+  public void testTurboFilter() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.INFO));
+    Logger a = h.getLogger("a");
+    CountingAppender ca = new CountingAppender();
+    a.addAppender(ca);
+
+    MDCMatchTurboFilter mdcFilter = new MDCMatchTurboFilter();
+    mdcFilter.setKey("debug");
+    mdcFilter.setValue("true");
+    h.addTurboFilter(mdcFilter);
+    h.addTurboFilter(new TurboFilter() {
+      public int decide(Category logger, Priority level, Object message, Throwable t) {
+        return "muted".equals(message) ? Filter.DENY : Filter.NEUTRAL;
+      }
+    });
+    assertEquals(2, h.getTurboFilters().length);
+
+    a.debug(MSG);
+    a.info("muted");
+    assertEquals(0, ca.counter);
+    assertFalse(a.isDebugEnabled());
+
+    MDC.put("debug", "true");
+    try {
+      assertTrue(a.isDebugEnabled());
+      a.debug(MSG);
+      a.info("muted");
+      assertEquals(2, ca.counter);
+    } finally {
+      MDC.remove("debug");
+    }
+
+    a.info(MSG);
+    assertEquals(3, ca.counter);
+
+    h.resetConfiguration();
+    assertEquals(0, h.getTurboFilters().length);
+  }
+
+  /**
+   * Tests subtree enumeration and level changes.
+   * @since 1.2.18
+   */
+  public void testSubtreeLevel() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.ERROR));
+    Logger cacheImpl = h.getLogger("com.foo.cache.impl");
+    Logger cache = h.getLogger("com.foo.cache");
+    Logger cacheX = h.getLogger("com.foo.cacheX");
+    Logger foo = h.getLogger("com.foo");
+    cacheImpl.setLevel(Level.WARN);
+
+    Vector names = new Vector();
+    for (Enumeration e = h.getCurrentLoggers("com.foo.cache"); e.hasMoreElements();) {
+      names.addElement(((Logger) e.nextElement()).getName());
+    }
+    assertEquals(2, names.size());
+    assertTrue(names.contains("com.foo.cache"));
+    assertTrue(names.contains("com.foo.cache.impl"));
+    assertFalse(h.getCurrentLoggers("com.bar").hasMoreElements());
+
+    assertEquals(2, h.setSubtreeLevel("com.foo.cache", Level.DEBUG));
+    assertSame(Level.DEBUG, cache.getLevel());
+    assertSame(Level.DEBUG, cacheImpl.getEffectiveLevel());
+    assertTrue(cacheImpl.isDebugEnabled());
+    assertSame(Level.ERROR, cacheX.getEffectiveLevel());
+    assertNull(foo.getLevel());
+
+    assertEquals(2, h.setSubtreeLevel("com.foo.cache", null));
+    assertSame(Level.ERROR, cacheImpl.getEffectiveLevel());
+    foo.setLevel(Level.INFO);
+    assertSame(Level.INFO, cacheImpl.getEffectiveLevel());
+
+    assertEquals(4, h.setSubtreeLevel(null, Level.FATAL));
+    assertSame(Level.FATAL, cacheX.getEffectiveLevel());
+  }
+
+  /**
+   * Tests the caches of the descendants which do not inherit a change.
+   * @since 1.2.18
+   */
+  public void testHiddenDescendants() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.ERROR));
+    Logger ab = h.getLogger("a.b");
+    Logger abc = h.getLogger("a.b.c");
+    Logger ax = h.getLogger("a.x");
+    Logger axy = h.getLogger("a.x.y");
+    ab.setLevel(Level.WARN);
+    ax.setAdditivity(false);
+
+    h.getRootLogger().setLevel(Level.DEBUG);
+    assertSame(Level.WARN, abc.getEffectiveLevel());
+    assertSame(Level.DEBUG, axy.getEffectiveLevel());
+    ab.setLevel(null);
+    assertSame(Level.DEBUG, abc.getEffectiveLevel());
+
+    VectorAppender appender = new VectorAppender();
+    h.getRootLogger().addAppender(appender);
+    axy.info("hidden");
+    abc.info("seen");
+    assertEquals(1, appender.getVector().size());
+    ax.setAdditivity(true);
+    axy.info("seen");
+    assertEquals(2, appender.getVector().size());
+  }
+
   /**
    * Tests logger.trace(Object).
    * @since 1.2.12
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.log4j;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * MemoryMappedFileAppender tests.
+ */
+public class MemoryMappedFileAppenderTest extends TestCase {
+  private final Logger logger = Logger.getLogger(MemoryMappedFileAppenderTest.class);
+
+  private static Layout createLayout() {
+    return new PatternLayout("%m%n") {
+        public String getHeader() {
+          return "header\n";
+        }
+
+        public String getFooter() {
+          return "footer\n";
+        }
+      };
+  }
+
+  private void append(final FileAppender appender, final int from, final int to) {
+    for (int i = from; i < to; i++) {
+      appender.doAppend(
+        new LoggingEvent(null, logger, Level.INFO, "message " + i, null));
+    }
+  }
+
+  /**
+   * Checks that a file holds the header, consecutive messages and
+   * the footer.
+   * @return number of messages.
+   */
+  private int check(final File file, final int from) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    assertEquals("header", reader.readLine());
+    int i = from;
+    String line;
+    while ((line = reader.readLine()) != null && !line.equals("footer")) {
+      assertEquals("message " + i, line);
+      i++;
+    }
+    assertEquals("footer", line);
+    assertNull(reader.readLine());
+    reader.close();
+    return i - from;
+  }
+
+  /**
+   * Tests that the regions slide along the file and that the file
+   * is truncated to its content on close.
+   * @throws IOException if IO error reading the file.
+   */
+  public void testRegions() throws IOException {
+    File file = new File("output/mapped.log");
+    file.delete();
+
+    MemoryMappedFileAppender appender =
+      new MemoryMappedFileAppender(createLayout(), file.getPath(), false);
+    appender.setRegionSize(4096);
+    appender.activateOptions();
+    append(appender, 0, 1000);
+    //  mapping extends the file beyond its content
+    long mapped = file.length();
+    appender.close();
+
+    assertTrue(mapped > file.length());
+    assertEquals(1000, check(file, 0));
+
+    appender = new MemoryMappedFileAppender(createLayout(), file.getPath(), true);
+    append(appender, 1000, 1010);
+    appender.close();
+
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    int lines = 0;
+    String last = null;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lines++;
+      last = line;
+      assertTrue(line.length() > 0);
+    }
+    reader.close();
+    assertEquals(1014, lines);
+    assertEquals("footer", last);
+  }
+
+  /**
+   * Tests that a RollingFileAppender with the MemoryMapped option
+   * rolls over and truncates each file.
+   * @throws IOException if IO error reading the files.
+   */
+  public void testRollingFileAppender() throws IOException {
+    File file = new File("output/mapped-rfa.log");
+    File backup = new File("output/mapped-rfa.log.1");
+    file.delete();
+    backup.delete();
+
+    RollingFileAppender appender = new RollingFileAppender();
+    appender.setFile(file.getPath());
+    appender.setAppend(false);
+    appender.setMemoryMapped(true);
+    appender.setRegionSize(8192);
+    appender.setMaximumFileSize(1000);
+    appender.setLayout(new PatternLayout("%m%n"));
+    appender.activateOptions();
+    append(appender, 0, 150);
+    appender.close();
+
+    //  rolled over at about 1000 bytes, not at the region size
+    assertTrue(backup.length() >= 1000);
+    assertTrue(backup.length() < 1100);
+    assertTrue(file.length() > 0);
+    assertTrue(file.length() < 1100);
+  }
+
+  /**
+   * Tests that a RollingFileAppender with the MemoryMapped option
+   * counts the existing content, not the mapped region, when
+   * appending to a file.
+   * @throws IOException if IO error reading the files.
+   */
+  public void testRollingFileAppenderAppend() throws IOException {
+    File file = new File("output/mapped-rfa-append.log");
+    File backup = new File("output/mapped-rfa-append.log.1");
+    file.delete();
+    backup.delete();
+
+    for (int run = 0; run < 2; run++) {
+      RollingFileAppender appender = new RollingFileAppender();
+      appender.setFile(file.getPath());
+      appender.setMemoryMapped(true);
+      appender.setRegionSize(8192);
+      appender.setMaximumFileSize(2000);
+      appender.setLayout(new PatternLayout("%m%n"));
+      appender.activateOptions();
+      append(appender, run * 50, run * 50 + 50);
+      appender.close();
+    }
+
+    //  both runs fit in the file, nothing rolled over
+    assertFalse(backup.exists());
+    BufferedReader reader = new BufferedReader(new FileReader(file));
+    for (int i = 0; i < 100; i++) {
+      assertEquals("message " + i, reader.readLine());
+    }
+    assertNull(reader.readLine());
+    reader.close();
+  }
+}
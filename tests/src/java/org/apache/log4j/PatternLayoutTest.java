@@ -17,6 +17,7 @@
 
 package org.apache.log4j;
 
+import org.apache.log4j.spi.EventFieldUsage;
 import org.apache.log4j.spi.LoggingEvent;
 
 
@@ -139,4 +140,19 @@ public class PatternLayoutTest extends LayoutTest {
       return MAX_CAPACITY;
     }
   }
+
+  /**
+   * Tests getUsedFields.
+   */
+  public void testGetUsedFields() {
+    assertEquals(0, new PatternLayout("%r %-5p %c{2} - %m%n%%x").getUsedFields());
+    assertEquals(
+      EventFieldUsage.THREAD_NAME | EventFieldUsage.NDC,
+      new PatternLayout(PatternLayout.TTCC_CONVERSION_PATTERN).getUsedFields());
+    assertEquals(
+      EventFieldUsage.MDC | EventFieldUsage.LOCATION_INFO,
+      new PatternLayout("%-10.20X{key} %L %m").getUsedFields());
+    assertEquals(
+      EventFieldUsage.ALL, new MyPatternLayout("%m").getUsedFields());
+  }
 }
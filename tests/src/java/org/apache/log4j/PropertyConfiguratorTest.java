@@ -366,4 +366,33 @@ public class PropertyConfiguratorTest extends TestCase {
         assertEquals(true, renderer.isActivated());
         assertEquals(false, renderer.getShowVersion());
     }
+
+    /**
+     * Tests that an appender with the async option is wrapped in an
+     * AsyncAppender configured by the async options.
+     */
+    public void testAsync() {
+        Properties props = new Properties();
+        props.put("log4j.rootLogger", "debug, A1");
+        props.put("log4j.appender.A1", "org.apache.log4j.VectorAppender");
+        props.put("log4j.appender.A1.async", "true");
+        props.put("log4j.appender.A1.async.BufferSize", "16");
+        props.put("log4j.appender.A1.async.Blocking", "false");
+        props.put("log4j.appender.A1.async.WaitStrategy", "yielding");
+        PropertyConfigurator.configure(props);
+        try {
+            AsyncAppender async = (AsyncAppender) Logger.getRootLogger().getAppender("A1");
+            assertNotNull(async);
+            assertEquals(16, async.getBufferSize());
+            assertFalse(async.getBlocking());
+            assertEquals("Yielding", async.getWaitStrategy());
+            VectorAppender vector = (VectorAppender) async.getAppender("A1");
+            assertNotNull(vector);
+            Logger.getLogger("x").info("hello");
+            async.close();
+            assertEquals(1, vector.getVector().size());
+        } finally {
+            LogManager.resetConfiguration();
+        }
+    }
 }
@@ -19,9 +19,16 @@ package org.apache.log4j;
 
 import junit.framework.TestCase;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.spi.LoggingEvent;
 
 /**
  *  Test of RollingFileAppender.
@@ -233,5 +240,173 @@ public class RFATestCase extends TestCase {
       }
     }
 
+    /**
+     * Tests that backups shifted in the background get the
+     * same names as when shifted on rollover.
+     */
+    public void testBackgroundRollover() throws Exception {
+      Logger logger = Logger.getLogger(RFATestCase.class);
+      RollingFileAppender rfa = new RollingFileAppender();
+      rfa.setLayout(new PatternLayout("%m\n"));
+      rfa.setAppend(false);
+      rfa.setMaxBackupIndex(3);
+      rfa.setMaximumFileSize(100);
+      rfa.setBackgroundRollover(true);
+      rfa.setFile("output/RFA-background.log");
+      rfa.activateOptions();
+      logger.addAppender(rfa);
+      logger.setAdditivity(false);
+
+      // Write exactly 10 bytes with each log
+      for (int i = 0; i < 55; i++) {
+        if (i < 10) {
+          logger.debug("Hello---" + i);
+        } else {
+          logger.debug("Hello--" + i);
+        }
+      }
+      rfa.close();
+
+      assertEquals("Hello--50", firstLine("output/RFA-background.log"));
+      assertEquals("Hello--40", firstLine("output/RFA-background.log.1"));
+      assertEquals("Hello--30", firstLine("output/RFA-background.log.2"));
+      assertEquals("Hello--20", firstLine("output/RFA-background.log.3"));
+      assertFalse(new File("output/RFA-background.log.4").exists());
+      String[] names = new File("output").list();
+      for (int i = 0; i < names.length; i++) {
+        assertFalse(names[i], names[i].startsWith("RFA-background.log.rolling"));
+      }
+    }
+
+    private static String firstLine(String fileName) throws IOException {
+      BufferedReader reader = new BufferedReader(new FileReader(fileName));
+      try {
+        return reader.readLine();
+      } finally {
+        reader.close();
+      }
+    }
+
+    /**
+     * Tests that backups are compressed with gzip.
+     */
+    public void testCompression() throws Exception {
+      Logger logger = Logger.getLogger(RFATestCase.class);
+      RollingFileAppender rfa = new RollingFileAppender();
+      rfa.setLayout(new PatternLayout("%m\n"));
+      rfa.setAppend(false);
+      rfa.setMaxBackupIndex(2);
+      rfa.setMaximumFileSize(100);
+      rfa.setCompression("GZip");
+      rfa.setCompressionLevel(9);
+      rfa.setCompressionThreads(2);
+      assertEquals("gzip", rfa.getCompression());
+      rfa.setFile("output/RFA-gzip.log");
+      rfa.activateOptions();
+      logger.addAppender(rfa);
+      logger.setAdditivity(false);
+
+      // Write exactly 10 bytes with each log
+      for (int i = 0; i < 35; i++) {
+        if (i < 10) {
+          logger.debug("Hello---" + i);
+        } else {
+          logger.debug("Hello--" + i);
+        }
+      }
+      rfa.close();
+
+      assertEquals("Hello--30", firstLine("output/RFA-gzip.log"));
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream("output/RFA-gzip.log.1.gz"))));
+      assertEquals("Hello--20", reader.readLine());
+      for (int i = 21; i < 30; i++) {
+        assertEquals("Hello--" + i, reader.readLine());
+      }
+      assertNull(reader.readLine());
+      reader.close();
+      assertTrue(new File("output/RFA-gzip.log.2.gz").exists());
+      assertFalse(new File("output/RFA-gzip.log.1").exists());
+      assertFalse(new File("output/RFA-gzip.log.3.gz").exists());
+    }
+
+    /**
+     * Tests that rolled over files left with a temporary name
+     * by a previous process are shifted in order on activation.
+     */
+    public void testRecoverDetached() throws Exception {
+      String fileName = "output/RFA-recover.log";
+      for (int i = 1; i <= 4; i++) {
+        new File(fileName + "." + i).delete();
+      }
+      long now = System.currentTimeMillis();
+      for (int i = 1; i <= 3; i++) {
+        File detached = new File(fileName + ".rolling" + i);
+        FileWriter writer = new FileWriter(detached);
+        writer.write("rolled " + i + "\n");
+        writer.close();
+        detached.setLastModified(now - (10 - i) * 10000);
+      }
+      //   compression interrupted before completion
+      FileWriter partial = new FileWriter(fileName + ".rolling3.gz");
+      partial.write("partial");
+      partial.close();
+
+      RollingFileAppender rfa = new RollingFileAppender();
+      rfa.setLayout(new PatternLayout("%m\n"));
+      rfa.setMaxBackupIndex(3);
+      rfa.setFile(fileName);
+      rfa.activateOptions();
+      rfa.close();
+
+      assertEquals("rolled 3", firstLine(fileName + ".1"));
+      assertEquals("rolled 2", firstLine(fileName + ".2"));
+      assertEquals("rolled 1", firstLine(fileName + ".3"));
+      assertFalse(new File(fileName + ".4").exists());
+      String[] names = new File("output").list();
+      for (int i = 0; i < names.length; i++) {
+        assertFalse(names[i], names[i].startsWith("RFA-recover.log.rolling"));
+      }
+    }
+
+    /**
+     * Tests that a synchronous rollover shifts the backups
+     * compressed by an earlier configuration.
+     */
+    public void testShiftCompressed() throws Exception {
+      String fileName = "output/RFA-shift.log";
+      String[] suffixes = { "", ".gz", ".deflate" };
+      for (int i = 1; i <= 3; i++) {
+        for (int s = 0; s < suffixes.length; s++) {
+          new File(fileName + "." + i + suffixes[s]).delete();
+        }
+      }
+      FileWriter writer = new FileWriter(fileName + ".1.gz");
+      writer.write("one");
+      writer.close();
+      writer = new FileWriter(fileName + ".2.deflate");
+      writer.write("two");
+      writer.close();
+      writer = new FileWriter(fileName + ".3.gz");
+      writer.write("three");
+      writer.close();
+
+      RollingFileAppender rfa = new RollingFileAppender();
+      rfa.setLayout(new PatternLayout("%m\n"));
+      rfa.setAppend(false);
+      rfa.setMaxBackupIndex(3);
+      rfa.setFile(fileName);
+      rfa.activateOptions();
+      rfa.doAppend(new LoggingEvent(Logger.class.getName(),
+        Logger.getLogger(RFATestCase.class), Level.INFO, "current", null));
+      rfa.rollOver();
+      rfa.close();
 
+      assertEquals("current", firstLine(fileName + ".1"));
+      assertEquals("one", firstLine(fileName + ".2.gz"));
+      assertEquals("two", firstLine(fileName + ".3.deflate"));
+      assertFalse(new File(fileName + ".1.gz").exists());
+      assertFalse(new File(fileName + ".2.deflate").exists());
+      assertFalse(new File(fileName + ".3.gz").exists());
+    }
 }
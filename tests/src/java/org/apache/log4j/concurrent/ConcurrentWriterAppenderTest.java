@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.concurrent;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.io.Writer;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.varia.LevelMatchFilter;
+
+
+/**
+ *    Tests for ConcurrentWriterAppender.
+ *
+ **/
+public class ConcurrentWriterAppenderTest extends TestCase {
+  /**
+   * Create new instance of ConcurrentWriterAppenderTest.
+   * @param testName test name
+   */
+  public ConcurrentWriterAppenderTest(final String testName) {
+    super(testName);
+  }
+
+  private static LoggingEvent createEvent(final Level level, final String msg) {
+    Logger logger = Logger.getLogger(ConcurrentWriterAppenderTest.class);
+    return new LoggingEvent(Logger.class.getName(), logger, level, msg, null);
+  }
+
+  /**
+   * Tests threshold, filters and closing.
+   */
+  public void testFiltering() {
+    StringWriter writer = new StringWriter();
+    ConcurrentWriterAppender appender =
+      new ConcurrentWriterAppender(new PatternLayout("%p %m%n"), writer);
+    appender.setThreshold(Level.INFO);
+    LevelMatchFilter filter = new LevelMatchFilter();
+    filter.setLevelToMatch("WARN");
+    filter.setAcceptOnMatch(false);
+    appender.addFilter(filter);
+
+    appender.doAppend(createEvent(Level.DEBUG, "debug"));
+    appender.doAppend(createEvent(Level.INFO, "info"));
+    appender.doAppend(createEvent(Level.WARN, "warn"));
+    appender.clearFilters();
+    appender.doAppend(createEvent(Level.ERROR, "error"));
+    appender.close();
+    appender.doAppend(createEvent(Level.ERROR, "closed"));
+
+    String sep = System.getProperty("line.separator");
+    assertEquals("INFO info" + sep + "ERROR error" + sep, writer.toString());
+  }
+
+  /**
+   * Tests that concurrent appends are written whole.
+   */
+  public void testConcurrentAppend() throws InterruptedException {
+    final StringWriter writer = new StringWriter();
+    final ConcurrentWriterAppender appender =
+      new ConcurrentWriterAppender(new PatternLayout("%m%n"), writer);
+    appender.setImmediateFlush(false);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final String msg = "thread" + i;
+      threads[i] = new Thread() {
+        public void run() {
+          for (int j = 0; j < 500; j++) {
+            appender.doAppend(createEvent(Level.INFO, msg));
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (int i = 0; i < threads.length; i++) {
+      threads[i].join();
+    }
+    appender.close();
+
+    String[] lines = writer.toString().split(System.getProperty("line.separator"));
+    assertEquals(2000, lines.length);
+    for (int i = 0; i < lines.length; i++) {
+      assertTrue(lines[i], lines[i].matches("thread[0-3]"));
+    }
+  }
+
+  /**
+   * Tests that the flush options of WriterAppender apply.
+   */
+  public void testFlushLevel() {
+    final StringWriter flushed = new StringWriter();
+    Writer writer = new StringWriter() {
+      public void flush() {
+        flushed.write(toString());
+      }
+    };
+    ConcurrentWriterAppender appender =
+      new ConcurrentWriterAppender(new PatternLayout("%m%n"), writer);
+    appender.setFlushLevel(Level.ERROR);
+    appender.doAppend(createEvent(Level.INFO, "info"));
+    assertEquals("", flushed.toString());
+    appender.doAppend(createEvent(Level.ERROR, "error"));
+    String sep = System.getProperty("line.separator");
+    assertEquals("info" + sep + "error" + sep, flushed.toString());
+    appender.close();
+  }
+}
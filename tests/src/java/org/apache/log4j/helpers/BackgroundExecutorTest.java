@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+
+/**
+   Unit test the {@link BackgroundExecutor}.
+   @since 1.2.18 */
+public class BackgroundExecutorTest extends TestCase {
+
+  public BackgroundExecutorTest(String name) {
+    super(name);
+  }
+
+  private static Runnable add(final Vector done, final int i, final long sleep) {
+    return new Runnable() {
+        public void run() {
+          try {
+            Thread.sleep(sleep);
+          } catch(InterruptedException e) {
+          }
+          done.addElement(new Integer(i));
+        }
+      };
+  }
+
+  /**
+     A single thread runs the tasks in order.
+   */
+  public void testOrder() throws InterruptedException {
+    BackgroundExecutor executor = new BackgroundExecutor("test", 1, 4);
+    Vector done = new Vector();
+    for(int i = 0; i < 20; i++) {
+      executor.execute(add(done, i, 1));
+    }
+    assertTrue(executor.awaitIdle(5000));
+    assertEquals(20, done.size());
+    for(int i = 0; i < 20; i++) {
+      assertEquals(new Integer(i), done.elementAt(i));
+    }
+  }
+
+  /**
+     An interrupted caller waiting for room still queues its task
+     after the others and keeps its interrupt status.
+   */
+  public void testInterrupted() throws InterruptedException {
+    BackgroundExecutor executor = new BackgroundExecutor("test", 1, 1);
+    Vector done = new Vector();
+    executor.execute(add(done, 0, 200));
+    executor.execute(add(done, 1, 0));
+
+    final Thread caller = Thread.currentThread();
+    Thread interrupter = new Thread() {
+        public void run() {
+          try {
+            Thread.sleep(50);
+          } catch(InterruptedException e) {
+          }
+          caller.interrupt();
+        }
+      };
+    interrupter.start();
+    executor.execute(add(done, 2, 0));
+    assertTrue(Thread.interrupted());
+    interrupter.join();
+
+    assertTrue(executor.awaitIdle(5000));
+    assertEquals(3, done.size());
+    for(int i = 0; i < 3; i++) {
+      assertEquals(new Integer(i), done.elementAt(i));
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+
+/**
+   Unit test the {@link FileChannelWriter}.
+   @since 1.2.18 */
+public class FileChannelWriterTest extends TestCase {
+
+  private static final String TEXT =
+    "ascii \u00e9t\u00e9 \u20ac \ud834\udd1e end";
+
+  private final File file = new File("output/channel.log");
+
+  public FileChannelWriterTest(String name) {
+    super(name);
+  }
+
+  public
+  void setUp() {
+    file.delete();
+  }
+
+  private
+  FileChannelWriter open(String encoding, int bufferSize) throws IOException {
+    return new FileChannelWriter(new FileOutputStream(file.getPath(), true),
+				 file.getPath(), encoding, bufferSize);
+  }
+
+  private
+  byte[] read() throws IOException {
+    InputStream is = new FileInputStream(file);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buf = new byte[1024];
+    int n;
+    while((n = is.read(buf)) > 0) {
+      bytes.write(buf, 0, n);
+    }
+    is.close();
+    return bytes.toByteArray();
+  }
+
+  /**
+     Write TEXT one character at a time, splitting surrogate pairs,
+     then as a whole, and compare to the JDK encoding.  */
+  private
+  void assertEncoding(String encoding) throws IOException {
+    file.delete();
+    FileChannelWriter writer = open(encoding, 16);
+    for(int i = 0; i < TEXT.length(); i++) {
+      writer.write(TEXT.charAt(i));
+    }
+    writer.write(TEXT);
+    writer.close();
+    String expected = TEXT + TEXT;
+    assertEquals(encoding, new String(expected.getBytes(encoding), encoding),
+		 new String(read(), encoding));
+  }
+
+  public
+  void testEncodings() throws IOException {
+    assertEncoding("UTF-8");
+    assertEncoding("US-ASCII");
+    assertEncoding("ISO-8859-1");
+    assertEncoding("UTF-16BE");
+  }
+
+  public
+  void testUTF8Bytes() throws IOException {
+    FileChannelWriter writer = open("UTF-8", 8192);
+    StringBuffer buf = new StringBuffer();
+    for(int i = 0; i < 3000; i++) {
+      buf.append((char) (i * 7));
+    }
+    // lone surrogates are replaced
+    String text = buf.toString().replace('\ud800', 'x').replace('\udc00', 'y');
+    writer.write(text);
+    writer.close();
+    byte[] expected = text.getBytes("UTF-8");
+    byte[] actual = read();
+    assertEquals(expected.length, actual.length);
+    for(int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], actual[i]);
+    }
+  }
+
+  public
+  void testFlush() throws IOException {
+    FileChannelWriter writer = open(null, 8192);
+    writer.write("hello");
+    assertEquals(0, file.length());
+    writer.flush();
+    assertEquals(5, file.length());
+    writer.close();
+    try {
+      writer.write("closed");
+      fail("expected IOException");
+    } catch(IOException e) {
+    }
+  }
+
+  public
+  void testInterrupted() throws IOException {
+    FileChannelWriter writer = open("UTF-8", 8192);
+    Thread.currentThread().interrupt();
+    try {
+      writer.write("one");
+      writer.flush();
+      assertTrue(Thread.currentThread().isInterrupted());
+      writer.write("two");
+      writer.flush();
+    } finally {
+      Thread.interrupted();
+    }
+    writer.close();
+    assertEquals("onetwo", new String(read(), "UTF-8"));
+  }
+}
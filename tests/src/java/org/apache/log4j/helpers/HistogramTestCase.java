@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+
+/**
+   Unit test the {@link Histogram} and the {@link StripedCounter}.
+   @since 1.2.18 */
+public class HistogramTestCase extends TestCase {
+
+  public HistogramTestCase(String name) {
+    super(name);
+  }
+
+  public
+  void testBuckets() {
+    Histogram h = new Histogram(new long[] {0, 10, 100});
+    long[] values = {-5, 0, 1, 10, 11, 100, 101, 5000};
+    for(int i = 0; i < values.length; i++) {
+      h.record(values[i]);
+    }
+    long[] counts = h.getCounts();
+    assertEquals(4, counts.length);
+    assertEquals(2, counts[0]);
+    assertEquals(2, counts[1]);
+    assertEquals(2, counts[2]);
+    assertEquals(2, counts[3]);
+    assertEquals("<=0: 2, <=10: 2, <=100: 2, >100: 2", h.toString());
+    assertEquals(10, h.getPercentile(50));
+    assertEquals(100, h.getPercentile(75));
+    assertEquals(-1, h.getPercentile(99));
+
+    h.reset();
+    assertEquals("", h.toString());
+    assertEquals(-1, h.getPercentile(50));
+  }
+
+  public
+  void testBadBounds() {
+    try {
+      new Histogram(new long[] {10, 10});
+      fail("expected IllegalArgumentException");
+    } catch(IllegalArgumentException e) {
+    }
+  }
+
+  public
+  void testConcurrentCounts() throws InterruptedException {
+    final StripedCounter counter = new StripedCounter();
+    final Histogram h = new Histogram(new long[] {1});
+    Thread[] threads = new Thread[4];
+    for(int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+	  public void run() {
+	    for(int j = 0; j < 10000; j++) {
+	      counter.increment();
+	      h.record(j & 3);
+	    }
+	  }
+	};
+      threads[i].start();
+    }
+    for(int i = 0; i < threads.length; i++) {
+      threads[i].join();
+    }
+    assertEquals(40000, counter.get());
+    long[] counts = h.getCounts();
+    assertEquals(20000, counts[0]);
+    assertEquals(20000, counts[1]);
+
+    counter.reset();
+    assertEquals(0, counter.get());
+  }
+
+  public
+  static
+  Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new HistogramTestCase("testBuckets"));
+    suite.addTest(new HistogramTestCase("testBadBounds"));
+    suite.addTest(new HistogramTestCase("testConcurrentCounts"));
+    return suite;
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.Logger;
+import org.apache.log4j.Level;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+
+/**
+   Unit test the {@link RingBuffer}.
+   @since 1.2.18 */
+public class RingBufferTestCase extends TestCase {
+  static Logger cat = Logger.getLogger("x");
+
+  static int MAX = 1000;
+
+  static LoggingEvent[] e = new LoggingEvent[MAX];
+
+  {
+    for (int i = 0; i < MAX; i++) {
+      e[i] =  new LoggingEvent("", cat, Level.DEBUG, "e"+i, null);
+    }
+  }
+
+
+  public RingBufferTestCase(String name) {
+    super(name);
+  }
+
+
+  /**
+     Fill, drain and seal a buffer whose capacity is not a power of two.
+   */
+  public
+  void testOfferPoll() {
+    RingBuffer rb = new RingBuffer(5);
+    assertEquals(5, rb.getCapacity());
+    LoggingEvent[] out = new LoggingEvent[8];
+    assertEquals(0, rb.poll(out));
+
+    for(int round = 0; round < 3; round++) {
+      for(int i = 0; i < 5; i++) {
+        assertEquals(RingBuffer.PUBLISHED, rb.offer(e[i]));
+      }
+      assertEquals(RingBuffer.FULL, rb.offer(e[5]));
+      assertEquals(5, rb.size());
+      assertEquals(5, rb.poll(out));
+      for(int i = 0; i < 5; i++) {
+        assertSame(e[i], out[i]);
+      }
+      assertEquals(0, rb.size());
+    }
+
+    rb.offer(e[0]);
+    rb.seal();
+    assertEquals(RingBuffer.SEALED, rb.offer(e[1]));
+    assertEquals(1, rb.poll(out));
+    assertEquals(-1, rb.poll(out));
+  }
+
+  /**
+     Several producers and one consumer, checking the order of the
+     events of each producer.
+   */
+  public
+  void testProducers() throws InterruptedException {
+    produce(RingBuffer.BLOCKING);
+  }
+
+  /**
+     Same as testProducers with the polling wait strategies.
+   */
+  public
+  void testWaitStrategies() throws InterruptedException {
+    assertEquals(RingBuffer.SLEEPING, RingBuffer.toWaitStrategy("sleeping", -1));
+    assertEquals(RingBuffer.BUSY_SPIN, RingBuffer.toWaitStrategy(" BusySpin ", -1));
+    assertEquals(-1, RingBuffer.toWaitStrategy("Spinning", -1));
+    assertEquals("Yielding", RingBuffer.getWaitStrategyName(RingBuffer.YIELDING));
+
+    produce(RingBuffer.SLEEPING);
+    produce(RingBuffer.YIELDING);
+    produce(RingBuffer.BUSY_SPIN);
+  }
+
+  void produce(int strategy) throws InterruptedException {
+    final RingBuffer rb = new RingBuffer(16);
+    rb.setWaitStrategy(strategy);
+    assertEquals(strategy, rb.getWaitStrategy());
+    final int producers = 4;
+    final int perProducer = MAX / producers;
+    Thread[] threads = new Thread[producers];
+    for(int p = 0; p < producers; p++) {
+      final int first = p * perProducer;
+      threads[p] = new Thread() {
+        public void run() {
+          try {
+            for(int i = first; i < first + perProducer; i++) {
+              rb.put(e[i]);
+            }
+          } catch(InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      };
+      threads[p].start();
+    }
+
+    int[] last = new int[producers];
+    for(int p = 0; p < producers; p++) {
+      last[p] = p * perProducer - 1;
+    }
+    LoggingEvent[] out = new LoggingEvent[16];
+    int total = 0;
+    while(total < MAX) {
+      int n = rb.take(out);
+      for(int i = 0; i < n; i++) {
+        int k = Integer.parseInt(((String) out[i].getMessage()).substring(1));
+        int p = k / perProducer;
+        assertEquals(last[p] + 1, k);
+        last[p] = k;
+      }
+      total += n;
+    }
+    for(int p = 0; p < producers; p++) {
+      threads[p].join();
+    }
+    rb.seal();
+    assertEquals(-1, rb.take(out));
+  }
+
+  /**
+     A timed take on a buffer returns once its companion has events,
+     also when waiting without limit.
+   */
+  public
+  void testCompanion() throws InterruptedException {
+    RingBuffer rb = new RingBuffer(4);
+    final RingBuffer lane = new RingBuffer(4, rb);
+    assertSame(lane, rb.getCompanion());
+    LoggingEvent[] out = new LoggingEvent[4];
+    assertEquals(0, rb.take(out, 10));
+
+    Thread producer = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(50);
+        } catch(InterruptedException ex) {
+        }
+        lane.offer(e[0]);
+      }
+    };
+    long start = System.currentTimeMillis();
+    producer.start();
+    assertEquals(0, rb.take(out, 10000));
+    assertTrue(System.currentTimeMillis() - start < 5000);
+    assertEquals(1, lane.poll(out));
+    assertSame(e[0], out[0]);
+    producer.join();
+
+    //   without limit
+    producer = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(50);
+        } catch(InterruptedException ex) {
+        }
+        lane.offer(e[1]);
+      }
+    };
+    producer.start();
+    assertEquals(0, rb.take(out, 0));
+    assertEquals(1, lane.poll(out));
+    assertSame(e[1], out[0]);
+    producer.join();
+  }
+
+  public
+  static
+  Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new RingBufferTestCase("testOfferPoll"));
+    suite.addTest(new RingBufferTestCase("testProducers"));
+    suite.addTest(new RingBufferTestCase("testWaitStrategies"));
+    suite.addTest(new RingBufferTestCase("testCompanion"));
+    return suite;
+  }
+}
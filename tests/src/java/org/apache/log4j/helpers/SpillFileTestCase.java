@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Date;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.Logger;
+import org.apache.log4j.Level;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+
+/**
+   Unit test the {@link SpillFile}.
+   @since 1.2.18 */
+public class SpillFileTestCase extends TestCase {
+  static Logger cat = Logger.getLogger("x");
+
+  File file = new File("output/spill.bin");
+
+  public SpillFileTestCase(String name) {
+    super(name);
+  }
+
+  public
+  void setUp() {
+    file.delete();
+  }
+
+  public
+  void tearDown() {
+    file.delete();
+  }
+
+  LoggingEvent event(int i) {
+    return new LoggingEvent("", cat, Level.INFO, "e"+i, null);
+  }
+
+  /**
+     Write, read and release events, then reuse the file from the
+     start once drained.
+   */
+  public
+  void testWriteRead() throws IOException {
+    SpillFile spill = new SpillFile(file, 64 * 1024);
+    assertFalse(spill.isActive());
+    LoggingEvent[] out = new LoggingEvent[4];
+    for(int round = 0; round < 3; round++) {
+      for(int i = 0; i < 6; i++) {
+        assertTrue(spill.write(event(i)));
+      }
+      assertTrue(spill.isActive());
+      assertEquals(4, spill.read(out));
+      spill.release();
+      assertEquals("e0", out[0].getRenderedMessage());
+      assertEquals("x", out[3].getLoggerName());
+      assertEquals(Level.INFO, out[3].getLevel());
+      assertEquals(2, spill.getCount());
+      assertEquals(2, spill.read(out));
+      assertEquals("e5", out[1].getRenderedMessage());
+      assertTrue(spill.isActive());
+      spill.release();
+      assertFalse(spill.isActive());
+      assertEquals(0, spill.getUsedBytes());
+    }
+    assertEquals(18, spill.getSpilledCount());
+    assertEquals(18, spill.getReplayedCount());
+    spill.close();
+  }
+
+  /**
+     Events are rejected once the file is full.
+   */
+  public
+  void testFull() throws IOException {
+    SpillFile spill = new SpillFile(file, 4096);
+    int n = 0;
+    while(spill.write(event(n))) {
+      n++;
+    }
+    assertTrue(n > 0);
+    assertEquals(n, spill.getCount());
+    assertEquals(1, spill.getRejectedCount());
+    LoggingEvent[] out = new LoggingEvent[n];
+    assertEquals(n, spill.read(out));
+    spill.release();
+    assertTrue(spill.write(event(n)));
+    spill.close();
+  }
+
+  /**
+     Events not released are recovered by the next instance, in order.
+   */
+  public
+  void testRecover() throws IOException {
+    SpillFile spill = new SpillFile(file, 64 * 1024);
+    for(int i = 0; i < 10; i++) {
+      spill.write(event(i));
+    }
+    LoggingEvent[] out = new LoggingEvent[3];
+    spill.read(out);
+    spill.release();
+    // read but not released
+    spill.read(out);
+    spill.close();
+
+    spill = new SpillFile(file, 64 * 1024);
+    assertTrue(spill.isActive());
+    assertEquals(7, spill.getCount());
+    out = new LoggingEvent[10];
+    assertEquals(7, spill.read(out));
+    for(int i = 0; i < 7; i++) {
+      assertEquals("e"+(i+3), out[i].getRenderedMessage());
+    }
+    spill.release();
+    spill.close();
+
+    spill = new SpillFile(file, 64 * 1024);
+    assertFalse(spill.isActive());
+    spill.close();
+  }
+
+  /**
+     The file is truncated to the events it holds when closed.
+   */
+  public
+  void testTruncate() throws IOException {
+    SpillFile spill = new SpillFile(file, 64 * 1024);
+    assertEquals(64 * 1024, file.length());
+    for(int i = 0; i < 5; i++) {
+      spill.write(event(i));
+    }
+    spill.close();
+    long length = file.length();
+    assertTrue(length > 20);
+    assertTrue(length < 64 * 1024);
+
+    spill = new SpillFile(file, 64 * 1024);
+    assertEquals(5, spill.getCount());
+    LoggingEvent[] out = new LoggingEvent[5];
+    assertEquals(5, spill.read(out));
+    spill.release();
+    spill.close();
+    //   header and end marker
+    assertEquals(20, file.length());
+  }
+
+  /**
+     The space of the replayed events is reused while other events
+     remain in the file, and the events are recovered in order after
+     the file wrapped.
+   */
+  public
+  void testWrap() throws IOException {
+    SpillFile spill = new SpillFile(file, 4096);
+    LoggingEvent[] out = new LoggingEvent[2];
+    int written = 0;
+    int read = 0;
+    assertTrue(spill.write(event(written++)));
+    for(int round = 0; round < 100; round++) {
+      assertTrue(spill.write(event(written++)));
+      assertTrue(spill.write(event(written++)));
+      assertEquals(2, spill.read(out));
+      spill.release();
+      assertEquals("e"+read++, out[0].getRenderedMessage());
+      assertEquals("e"+read++, out[1].getRenderedMessage());
+      assertEquals(1, spill.getCount());
+      assertTrue(spill.getUsedBytes() < 1024);
+    }
+    assertEquals(0, spill.getRejectedCount());
+    for(int i = 0; i < 3; i++) {
+      assertTrue(spill.write(event(written++)));
+    }
+    spill.close();
+
+    spill = new SpillFile(file, 4096);
+    assertEquals(4, spill.getCount());
+    out = new LoggingEvent[4];
+    assertEquals(4, spill.read(out));
+    for(int i = 0; i < 4; i++) {
+      assertEquals("e"+read++, out[i].getRenderedMessage());
+    }
+    spill.release();
+    spill.close();
+  }
+
+  /**
+     MDC values of other classes than the simple ones are written as
+     strings, and events holding other classes are not read back.
+   */
+  public
+  void testAllowedClasses() throws IOException {
+    Date date = new Date(0);
+    LoggingEvent event =
+      new LoggingEvent("", cat, 0, Level.INFO, "e0", "t", null, null, null,
+		       Collections.singletonMap("d", date));
+    SpillFile spill = new SpillFile(file, 64 * 1024);
+    assertTrue(spill.write(event));
+    spill.close();
+
+    spill = new SpillFile(file, 64 * 1024);
+    LoggingEvent[] out = new LoggingEvent[1];
+    assertEquals(1, spill.read(out));
+    assertEquals(date.toString(), out[0].getMDC("d"));
+    spill.release();
+    spill.close();
+
+    // a record written by an unrestricted stream
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(event);
+    oos.close();
+    byte[] data = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.seek(16);
+    raf.writeInt(data.length);
+    raf.writeInt((int) crc.getValue());
+    raf.write(data);
+    raf.writeInt(0);
+    raf.close();
+
+    spill = new SpillFile(file, 64 * 1024);
+    assertEquals(1, spill.getCount());
+    assertEquals(0, spill.read(out));
+    spill.release();
+    spill.close();
+  }
+
+  public
+  static
+  Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTest(new SpillFileTestCase("testWriteRead"));
+    suite.addTest(new SpillFileTestCase("testFull"));
+    suite.addTest(new SpillFileTestCase("testRecover"));
+    suite.addTest(new SpillFileTestCase("testTruncate"));
+    suite.addTest(new SpillFileTestCase("testWrap"));
+    suite.addTest(new SpillFileTestCase("testAllowedClasses"));
+    return suite;
+  }
+}
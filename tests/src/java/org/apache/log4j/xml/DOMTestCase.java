@@ -18,6 +18,7 @@
 package org.apache.log4j.xml;
 
 import junit.framework.TestCase;
+import org.apache.log4j.AsyncAppender;
 import org.apache.log4j.Appender;
 import org.apache.log4j.FileAppender;
 import org.apache.log4j.Level;
@@ -416,4 +417,22 @@ public class DOMTestCase extends TestCase {
         assertFalse(file.exists());
     }
 
+    /**
+     * Tests that appenders with an async element or attribute are
+     * wrapped in an AsyncAppender.
+     */
+    public void testAsync() {
+        DOMConfigurator.configure("input/xml/async1.xml");
+        AsyncAppender a1 = (AsyncAppender) Logger.getRootLogger().getAppender("A1");
+        assertEquals(16, a1.getBufferSize());
+        assertFalse(a1.getBlocking());
+        assertTrue(a1.getAppender("A1") instanceof VectorAppender);
+        AsyncAppender a2 = (AsyncAppender) Logger.getRootLogger().getAppender("A2");
+        assertEquals(AsyncAppender.DEFAULT_BUFFER_SIZE, a2.getBufferSize());
+        VectorAppender v2 = (VectorAppender) a2.getAppender("A2");
+        Logger.getLogger("x").info("hello");
+        a2.close();
+        assertEquals(1, v2.getVector().size());
+    }
+
 }